@@ -0,0 +1,94 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link HttpTransport} which answers every request with the same body, so
+ * benchmarks measure the client rather than the network.
+ */
+public class CannedTransport implements HttpTransport {
+
+    private final byte[] body;
+
+    /**
+     * Constructor.
+     *
+     * @param body Body of every response.
+     */
+    public CannedTransport(String body) {
+        this.body = body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request) {
+        return new TransportResponse(200, new ByteArrayInputStream(body));
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> executeAsync(TransportRequest request) {
+        return CompletableFuture.completedFuture(execute(request));
+    }
+
+    /**
+     * Build the JSON for a channel feed with all eight fields set.
+     *
+     * @param entries Number of entries.
+     * @return Feed JSON.
+     */
+    public static String feed(int entries) {
+        StringBuilder json = new StringBuilder(entries * 220 + 512);
+        json.append("{\"channel\":{\"id\":9,\"name\":\"benchmark\",\"description\":\"Benchmark feed\",")
+                .append("\"latitude\":\"49.28\",\"longitude\":\"-123.12\",")
+                .append("\"field1\":\"Temperature\",\"field2\":\"Humidity\",\"field3\":\"Pressure\",")
+                .append("\"field4\":\"Light\",\"field5\":\"Wind\",\"field6\":\"Rain\",")
+                .append("\"field7\":\"Battery\",\"field8\":\"Message\",")
+                .append("\"created_at\":\"2014-01-01T00:00:00Z\",\"updated_at\":\"2014-11-19T12:00:00Z\",")
+                .append("\"last_entry_id\":").append(entries).append("},\"feeds\":[");
+        long start = TimestampCodec.parse("2014-11-01T00:00:00Z");
+        for (int id = 1; id <= entries; id++) {
+            if (id > 1) {
+                json.append(',');
+            }
+            json.append("{\"created_at\":\"");
+            TimestampCodec.append(json, start + id * 15000L);
+            json.append("\",\"entry_id\":").append(id);
+            for (int field = 1; field <= 7; field++) {
+                json.append(",\"field").append(field).append("\":\"")
+                        .append(20 + (id * field) % 97 / 10.0).append('"');
+            }
+            json.append(",\"field8\":\"reading ").append(id).append("\"}");
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Build the JSON for a single entry with all eight fields set.
+     *
+     * @return Entry JSON.
+     */
+    public static String entry() {
+        String feed = feed(1);
+        return feed.substring(feed.indexOf("\"feeds\":[") + 9, feed.length() - 2);
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building an {@link Entry} and its update parameters, and decoding a single
+ * entry as returned for the last entry in a channel.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntryBenchmark {
+
+    private Channel channel;
+    private double reading;
+
+    @Setup
+    public void setup() {
+        channel = new Channel(9);
+        channel.setTransport(new CannedTransport(CannedTransport.entry()));
+    }
+
+    @Benchmark
+    public Entry setTextFields() {
+        Entry entry = new Entry();
+        for (int field = 1; field <= 8; field++) {
+            entry.setField(field, "21.5");
+        }
+        return entry;
+    }
+
+    @Benchmark
+    public Entry setNumericFields() {
+        Entry entry = new Entry();
+        reading += 0.25;
+        for (int field = 1; field <= 8; field++) {
+            entry.setField(field, reading + field);
+        }
+        return entry;
+    }
+
+    @Benchmark
+    public HashMap<String, Object> getUpdateMap() {
+        Entry entry = new Entry();
+        reading += 0.25;
+        for (int field = 1; field <= 8; field++) {
+            entry.setField(field, reading + field);
+        }
+        entry.setStatus("ok");
+        return entry.getUpdateMap();
+    }
+
+    @Benchmark
+    public Entry decodeEntry() throws Exception {
+        return channel.getLastChannelEntry();
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding a channel feed, and looking up entries in a decoded feed. Feeds
+ * are decoded through {@link Channel}, as an application would, from a
+ * response held in memory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FeedBenchmark {
+
+    @Param({"100", "1000", "8000"})
+    int entries;
+
+    private Channel channel;
+    private Feed feed;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        channel = new Channel(9);
+        channel.setTransport(new CannedTransport(CannedTransport.feed(entries)));
+        feed = channel.getChannelFeed();
+        if (feed.getEntryList().size() != entries) {
+            throw new IllegalStateException("Feed has " + feed.getEntryList().size() + " entries.");
+        }
+    }
+
+    @Benchmark
+    public Feed decodeFeed() throws Exception {
+        return channel.getChannelFeed();
+    }
+
+    @Benchmark
+    public ColumnarFeed decodeColumnarFeed() throws Exception {
+        return channel.getColumnarChannelFeed();
+    }
+
+    @Benchmark
+    public Entry getEntry() throws Exception {
+        next = (next == entries) ? 1 : next + 1;
+        return feed.getEntry(next);
+    }
+
+    @Benchmark
+    public Map<Integer, Entry> getEntryMap() {
+        return feed.getEntryMap();
+    }
+}
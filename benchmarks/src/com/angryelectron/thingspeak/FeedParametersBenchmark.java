@@ -0,0 +1,91 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding {@link FeedParameters} as a query string, for parameters set for
+ * each request and for parameters built once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FeedParametersBenchmark {
+
+    private final Date start = new Date(1414800000000L);
+    private final Date end = new Date(1416398400000L);
+    private ImmutableFeedParameters built;
+
+    @Setup
+    public void setup() {
+        built = new FeedParameters.Builder()
+                .start(start)
+                .end(end)
+                .status(true)
+                .location(true)
+                .results(8000)
+                .average(FeedParameters.Period.T1h)
+                .build();
+    }
+
+    @Benchmark
+    public String encodeMutable() {
+        FeedParameters options = new FeedParameters();
+        options.start(start);
+        options.end(end);
+        options.status(true);
+        options.location(true);
+        options.results(8000);
+        options.average(FeedParameters.Period.T1h);
+        return options.getQueryString();
+    }
+
+    @Benchmark
+    public ImmutableFeedParameters build() {
+        return new FeedParameters.Builder()
+                .start(start)
+                .end(end)
+                .status(true)
+                .location(true)
+                .results(8000)
+                .average(FeedParameters.Period.T1h)
+                .build();
+    }
+
+    @Benchmark
+    public String encodeImmutable() {
+        return built.getQueryString();
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * ThingSpeak Appender for log4j Copyright 2014, Andrew Bythell
+ * <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * the ThingSpeak Appender. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak.log4j;
+
+import com.angryelectron.thingspeak.CannedTransport;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Category;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of logging an event to {@link ThingSpeakAppender}, which is paid by
+ * the application thread. Batches are sent to an in-memory transport by the
+ * appender's own thread. Events overflowing the buffer are dropped, so a
+ * slow background thread cannot stall the benchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThingSpeakAppenderBenchmark {
+
+    @Param({"false", "true"})
+    boolean aggregate;
+
+    private ThingSpeakAppender appender;
+    private LoggingEvent event;
+
+    @Setup
+    public void setup() {
+        appender = new ThingSpeakAppender();
+        appender.configureChannel(9, "BENCHMARK", "http://localhost");
+        appender.setTransport(new CannedTransport("{\"success\":true}"));
+        appender.setBufferSize(65536);
+        appender.setFlushInterval(100);
+        appender.setOverflowPolicy("DROP_OLDEST");
+        appender.setAggregate(aggregate);
+        appender.setAggregationInterval(100);
+        appender.activateOptions();
+        event = new LoggingEvent(Category.class.getName(), Logger.getLogger(ThingSpeakAppenderBenchmark.class),
+                Level.INFO, "Benchmark message", null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        appender.close();
+    }
+
+    @Benchmark
+    public void append() {
+        appender.append(event);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void appendFromFourThreads() {
+        appender.append(event);
+    }
+}
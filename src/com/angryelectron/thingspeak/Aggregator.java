@@ -0,0 +1,346 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Computes rollups of channel data locally, like the sum, average, and
+ * median {@link FeedParameters} ask the server for, but over windows of any
+ * length. Entries are added one at a time, oldest first, and each window is
+ * passed to a consumer as soon as an entry for a later window arrives:</p>
+ * <pre>
+ * {@code
+ * Aggregator aggregator = new Aggregator(90, TimeUnit.SECONDS, true, window ->
+ *         System.out.println(window.getStart() + " " + window.getMean(1) + " " + window.getPercentile(1, 95)));
+ * new HistoryExporter(channel).export(start, end, aggregator);
+ * aggregator.flush();
+ * }
+ * </pre>
+ * <p>
+ * Windows are aligned to multiples of the window length since the epoch,
+ * as the server's periods are. Count, sum, mean, min, and max are updated
+ * as each entry is added and use constant memory per window. The median
+ * and other percentiles need every value in the window, so they are only
+ * available if enabled when the aggregator is created.</p>
+ * <p>
+ * Field values which are missing or not numbers are ignored. Entries which
+ * arrive after their window has been passed on are dropped and counted by
+ * {@link #getLateEntries()}. This class is not thread-safe.</p>
+ */
+public class Aggregator implements HistoryExporter.Sink {
+
+    private static final int FIELDS = 8;
+
+    /**
+     * Statistics for each field over one window of time.
+     */
+    public static class Window {
+
+        private final long start;
+        private final long end;
+        private final long[] count = new long[FIELDS];
+        private final double[] sum = new double[FIELDS];
+        private final double[] min = new double[FIELDS];
+        private final double[] max = new double[FIELDS];
+
+        /**
+         * All values of each field, if percentiles are enabled; sorted when
+         * first needed.
+         */
+        private final double[][] values;
+        private final boolean[] sorted;
+
+        private Window(long start, long end, boolean percentiles) {
+            this.start = start;
+            this.end = end;
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+            this.values = percentiles ? new double[FIELDS][] : null;
+            this.sorted = percentiles ? new boolean[FIELDS] : null;
+        }
+
+        private void add(int index, double value) {
+            int n = (int) count[index]++;
+            sum[index] += value;
+            min[index] = Math.min(min[index], value);
+            max[index] = Math.max(max[index], value);
+            if (values != null) {
+                if (values[index] == null) {
+                    values[index] = new double[16];
+                } else if (n == values[index].length) {
+                    values[index] = Arrays.copyOf(values[index], n * 2);
+                }
+                values[index][n] = value;
+                sorted[index] = false;
+            }
+        }
+
+        /**
+         * Get the start of this window.
+         *
+         * @return Start date, inclusive.
+         */
+        public Date getStart() {
+            return new Date(start);
+        }
+
+        /**
+         * Get the end of this window.
+         *
+         * @return End date, exclusive.
+         */
+        public Date getEnd() {
+            return new Date(end);
+        }
+
+        /**
+         * Get the number of values of a field in this window.
+         *
+         * @param field 1-8.
+         * @return Number of values.
+         */
+        public long getCount(int field) {
+            return count[checkField(field)];
+        }
+
+        /**
+         * Get the sum of the values of a field.
+         *
+         * @param field 1-8.
+         * @return Sum; 0 if there are no values.
+         */
+        public double getSum(int field) {
+            return sum[checkField(field)];
+        }
+
+        /**
+         * Get the mean of the values of a field.
+         *
+         * @param field 1-8.
+         * @return Mean; NaN if there are no values.
+         */
+        public double getMean(int field) {
+            int index = checkField(field);
+            return count[index] == 0 ? Double.NaN : sum[index] / count[index];
+        }
+
+        /**
+         * Get the smallest value of a field.
+         *
+         * @param field 1-8.
+         * @return Minimum; NaN if there are no values.
+         */
+        public double getMin(int field) {
+            int index = checkField(field);
+            return count[index] == 0 ? Double.NaN : min[index];
+        }
+
+        /**
+         * Get the largest value of a field.
+         *
+         * @param field 1-8.
+         * @return Maximum; NaN if there are no values.
+         */
+        public double getMax(int field) {
+            int index = checkField(field);
+            return count[index] == 0 ? Double.NaN : max[index];
+        }
+
+        /**
+         * Get the median of the values of a field.
+         *
+         * @param field 1-8.
+         * @return Median; NaN if there are no values.
+         * @throws IllegalStateException Percentiles were not enabled.
+         */
+        public double getMedian(int field) {
+            return getPercentile(field, 50);
+        }
+
+        /**
+         * Get a percentile of the values of a field, interpolating between
+         * the closest values.
+         *
+         * @param field 1-8.
+         * @param percentile 0-100.
+         * @return Percentile; NaN if there are no values.
+         * @throws IllegalStateException Percentiles were not enabled.
+         */
+        public double getPercentile(int field, double percentile) {
+            int index = checkField(field);
+            if (values == null) {
+                throw new IllegalStateException("Percentiles are not enabled.");
+            }
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+            }
+            int n = (int) count[index];
+            if (n == 0) {
+                return Double.NaN;
+            }
+            if (!sorted[index]) {
+                Arrays.sort(values[index], 0, n);
+                sorted[index] = true;
+            }
+            double rank = percentile / 100 * (n - 1);
+            int lower = (int) rank;
+            if (lower == n - 1) {
+                return values[index][lower];
+            }
+            double fraction = rank - lower;
+            return values[index][lower] + fraction * (values[index][lower + 1] - values[index][lower]);
+        }
+    }
+
+    private final long length;
+    private final boolean percentiles;
+    private final Consumer<Window> consumer;
+    private Window current;
+    private long lastWindowEnd = Long.MIN_VALUE;
+    private long lateEntries;
+
+    /**
+     * Constructor.
+     *
+     * @param length Window length.
+     * @param unit Units of length.
+     * @param percentiles Keep the values in each window so the median and
+     * other percentiles can be calculated.
+     * @param consumer Receives each window once it is complete. Windows
+     * without any entries are skipped.
+     */
+    public Aggregator(long length, TimeUnit unit, boolean percentiles, Consumer<Window> consumer) {
+        this.length = unit.toMillis(length);
+        if (this.length < 1) {
+            throw new IllegalArgumentException("Window must be at least one millisecond long.");
+        }
+        this.percentiles = percentiles;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Add an entry. Entries should be added oldest first. Entries without a
+     * creation date are ignored.
+     *
+     * @param entry Entry.
+     */
+    public void add(Entry entry) {
+        Date created = entry.getCreated();
+        if (created == null) {
+            return;
+        }
+        Window window = window(created.getTime());
+        if (window == null) {
+            return;
+        }
+        for (int field = 1; field <= FIELDS; field++) {
+            double value = entry.getFieldAsDouble(field);
+            if (!Double.isNaN(value)) {
+                window.add(field - 1, value);
+            }
+        }
+    }
+
+    /**
+     * Add every entry in a columnar feed. This avoids parsing field values.
+     *
+     * @param feed Feed.
+     */
+    public void add(ColumnarFeed feed) {
+        for (int row = 0; row < feed.size(); row++) {
+            Window window = window(feed.getTimestamp(row));
+            if (window == null) {
+                continue;
+            }
+            for (int field = 1; field <= FIELDS; field++) {
+                if (feed.hasValue(field, row)) {
+                    window.add(field - 1, feed.getValue(field, row));
+                }
+            }
+        }
+    }
+
+    /**
+     * Add an entry. Allows an aggregator to be used as the sink for a
+     * {@link HistoryExporter}.
+     *
+     * @param entry Entry.
+     */
+    @Override
+    public void write(Entry entry) {
+        add(entry);
+    }
+
+    /**
+     * Pass the current window to the consumer, even though later entries
+     * could still be added to it. Call this when there are no more entries.
+     */
+    public void flush() {
+        if (current != null) {
+            lastWindowEnd = current.end;
+            consumer.accept(current);
+            current = null;
+        }
+    }
+
+    /**
+     * Get the number of entries dropped because they arrived after their
+     * window was complete.
+     *
+     * @return Number of entries.
+     */
+    public long getLateEntries() {
+        return lateEntries;
+    }
+
+    /**
+     * Find the window for a time, completing the current window if the time
+     * is after it.
+     *
+     * @param time Milliseconds since the epoch.
+     * @return Window, or null if the time is in a window that is complete.
+     */
+    private Window window(long time) {
+        long start = Math.floorDiv(time, length) * length;
+        if (start < lastWindowEnd || (current != null && start < current.start)) {
+            lateEntries++;
+            return null;
+        }
+        if (current != null && start >= current.end) {
+            flush();
+        }
+        if (current == null) {
+            current = new Window(start, start + length, percentiles);
+        }
+        return current;
+    }
+
+    private static int checkField(int field) {
+        if (field < 1 || field > FIELDS) {
+            throw new IllegalArgumentException("Invalid field.");
+        }
+        return field - 1;
+    }
+}
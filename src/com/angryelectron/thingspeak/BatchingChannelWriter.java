@@ -0,0 +1,436 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import com.mashape.unirest.http.exceptions.UnirestException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * Collects {@link Entry}s for a channel and posts them together using
+ * {@link Channel#bulkUpdate(java.util.List)}. A batch is sent when it contains
+ * a maximum number of entries, or when its oldest entry has waited for a
+ * maximum delay, whichever comes first. Entries are time-stamped when they
+ * are written, so they keep their original dates even though they reach the
+ * server later:</p>
+ * <pre>
+ * {@code
+ * Channel channel = new Channel(1234, writeKey);
+ * BatchingChannelWriter writer = new BatchingChannelWriter(channel, 500, 60, TimeUnit.SECONDS);
+ * writer.write(entry);
+ * ...
+ * writer.close();
+ * }
+ * </pre>
+ * <p>
+ * Batches are sent from a background thread, so {@link #write(Entry)} never
+ * blocks on the network. If a batch cannot be sent, its entries are kept and
+ * sent with the next batch, after a delay which doubles with each failure
+ * from 1 second up to 5 minutes. At most one send is scheduled at a time,
+ * and bulk updates are at least {@link #setUpdateInterval(long, TimeUnit)}
+ * apart (15 seconds, the rate limit of thingspeak.com, by default). The
+ * number of unsent entries is limited by {@link #setCapacity(int)}; when it
+ * is reached, the writer blocks until there is room, unless
+ * {@link #setOverflowPolicy(OverflowPolicy)} allows entries to be dropped.
+ * Many writers can share a
+ * single scheduler by using
+ * {@link #BatchingChannelWriter(Channel, int, long, TimeUnit, ScheduledExecutorService)}.</p>
+ */
+public class BatchingChannelWriter implements AutoCloseable {
+
+    /**
+     * What {@link #write(Entry)} does when the writer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait until there is room.
+         */
+        BLOCK,
+        /**
+         * Drop the oldest unsent entry to make room.
+         */
+        DROP_OLDEST,
+        /**
+         * Drop the new entry.
+         */
+        DROP_NEWEST
+    }
+
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 300000;
+    private static final long DEFAULT_INTERVAL_MILLIS = 15000;
+
+    private final Channel channel;
+    private final int maxEntries;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+
+    /**
+     * Entries waiting to be sent, oldest first, and the single scheduled send
+     * with the time it is due. After a failed send, no send is scheduled
+     * before retryAt. Guarded by this.
+     */
+    private ArrayList<Entry> pending = new ArrayList<>();
+    private ScheduledFuture<?> timer;
+    private long timerDue;
+    private long backoffMillis;
+    private long retryAt;
+    private boolean closed;
+    private int capacity = 10 * Channel.MAX_BULK_ENTRIES;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private long dropped;
+    private volatile long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+
+    /**
+     * Held while a batch is being sent, so batches reach the server in order.
+     * lastSend is when the last bulk update started; it is written with
+     * sendLock held and read by scheduleFlush.
+     */
+    private final Object sendLock = new Object();
+    private volatile long lastSend;
+
+    /**
+     * Constructor. Creates a background thread for sending batches, which is
+     * stopped by {@link #close()}.
+     *
+     * @param channel The channel to update.
+     * @param maxEntries Send a batch when it contains this many entries (1 -
+     * {@link Channel#MAX_BULK_ENTRIES}).
+     * @param maxDelay Send a batch when its oldest entry has waited this long.
+     * @param unit Unit of maxDelay.
+     */
+    public BatchingChannelWriter(Channel channel, int maxEntries, long maxDelay, TimeUnit unit) {
+        this(channel, maxEntries, maxDelay, unit, Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "thingspeak-batch-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }), true);
+    }
+
+    /**
+     * Constructor. Batches are sent using the given scheduler, which is not
+     * shut down by {@link #close()}.
+     *
+     * @param channel The channel to update.
+     * @param maxEntries Send a batch when it contains this many entries (1 -
+     * {@link Channel#MAX_BULK_ENTRIES}).
+     * @param maxDelay Send a batch when its oldest entry has waited this long.
+     * @param unit Unit of maxDelay.
+     * @param scheduler Scheduler used to send batches.
+     */
+    public BatchingChannelWriter(Channel channel, int maxEntries, long maxDelay, TimeUnit unit, ScheduledExecutorService scheduler) {
+        this(channel, maxEntries, maxDelay, unit, scheduler, false);
+    }
+
+    private BatchingChannelWriter(Channel channel, int maxEntries, long maxDelay, TimeUnit unit, ScheduledExecutorService scheduler, boolean ownsScheduler) {
+        if (maxEntries < 1 || maxEntries > Channel.MAX_BULK_ENTRIES) {
+            throw new IllegalArgumentException("Batch size must be between 1 and " + Channel.MAX_BULK_ENTRIES + ".");
+        }
+        this.channel = channel;
+        this.maxEntries = maxEntries;
+        this.maxDelayMillis = unit.toMillis(maxDelay);
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    /**
+     * Set the maximum number of unsent entries. Default is ten full bulk
+     * updates ({@value Channel#MAX_BULK_ENTRIES} entries each). A batch
+     * which fails is returned to the queue even if this makes it exceed the
+     * capacity, so no more than one batch over capacity is held.
+     *
+     * @param entries Maximum number of entries, at least the batch size.
+     */
+    public synchronized void setCapacity(int entries) {
+        if (entries < maxEntries) {
+            throw new IllegalArgumentException("Capacity cannot be less than the batch size.");
+        }
+        this.capacity = entries;
+    }
+
+    /**
+     * Set what happens when an entry is written and the writer is full.
+     * Default is {@link OverflowPolicy#BLOCK}, so no entries are lost; use
+     * one of the DROP policies if the caller must never wait.
+     *
+     * @param policy Policy.
+     */
+    public synchronized void setOverflowPolicy(OverflowPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Policy cannot be null.");
+        }
+        this.overflowPolicy = policy;
+    }
+
+    /**
+     * Set the minimum time between bulk updates. Default is 15 seconds, the
+     * rate limit of thingspeak.com. Use a shorter interval for a server with
+     * a different rate limit.
+     *
+     * @param interval Minimum time between bulk updates.
+     * @param unit Unit of interval.
+     */
+    public void setUpdateInterval(long interval, TimeUnit unit) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Interval cannot be negative.");
+        }
+        this.intervalMillis = unit.toMillis(interval);
+    }
+
+    /**
+     * Get the number of entries dropped because the writer was full.
+     *
+     * @return Number of entries.
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Add an entry to the current batch. If the entry does not have a date,
+     * it is set to the current time. If the writer is full, the overflow
+     * policy applies; with {@link OverflowPolicy#BLOCK}, an interrupted
+     * writer drops the entry and keeps its interrupt status.
+     *
+     * @param entry The new data to be posted.
+     */
+    public void write(Entry entry) {
+        if (entry.getCreated() == null) {
+            entry.setCreated(new Date());
+        }
+        synchronized (this) {
+            checkOpen();
+            while (pending.size() >= capacity) {
+                if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+                    dropped++;
+                    return;
+                } else if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                    pending.remove(0);
+                    dropped++;
+                } else {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        dropped++;
+                        return;
+                    }
+                    checkOpen();
+                }
+            }
+            pending.add(entry);
+            scheduleFlush((pending.size() >= maxEntries) ? 0 : maxDelayMillis);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed.");
+        }
+    }
+
+    /**
+     * Get the number of entries that have not yet been sent.
+     *
+     * @return Number of entries.
+     */
+    public synchronized int pending() {
+        return pending.size();
+    }
+
+    /**
+     * Send all pending entries now, in one or more batches. Blocks until the
+     * entries have been sent, waiting for the update interval before each
+     * batch. If the calling thread is interrupted while waiting, the rest of
+     * the entries are kept and the interrupt status is set.
+     *
+     * @throws UnirestException The request cannot be made. Unsent entries are
+     * kept and will be sent with the next batch.
+     * @throws ThingSpeakException The request is invalid. Unsent entries are
+     * kept and will be sent with the next batch.
+     */
+    public void flush() throws UnirestException, ThingSpeakException {
+        send(true);
+    }
+
+    /**
+     * Send pending entries, one batch per update interval.
+     *
+     * @param wait True to wait for the interval between batches; false to
+     * send only what can be sent now and schedule the rest.
+     */
+    private void send(boolean wait) throws UnirestException, ThingSpeakException {
+        synchronized (sendLock) {
+            while (true) {
+                long delay = lastSend + intervalMillis - System.currentTimeMillis();
+                if (delay > 0) {
+                    if (!wait) {
+                        synchronized (this) {
+                            cancelTimer();
+                            if (!closed && !pending.isEmpty()) {
+                                scheduleFlush(0);
+                            }
+                        }
+                        return;
+                    }
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                List<Entry> batch = nextBatch();
+                if (batch.isEmpty()) {
+                    return;
+                }
+                lastSend = System.currentTimeMillis();
+                try {
+                    channel.bulkUpdate(batch);
+                } catch (UnirestException | ThingSpeakException | RuntimeException ex) {
+                    requeue(batch);
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Send all pending entries and stop accepting new ones. If this writer
+     * created its own scheduler, it is shut down.
+     *
+     * @throws UnirestException The request cannot be made.
+     * @throws ThingSpeakException The request is invalid.
+     */
+    @Override
+    public void close() throws UnirestException, ThingSpeakException {
+        synchronized (this) {
+            closed = true;
+            cancelTimer();
+            notifyAll();
+        }
+        try {
+            flush();
+        } finally {
+            if (ownsScheduler) {
+                scheduler.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Remove up to maxEntries of the oldest pending entries.
+     *
+     * @return Entries to send; empty if there is nothing to send.
+     */
+    private synchronized List<Entry> nextBatch() {
+        cancelTimer();
+        notifyAll();
+        if (pending.size() <= maxEntries) {
+            List<Entry> batch = pending;
+            pending = new ArrayList<>();
+            return batch;
+        }
+        List<Entry> head = pending.subList(0, maxEntries);
+        List<Entry> batch = new ArrayList<>(head);
+        head.clear();
+        return batch;
+    }
+
+    /**
+     * Return entries which could not be sent to the front of the queue and
+     * try again later.
+     *
+     * @param batch Entries to return.
+     */
+    private synchronized void requeue(List<Entry> batch) {
+        pending.addAll(0, batch);
+        if (!closed) {
+            scheduleFlush(maxDelayMillis);
+        }
+    }
+
+    /**
+     * Make sure a send is scheduled within a delay, or as soon after that as
+     * the backoff and the update interval allow. An earlier scheduled send is
+     * kept.
+     *
+     * @param delayMillis Delay.
+     */
+    private void scheduleFlush(long delayMillis) {
+        long now = System.currentTimeMillis();
+        long due = Math.max(Math.max(now + delayMillis, retryAt), lastSend + intervalMillis);
+        if (timer != null && timerDue <= due) {
+            return;
+        }
+        cancelTimer();
+        timerDue = due;
+        timer = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flushAndLog();
+            }
+        }, due - now, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelTimer() {
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+    }
+
+    /**
+     * Flush from the background thread, where there is no caller to report
+     * errors to. After a failure, the next attempt is delayed by the backoff.
+     */
+    private void flushAndLog() {
+        try {
+            send(false);
+            synchronized (this) {
+                backoffMillis = 0;
+                retryAt = 0;
+            }
+        } catch (UnirestException | ThingSpeakException | RuntimeException ex) {
+            Logger.getLogger(BatchingChannelWriter.class.getName()).log(Level.WARNING, null, ex);
+            synchronized (this) {
+                backoffMillis = (backoffMillis == 0) ? MIN_BACKOFF_MILLIS : Math.min(MAX_BACKOFF_MILLIS, backoffMillis * 2);
+                retryAt = System.currentTimeMillis() + backoffMillis;
+                cancelTimer();
+                if (!closed && !pending.isEmpty()) {
+                    scheduleFlush(0);
+                }
+            }
+        }
+    }
+}
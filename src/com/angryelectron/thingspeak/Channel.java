@@ -21,12 +21,20 @@ package com.angryelectron.thingspeak;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.JsonNode;
-import com.mashape.unirest.http.Unirest;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
 import com.mashape.unirest.http.exceptions.UnirestException;
-import com.mashape.unirest.request.GetRequest;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Thingspeak Channel. Methods for updating and requesting feeds and entries
@@ -38,12 +46,27 @@ public class Channel {
     //self-hosted servers.
     private String APIURL = "http://api.thingspeak.com";
     private static final String APIHEADER = "X-THINGSPEAKAPIKEY";
+
+    /**
+     * The maximum number of entries ThingSpeak accepts in a single bulk
+     * update.
+     */
+    public static final int MAX_BULK_ENTRIES = 960;
+
     private final Integer channelId;
     private String readAPIKey;
     private String writeAPIKey;
     private final Boolean isPublic;
     private final HashMap<String, Object> fields = new HashMap<>();
-    private final Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX").create();
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(Date.class, new TimestampCodec.DateAdapter())
+            .registerTypeAdapterFactory(Entry.JsonAdapter.FACTORY)
+            .registerTypeAdapterFactory(ColumnarFeed.JsonAdapter.FACTORY)
+            .create();
+    private static volatile HttpTransport defaultTransport = new UnirestTransport();
+    private HttpTransport transport = defaultTransport;
+    private static final SingleFlight readsInFlight = new SingleFlight();
+    private volatile boolean coalesceReads;
 
     /**
      * Constructor for a public, read-only, Thingspeak channel. This type of
@@ -90,20 +113,13 @@ public class Channel {
      * parameters.
      *
      * @param url The API url.
-     * @return JSON string.
+     * @param type The class to de-serialize the response into.
+     * @return Response.
      * @throws UnirestException The request cannot be made.
      * @throws ThingSpeakException The request is invalid.
      */
-    private String thingRequest(String url) throws UnirestException, ThingSpeakException {
-        GetRequest request = Unirest.get(url);
-        if (!this.isPublic) {
-            request.field("key", this.readAPIKey);
-        }
-        HttpResponse<JsonNode> response = request.asJson();
-        if (response.getCode() != 200) {
-            throw new ThingSpeakException("Request failed with code " + response.getCode());
-        }
-        return response.getBody().toString();
+    private <T> T thingRequest(String url, Class<T> type) throws UnirestException, ThingSpeakException {
+        return read(readRequest(url), type);
     }
 
     /**
@@ -111,21 +127,106 @@ public class Channel {
      *
      * @param url The API url.
      * @param options Optional feed parameters.
-     * @return JSON string.
+     * @param type The class to de-serialize the response into.
+     * @return Response.
      * @throws UnirestException The request cannot be made.
      * @throws ThingSpeakException The request is invalid.
      */
-    private String thingRequest(String url, FeedParameters options) throws UnirestException, ThingSpeakException {
-        GetRequest request = Unirest.get(url);
+    private <T> T thingRequest(String url, FeedOptions options, Class<T> type) throws UnirestException, ThingSpeakException {
+        return read(readRequest(url).query(options.getQueryString()), type);
+    }
+
+    /**
+     * Send a GET request and de-serialize the response, sharing the request
+     * with other callers if reads are coalesced.
+     *
+     * @param request The request.
+     * @param type The class to de-serialize the response into.
+     * @return Response.
+     * @throws UnirestException The request cannot be made.
+     * @throws ThingSpeakException The request is invalid.
+     */
+    private <T> T read(TransportRequest request, Class<T> type) throws UnirestException, ThingSpeakException {
+        if (!coalesceReads) {
+            return send(request, response -> parseReadResponse(response, type));
+        }
+        return readsInFlight.execute(readKey(request, type),
+                () -> send(request, response -> parseReadResponse(response, type)));
+    }
+
+    /**
+     * Send a GET request without blocking. See
+     * {@link #read(com.angryelectron.thingspeak.TransportRequest, java.lang.Class)}.
+     *
+     * @param request The request.
+     * @param type The class to de-serialize the response into.
+     * @return A future which completes with the response.
+     */
+    private <T> CompletableFuture<T> readAsync(TransportRequest request, Class<T> type) {
+        if (!coalesceReads) {
+            return sendAsync(request, response -> parseReadResponse(response, type));
+        }
+        return readsInFlight.executeAsync(readKey(request, type),
+                () -> sendAsync(request, response -> parseReadResponse(response, type)));
+    }
+
+    /**
+     * Identify a read for coalescing. Requests are the same if they have the
+     * same URL, parameters (including the read key), and result type. Feed
+     * parameters are encoded in order of name, so their order does not
+     * matter; see {@link FeedOptions#cacheKey()}.
+     *
+     * @param request The request.
+     * @param type The class the response is de-serialized into.
+     * @return Key.
+     */
+    private static String readKey(TransportRequest request, Class<?> type) {
+        return type.getName() + " " + request.getUrl() + "?" + request.getQuery()
+                + " " + new TreeMap<>(request.getParameters());
+    }
+
+    /**
+     * Build a GET request, including the read key for private channels.
+     *
+     * @param url The API url.
+     * @return Request.
+     */
+    private TransportRequest readRequest(String url) {
+        TransportRequest request = TransportRequest.get(url);
         if (!this.isPublic) {
-            request.field("key", this.readAPIKey);
+            request.parameter("key", this.readAPIKey);
         }
-        request.fields(options.fields);
-        HttpResponse<JsonNode> response = request.asJson();
+        return request;
+    }
+
+    /**
+     * Check the response to a GET request and de-serialize it. The JSON is
+     * parsed in a single pass as it is read from the response stream, so the
+     * body is never held in memory as a String.
+     *
+     * @param response Response.
+     * @param type The class to de-serialize the response into.
+     * @return Response.
+     * @throws ThingSpeakException The request was rejected.
+     */
+    private <T> T parseReadResponse(TransportResponse response, Class<T> type) throws ThingSpeakException {
+        checkReadResponse(response);
+        JsonReader reader = new JsonReader(new InputStreamReader(response.getStream(), StandardCharsets.UTF_8));
+        return gson.fromJson(reader, type);
+    }
+
+    /**
+     * Check the status of the response to a GET request.
+     *
+     * @param response Response.
+     * @return null.
+     * @throws ThingSpeakException The request was rejected.
+     */
+    private Void checkReadResponse(TransportResponse response) throws ThingSpeakException {
         if (response.getCode() != 200) {
-            throw new ThingSpeakException("Request failed with code " + response.getCode());
+            throw new ThingSpeakException("Request failed with code " + response.getCode(), response.getCode());
         }
-        return response.getBody().toString();
+        return null;
     }
 
     /**
@@ -139,6 +240,50 @@ public class Channel {
         this.APIURL = url;
     }
 
+    /**
+     * Use a different {@link HttpTransport} for requests made by this
+     * channel.
+     *
+     * @param transport Transport.
+     */
+    public void setTransport(HttpTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Set the {@link HttpTransport} used by channels created after this call.
+     * The default is {@link UnirestTransport}.
+     *
+     * @param transport Transport.
+     */
+    public static void setDefaultTransport(HttpTransport transport) {
+        defaultTransport = transport;
+    }
+
+    /**
+     * Get the {@link HttpTransport} used by new channels.
+     *
+     * @return Transport.
+     */
+    public static HttpTransport getDefaultTransport() {
+        return defaultTransport;
+    }
+
+    /**
+     * Coalesce identical reads. When enabled, if several threads request the
+     * same feed or entry with the same parameters at the same time (from this
+     * or any other Channel with reads coalesced), only one request is sent
+     * and every caller receives the same result object. Callers must then
+     * treat returned feeds and entries as read-only. Results are not cached:
+     * a request made after another completes is always sent. Disabled by
+     * default.
+     *
+     * @param coalesce True to share identical reads in flight.
+     */
+    public void setCoalesceReads(boolean coalesce) {
+        this.coalesceReads = coalesce;
+    }
+
     /**
      * Update channel with new data.
      *
@@ -148,17 +293,238 @@ public class Channel {
      * @throws ThingSpeakException The request is invalid.
      */
     public Integer update(Entry entry) throws UnirestException, ThingSpeakException {
-        HttpResponse<String> response = Unirest.post(APIURL + "/update")
+        return send(updateRequest(entry), this::parseUpdateResponse);
+    }
+
+    /**
+     * Update channel with new data without blocking the calling thread. The
+     * request is sent over the transport's bounded pool of keep-alive
+     * connections (see {@link ConnectionPool} and {@link JdkHttpTransport}),
+     * so many updates can be in-flight at once without creating a thread for
+     * each one.
+     *
+     * @param entry The new data to be posted.
+     * @return A future which completes with the id of the new entry, or
+     * completes exceptionally with a {@link UnirestException} if the request
+     * cannot be made, or a {@link ThingSpeakException} if it is invalid.
+     */
+    public CompletableFuture<Integer> updateAsync(Entry entry) {
+        return sendAsync(updateRequest(entry), this::parseUpdateResponse);
+    }
+
+    /**
+     * Build an update request.
+     *
+     * @param entry The new data to be posted.
+     * @return Request.
+     */
+    private TransportRequest updateRequest(Entry entry) {
+        return TransportRequest.postForm(APIURL + "/update")
                 .header(APIHEADER, this.writeAPIKey)
-                .header("Connection", "close")
-                .fields(entry.getUpdateMap())
-                .asString();
+                .parameters(updateFields(entry));
+    }
+
+    /**
+     * Update channel with several entries in a single request, using the bulk
+     * update API. Each entry should have a date set using
+     * {@link Entry#setCreated(java.util.Date)}, otherwise the server will use
+     * the time the request was received for all entries.
+     *
+     * @param entries The new data to be posted, oldest first. At most
+     * {@link #MAX_BULK_ENTRIES}.
+     * @throws UnirestException The request cannot be made.
+     * @throws ThingSpeakException The request is invalid.
+     */
+    public void bulkUpdate(List<Entry> entries) throws UnirestException, ThingSpeakException {
+        if (entries.size() > MAX_BULK_ENTRIES) {
+            throw new IllegalArgumentException("Bulk update cannot contain more than " + MAX_BULK_ENTRIES + " entries.");
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        send(bulkUpdateRequest(entries), this::parseBulkUpdateResponse);
+    }
+
+    /**
+     * Update channel with several entries in a single request, without
+     * blocking the calling thread. See {@link #bulkUpdate(java.util.List)}
+     * and {@link #updateAsync(com.angryelectron.thingspeak.Entry)}.
+     *
+     * @param entries The new data to be posted, oldest first. At most
+     * {@link #MAX_BULK_ENTRIES}.
+     * @return A future which completes when the entries have been accepted,
+     * or completes exceptionally with a {@link UnirestException} if the
+     * request cannot be made, or a {@link ThingSpeakException} if it is
+     * invalid.
+     */
+    public CompletableFuture<Void> bulkUpdateAsync(List<Entry> entries) {
+        if (entries.size() > MAX_BULK_ENTRIES) {
+            throw new IllegalArgumentException("Bulk update cannot contain more than " + MAX_BULK_ENTRIES + " entries.");
+        }
+        if (entries.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return sendAsync(bulkUpdateRequest(entries), this::parseBulkUpdateResponse);
+    }
+
+    /**
+     * Build a bulk update request.
+     *
+     * @param entries Entries to include in the update.
+     * @return Request.
+     */
+    private TransportRequest bulkUpdateRequest(List<Entry> entries) {
+        return TransportRequest.postJson(APIURL + "/channels/" + this.channelId + "/bulk_update.json",
+                bulkUpdateBody(entries));
+    }
+
+    /**
+     * Check the response to a bulk update request.
+     *
+     * @param response Response.
+     * @return null.
+     * @throws IOException The response cannot be read.
+     * @throws ThingSpeakException The update was rejected.
+     */
+    private Void parseBulkUpdateResponse(TransportResponse response) throws IOException, ThingSpeakException {
+        if (response.getCode() != 200 && response.getCode() != 202) {
+            throw new ThingSpeakException("Request failed with code " + response.getCode(), response.getCode());
+        }
+        JsonElement success = new JsonParser().parse(response.getBody()).getAsJsonObject().get("success");
+        if (success == null || !success.getAsBoolean()) {
+            throw new ThingSpeakException("Bulk update failed.");
+        }
+        return null;
+    }
+
+    /**
+     * Build the JSON body for a bulk update request.
+     *
+     * @param entries Entries to include in the update.
+     * @return JSON string.
+     */
+    private String bulkUpdateBody(List<Entry> entries) {
+        StringBuilder json = new StringBuilder(64 + entries.size() * 64);
+        json.append("{\"write_api_key\":").append(gson.toJson(this.writeAPIKey)).append(",\"updates\":[");
+        for (int i = 0; i < entries.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            entries.get(i).appendUpdateJson(json, this::formatDate);
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Converts a response into a result.
+     */
+    private interface ResponseHandler<T> {
+
+        T handle(TransportResponse response) throws IOException, ThingSpeakException;
+    }
+
+    /**
+     * Send a request and wait for the response.
+     *
+     * @param request The request to send.
+     * @param handler Converts the response into a result.
+     * @return The result.
+     * @throws UnirestException The request cannot be made.
+     * @throws ThingSpeakException The request is invalid.
+     */
+    private <T> T send(TransportRequest request, ResponseHandler<T> handler) throws UnirestException, ThingSpeakException {
+        try (TransportResponse response = transport.execute(request)) {
+            return handler.handle(response);
+        } catch (IOException ex) {
+            throw unirestException(ex);
+        }
+    }
+
+    /**
+     * Send a request without blocking.
+     *
+     * @param request The request to send.
+     * @param handler Converts the response into a result.
+     * @return A future which completes with the result.
+     */
+    private <T> CompletableFuture<T> sendAsync(TransportRequest request, final ResponseHandler<T> handler) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        transport.executeAsync(request).whenComplete((response, error) -> {
+            if (error != null) {
+                future.completeExceptionally(unirestException(error));
+                return;
+            }
+            try (response) {
+                future.complete(handler.handle(response));
+            } catch (IOException ex) {
+                future.completeExceptionally(unirestException(ex));
+            } catch (ThingSpeakException | RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Report transport errors as a {@link UnirestException}, as they were
+     * before transports could be replaced.
+     *
+     * @param error Error from the transport.
+     * @return Exception.
+     */
+    private static UnirestException unirestException(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error.getCause() instanceof UnirestException) {
+            return (UnirestException) error.getCause();
+        }
+        return new UnirestException(error instanceof Exception ? (Exception) error : new Exception(error));
+    }
+
+    /**
+     * Get the update parameters for an entry. Dates are sent in the same
+     * format the server uses in its feeds.
+     *
+     * @param entry Entry.
+     * @return Field map.
+     */
+    private Map<String, Object> updateFields(Entry entry) {
+        HashMap<String, Object> map = entry.getUpdateMap();
+        Object created = map.get("created_at");
+        if (created instanceof Date) {
+            map.put("created_at", formatDate((Date) created));
+        }
+        return map;
+    }
+
+    /**
+     * Format a date the same way the server does in its feeds.
+     *
+     * @param date Date.
+     * @return Formatted date.
+     */
+    private String formatDate(Date date) {
+        return TimestampCodec.format(date.getTime());
+    }
+
+    /**
+     * Check the response to an update request.
+     *
+     * @param response Response.
+     * @return The id of the new entry.
+     * @throws IOException The response cannot be read.
+     * @throws ThingSpeakException The update was rejected.
+     */
+    private Integer parseUpdateResponse(TransportResponse response) throws IOException, ThingSpeakException {
         if (response.getCode() != 200) {
-            throw new ThingSpeakException("Request failed with code " + response.getCode());
-        } else if (response.getBody().equals("0")) {
+            throw new ThingSpeakException("Request failed with code " + response.getCode(), response.getCode());
+        }
+        String body = response.getBody();
+        if (body.trim().equals("0")) {
             throw new ThingSpeakException("Update failed.");
         }
-        return Integer.parseInt(response.getBody());
+        return Integer.parseInt(body.trim());
     }
 
     /**
@@ -171,7 +537,7 @@ public class Channel {
      */
     public Feed getChannelFeed() throws UnirestException, ThingSpeakException {
         String url = APIURL + "/channels/" + this.channelId + "/feed.json";
-        return gson.fromJson(thingRequest(url), Feed.class);
+        return thingRequest(url, Feed.class);
     }
 
     /**
@@ -183,9 +549,36 @@ public class Channel {
      * @throws UnirestException The request cannot be made.
      * @throws ThingSpeakException The request is invalid.
      */
-    public Feed getChannelFeed(FeedParameters options) throws UnirestException, ThingSpeakException {
+    public Feed getChannelFeed(FeedOptions options) throws UnirestException, ThingSpeakException {
         String url = APIURL + "/channels/" + this.channelId + "/feed.json";
-        return gson.fromJson(thingRequest(url, options), Feed.class);
+        return thingRequest(url, options, Feed.class);
+    }
+
+    /**
+     * Get a channel feed with default feed options, stored in columns of
+     * primitive values. See {@link ColumnarFeed}.
+     *
+     * @return Feed for this channel.
+     * @throws UnirestException The request cannot be made.
+     * @throws ThingSpeakException The request is invalid.
+     */
+    public ColumnarFeed getColumnarChannelFeed() throws UnirestException, ThingSpeakException {
+        String url = APIURL + "/channels/" + this.channelId + "/feed.json";
+        return thingRequest(url, ColumnarFeed.class);
+    }
+
+    /**
+     * Get a channel feed with additional feed options, stored in columns of
+     * primitive values. See {@link ColumnarFeed}.
+     *
+     * @param options Additional feed parameters.
+     * @return Feed for this channel.
+     * @throws UnirestException The request cannot be made.
+     * @throws ThingSpeakException The request is invalid.
+     */
+    public ColumnarFeed getColumnarChannelFeed(FeedOptions options) throws UnirestException, ThingSpeakException {
+        String url = APIURL + "/channels/" + this.channelId + "/feed.json";
+        return thingRequest(url, options, ColumnarFeed.class);
     }
 
     /**
@@ -199,7 +592,19 @@ public class Channel {
      */
     public Entry getLastChannelEntry() throws UnirestException, ThingSpeakException {
         String url = APIURL + "/channels/" + this.channelId + "/feed/last.json";
-        return gson.fromJson(thingRequest(url), Entry.class);
+        return thingRequest(url, Entry.class);
+    }
+
+    /**
+     * Get last entry in this channel without blocking the calling thread.
+     *
+     * @return A future which completes with the entry, or completes
+     * exceptionally with a {@link UnirestException} if the request cannot be
+     * made, or a {@link ThingSpeakException} if it is invalid.
+     */
+    public CompletableFuture<Entry> getLastChannelEntryAsync() {
+        String url = APIURL + "/channels/" + this.channelId + "/feed/last.json";
+        return readAsync(readRequest(url), Entry.class);
     }
 
     /**
@@ -212,9 +617,9 @@ public class Channel {
      * @throws UnirestException The request cannot be made.
      * @throws ThingSpeakException The request is invalid.
      */
-    public Entry getLastChannelEntry(FeedParameters options) throws UnirestException, ThingSpeakException {
+    public Entry getLastChannelEntry(FeedOptions options) throws UnirestException, ThingSpeakException {
         String url = APIURL + "/channels/" + this.channelId + "/feed/last.json";
-        return gson.fromJson(thingRequest(url, options), Entry.class);
+        return thingRequest(url, options, Entry.class);
     }
 
     /**
@@ -227,7 +632,7 @@ public class Channel {
      */
     public Feed getFieldFeed(Integer fieldId) throws UnirestException, ThingSpeakException {
         String url = APIURL + "/channels/" + this.channelId + "/field/" + fieldId + ".json";
-        return gson.fromJson(thingRequest(url), Feed.class);
+        return thingRequest(url, Feed.class);
     }
 
     /**
@@ -239,9 +644,9 @@ public class Channel {
      * @throws UnirestException The request cannot be made.
      * @throws ThingSpeakException The request is invalid.
      */
-    public Feed getFieldFeed(Integer fieldId, FeedParameters options) throws UnirestException, ThingSpeakException {
+    public Feed getFieldFeed(Integer fieldId, FeedOptions options) throws UnirestException, ThingSpeakException {
         String url = APIURL + "/channels/" + this.channelId + "/field/" + fieldId + ".json";
-        return gson.fromJson(thingRequest(url, options), Feed.class);
+        return thingRequest(url, options, Feed.class);
     }
 
     /**
@@ -254,7 +659,7 @@ public class Channel {
      */
     public Entry getLastFieldEntry(Integer fieldId) throws UnirestException, ThingSpeakException {
         String url = APIURL + "/channels/" + this.channelId + "/field/" + fieldId + "/last.json";
-        return gson.fromJson(thingRequest(url), Entry.class);
+        return thingRequest(url, Entry.class);
     }
 
     /**
@@ -266,9 +671,9 @@ public class Channel {
      * @throws UnirestException The request cannot be made.
      * @throws ThingSpeakException The request is invalid.
      */
-    public Entry getLastFieldEntry(Integer fieldId, FeedParameters options) throws UnirestException, ThingSpeakException {
+    public Entry getLastFieldEntry(Integer fieldId, FeedOptions options) throws UnirestException, ThingSpeakException {
         String url = APIURL + "/channels/" + this.channelId + "/field/" + fieldId + "/last.json";
-        return gson.fromJson(thingRequest(url, options), Entry.class);
+        return thingRequest(url, options, Entry.class);
     }
 
     /**
@@ -280,7 +685,7 @@ public class Channel {
      */
     public Feed getStatusFeed() throws UnirestException, ThingSpeakException {
         String url = APIURL + "/channels/" + this.channelId + "/status.json";
-        return gson.fromJson(thingRequest(url), Feed.class);
+        return thingRequest(url, Feed.class);
     }
 
     /**
@@ -292,9 +697,9 @@ public class Channel {
      * @throws UnirestException The request cannot be made.
      * @throws ThingSpeakException The request is invalid.
      */
-    public Feed getStatusFeed(FeedParameters options) throws UnirestException, ThingSpeakException {
+    public Feed getStatusFeed(FeedOptions options) throws UnirestException, ThingSpeakException {
         String url = APIURL + "/channels/" + this.channelId + "/status.json";
-        return gson.fromJson(thingRequest(url, options), Feed.class);
+        return thingRequest(url, options, Feed.class);
     }
 
     /**
@@ -319,7 +724,7 @@ public class Channel {
     public boolean isAvailable() {
         String url = APIURL + "/channels/" + this.channelId + "/feed.json" + "?key=" + this.readAPIKey + "&results=0";
         try {
-            thingRequest(url);
+            send(readRequest(url), this::checkReadResponse);
         } catch (UnirestException | ThingSpeakException e) {
             return false;
         }
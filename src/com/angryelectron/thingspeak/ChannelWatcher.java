@@ -0,0 +1,324 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * Watches many channels for new entries. Each channel's last entry is
+ * polled at a regular interval, and listeners are told only when its entry
+ * id changes:</p>
+ * <pre>
+ * {@code
+ * ChannelWatcher watcher = new ChannelWatcher(30, TimeUnit.SECONDS, 16);
+ * watcher.addListener((channel, entry) -> System.out.println(entry.getField(1)));
+ * for (Channel channel : channels) {
+ *     watcher.watch(channel);
+ * }
+ * }
+ * </pre>
+ * <p>
+ * Requests are made asynchronously (see
+ * {@link Channel#getLastChannelEntryAsync()}), so a single scheduling thread
+ * can watch thousands of channels. No more than a fixed number of requests
+ * are in flight at once; a channel whose poll is due while the limit is
+ * reached waits its turn. Polls are spread randomly over the interval, and
+ * each delay is varied by up to 10%, so requests do not arrive at the server
+ * in bursts.</p>
+ * <p>
+ * The first poll of a channel records its last entry without notifying
+ * listeners. Failed polls are logged and retried at the next interval.
+ * Listeners are called from the thread which completes the request and
+ * should return quickly.</p>
+ */
+public class ChannelWatcher implements AutoCloseable {
+
+    /**
+     * Receives new entries.
+     */
+    public interface Listener {
+
+        /**
+         * Called when a channel has a new last entry.
+         *
+         * @param channel The channel.
+         * @param entry The channel's new last entry.
+         */
+        void entryChanged(Channel channel, Entry entry);
+    }
+
+    /**
+     * Random variation applied to each delay, as a fraction of the interval.
+     */
+    private static final double JITTER = 0.1;
+
+    private final long interval;
+    private final int maxConcurrentRequests;
+    private final ScheduledThreadPoolExecutor executor;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<Channel, Watch> watches = new ConcurrentHashMap<>();
+
+    /**
+     * Polls waiting for a free request slot, and the number of requests in
+     * flight. Guarded by this.
+     */
+    private final ArrayDeque<Watch> waiting = new ArrayDeque<>();
+    private int active;
+
+    /**
+     * State of one watched channel.
+     */
+    private static class Watch {
+
+        private final Channel channel;
+        private volatile Integer lastEntryId;
+        private volatile boolean polled;
+        private volatile boolean cancelled;
+
+        private Watch(Channel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param interval Time between polls of each channel.
+     * @param unit Units of interval.
+     * @param maxConcurrentRequests Maximum number of requests in flight at
+     * once, across all channels.
+     */
+    public ChannelWatcher(long interval, TimeUnit unit, int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("At least one request must be allowed.");
+        }
+        this.interval = unit.toNanos(interval);
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "thingspeak-watcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Add a listener.
+     *
+     * @param listener Listener.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener.
+     *
+     * @param listener Listener.
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Start watching a channel. Does nothing if it is already being watched.
+     * The first poll is made at a random time within one interval.
+     *
+     * @param channel Channel.
+     */
+    public void watch(Channel channel) {
+        Watch watch = new Watch(channel);
+        if (watches.putIfAbsent(channel, watch) == null) {
+            long delay = (long) (ThreadLocalRandom.current().nextDouble() * interval);
+            try {
+                executor.schedule(() -> due(watch), delay, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException ex) {
+                watches.remove(channel);
+                throw new IllegalStateException("Watcher is closed.", ex);
+            }
+        }
+    }
+
+    /**
+     * Stop watching a channel. A poll already in flight may still notify
+     * listeners.
+     *
+     * @param channel Channel.
+     */
+    public void unwatch(Channel channel) {
+        Watch watch = watches.remove(channel);
+        if (watch != null) {
+            watch.cancelled = true;
+        }
+    }
+
+    /**
+     * Get the id of the last entry seen in a channel.
+     *
+     * @param channel Channel.
+     * @return Entry id, or null if the channel is not watched or has not been
+     * polled yet.
+     */
+    public Integer getLastEntryId(Channel channel) {
+        Watch watch = watches.get(channel);
+        return (watch == null) ? null : watch.lastEntryId;
+    }
+
+    /**
+     * Stop polling. Requests already in flight are allowed to complete, but
+     * listeners are not notified.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (Watch watch : watches.values()) {
+            watch.cancelled = true;
+        }
+        watches.clear();
+        synchronized (this) {
+            waiting.clear();
+        }
+    }
+
+    /**
+     * A channel is due to be polled: poll it now, or queue it if too many
+     * requests are in flight.
+     */
+    private void due(Watch watch) {
+        if (watch.cancelled) {
+            return;
+        }
+        synchronized (this) {
+            if (active >= maxConcurrentRequests) {
+                waiting.add(watch);
+                return;
+            }
+            active++;
+        }
+        poll(watch);
+    }
+
+    /**
+     * Poll a channel. The caller must hold a request slot.
+     */
+    private void poll(final Watch watch) {
+        if (watch.cancelled) {
+            release();
+            return;
+        }
+        CompletableFuture<Entry> request;
+        try {
+            request = watch.channel.getLastChannelEntryAsync();
+        } catch (RuntimeException ex) {
+            Logger.getLogger(ChannelWatcher.class.getName()).log(Level.WARNING, null, ex);
+            release();
+            reschedule(watch);
+            return;
+        }
+        request.whenComplete((entry, error) -> {
+            try {
+                if (error != null) {
+                    Logger.getLogger(ChannelWatcher.class.getName()).log(Level.WARNING, null, error);
+                } else {
+                    received(watch, entry);
+                }
+            } finally {
+                release();
+                reschedule(watch);
+            }
+        });
+    }
+
+    /**
+     * Compare a channel's last entry with the one seen before, and notify
+     * listeners if it has changed.
+     */
+    private void received(Watch watch, Entry entry) {
+        Integer id = (entry == null) ? null : entry.getEntryId();
+        boolean changed = watch.polled && id != null && !id.equals(watch.lastEntryId);
+        watch.polled = true;
+        if (id != null) {
+            watch.lastEntryId = id;
+        }
+        if (changed && !watch.cancelled) {
+            for (Listener listener : listeners) {
+                try {
+                    listener.entryChanged(watch.channel, entry);
+                } catch (RuntimeException ex) {
+                    Logger.getLogger(ChannelWatcher.class.getName()).log(Level.WARNING, null, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Free a request slot, handing it to a waiting channel if there is one.
+     * The waiting channel is polled from the scheduling thread.
+     */
+    private void release() {
+        final Watch next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                active--;
+                return;
+            }
+        }
+        try {
+            executor.execute(() -> poll(next));
+        } catch (RejectedExecutionException ex) {
+            /* closed */
+            synchronized (this) {
+                active--;
+            }
+        }
+    }
+
+    /**
+     * Schedule the next poll of a channel, one interval from now give or take
+     * the jitter.
+     */
+    private void reschedule(final Watch watch) {
+        if (watch.cancelled) {
+            return;
+        }
+        double jitter = 1 + JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        try {
+            executor.schedule(() -> due(watch), (long) (interval * jitter), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException ex) {
+            /* closed */
+        }
+    }
+}
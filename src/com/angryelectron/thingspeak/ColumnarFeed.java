@@ -0,0 +1,495 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * <p>
+ * A channel feed stored as columns of primitive values rather than as a list
+ * of {@link Entry} objects. Timestamps are stored as a long[], entry ids as an
+ * int[], and each field as a double[] with a bitmap recording which rows have
+ * a value. This uses a small fraction of the memory of a {@link Feed} and is
+ * much faster to scan, so it is suited to analysing numeric data from many or
+ * large feeds:</p>
+ * <pre>
+ * {@code
+ * ColumnarFeed feed = channel.getColumnarChannelFeed(options);
+ * double sum = 0;
+ * for (int row = 0; row < feed.size(); row++) {
+ *     if (feed.hasValue(1, row)) {
+ *         sum += feed.getValue(1, row);
+ *     }
+ * }
+ * }
+ * </pre>
+ * <p>
+ * Field values which are missing, or which are not numbers, are stored as
+ * empty. Location and status data is not stored. Rows are in the order
+ * returned by the server, which is oldest first.</p>
+ */
+public class ColumnarFeed {
+
+    private static final int FIELDS = 8;
+    private static final int INITIAL_CAPACITY = 100;
+
+    private Integer channelId;
+    private String channelName;
+    private String channelDescription;
+    private Date channelCreationDate;
+    private Date channelUpdateDate;
+    private Integer channelLastEntryId;
+    private final String[] fieldNames = new String[FIELDS];
+
+    private int size;
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private int[] entryIds = new int[INITIAL_CAPACITY];
+
+    /**
+     * Field values and presence bitmaps, indexed by field number - 1. Columns
+     * are only allocated for fields which appear in the feed.
+     */
+    private final double[][] values = new double[FIELDS][];
+    private final long[][] present = new long[FIELDS][];
+
+    /**
+     * Constructor is private so it can only be created by
+     * {@link Channel#getColumnarChannelFeed()}.
+     */
+    private ColumnarFeed() {
+
+    }
+
+    /**
+     * Get the number of entries in this feed.
+     *
+     * @return Number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the time at which an entry was created.
+     *
+     * @param row 0 to size() - 1.
+     * @return Milliseconds since the epoch.
+     */
+    public long getTimestamp(int row) {
+        checkRow(row);
+        return timestamps[row];
+    }
+
+    /**
+     * Get the ID of an entry.
+     *
+     * @param row 0 to size() - 1.
+     * @return Entry ID.
+     */
+    public int getEntryId(int row) {
+        checkRow(row);
+        return entryIds[row];
+    }
+
+    /**
+     * Check if an entry has a numeric value for a field.
+     *
+     * @param field 1-8.
+     * @param row 0 to size() - 1.
+     * @return True if {@link #getValue(int, int)} will return a value.
+     */
+    public boolean hasValue(int field, int row) {
+        checkRow(row);
+        long[] bits = present[checkField(field)];
+        return bits != null && (bits[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Get the value of a field.
+     *
+     * @param field 1-8.
+     * @param row 0 to size() - 1.
+     * @return Field value, or NaN if the entry has no value for this field.
+     */
+    public double getValue(int field, int row) {
+        return hasValue(field, row) ? values[field - 1][row] : Double.NaN;
+    }
+
+    /**
+     * Get a copy of the creation times of all entries.
+     *
+     * @return Milliseconds since the epoch, one per entry.
+     */
+    public long[] getTimestamps() {
+        return Arrays.copyOf(timestamps, size);
+    }
+
+    /**
+     * Get a copy of the IDs of all entries.
+     *
+     * @return Entry IDs, one per entry.
+     */
+    public int[] getEntryIds() {
+        return Arrays.copyOf(entryIds, size);
+    }
+
+    /**
+     * Get a copy of all values of a field. Use {@link #hasValue(int, int)} to
+     * tell empty values from NaN values sent by the server.
+     *
+     * @param field 1-8.
+     * @return Field values, one per entry; NaN where an entry has no value.
+     */
+    public double[] getValues(int field) {
+        int index = checkField(field);
+        double[] column = new double[size];
+        for (int row = 0; row < size; row++) {
+            column[row] = hasValue(field, row) ? values[index][row] : Double.NaN;
+        }
+        return column;
+    }
+
+    /**
+     * Get the ID of this channel.
+     *
+     * @return ID of this channel.
+     */
+    public Integer getChannelId() {
+        return channelId;
+    }
+
+    /**
+     * Get the name of this channel.
+     *
+     * @return The name of this channel; null if not set.
+     */
+    public String getChannelName() {
+        return channelName;
+    }
+
+    /**
+     * Get channel description.
+     *
+     * @return Description of this channel; null if not set.
+     */
+    public String getChannelDescription() {
+        return channelDescription;
+    }
+
+    /**
+     * Get channel creation date.
+     *
+     * @return Date on which this channel was created.
+     */
+    public Date getChannelCreationDate() {
+        return channelCreationDate;
+    }
+
+    /**
+     * Get the date of the last channel update.
+     *
+     * @return The date of the last update of this channel.
+     */
+    public Date getChannelUpdateDate() {
+        return channelUpdateDate;
+    }
+
+    /**
+     * Get the ID of the last entry made to this channel.
+     *
+     * @return The ID of the last entry made in this channel.
+     */
+    public Integer getChannelLastEntryId() {
+        return channelLastEntryId;
+    }
+
+    /**
+     * Get the user-defined name of a field.
+     *
+     * @param field 1-8.
+     * @return The assigned name of the field; null if the field is
+     * unassigned.
+     */
+    public String getFieldName(int field) {
+        return fieldNames[checkField(field)];
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Invalid row: " + row);
+        }
+    }
+
+    private static int checkField(int field) {
+        if (field < 1 || field > FIELDS) {
+            throw new IllegalArgumentException("Invalid field.");
+        }
+        return field - 1;
+    }
+
+    /**
+     * Make room for one more row.
+     */
+    private void grow() {
+        if (size < timestamps.length) {
+            return;
+        }
+        int capacity = timestamps.length * 2;
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        entryIds = Arrays.copyOf(entryIds, capacity);
+        for (int i = 0; i < FIELDS; i++) {
+            if (values[i] != null) {
+                values[i] = Arrays.copyOf(values[i], capacity);
+                present[i] = Arrays.copyOf(present[i], bitmapLength(capacity));
+            }
+        }
+    }
+
+    private static int bitmapLength(int capacity) {
+        return (capacity + 63) >>> 6;
+    }
+
+    /**
+     * Store a field value in the current row.
+     */
+    private void setValue(int index, String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        double number;
+        try {
+            number = Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            return;
+        }
+        if (values[index] == null) {
+            values[index] = new double[timestamps.length];
+            present[index] = new long[bitmapLength(timestamps.length)];
+        }
+        values[index][size] = number;
+        present[index][size >>> 6] |= 1L << size;
+    }
+
+    /**
+     * Reads a ColumnarFeed directly from the JSON returned by the channel feed
+     * API, without creating an Entry for each row, and writes it back in the
+     * same form. Entry timestamps are converted straight to and from epoch
+     * milliseconds with {@link TimestampCodec}; the channel dates use the
+     * Date adapter of the Gson instance {@link #FACTORY} is registered with.
+     */
+    static class JsonAdapter extends TypeAdapter<ColumnarFeed> {
+
+        static final TypeAdapterFactory FACTORY = new TypeAdapterFactory() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+                if (type.getRawType() != ColumnarFeed.class) {
+                    return null;
+                }
+                return (TypeAdapter<T>) new JsonAdapter(gson.getAdapter(Date.class));
+            }
+        };
+
+        private final TypeAdapter<Date> dateAdapter;
+
+        private JsonAdapter(TypeAdapter<Date> dateAdapter) {
+            this.dateAdapter = dateAdapter;
+        }
+
+        @Override
+        public ColumnarFeed read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            ColumnarFeed feed = new ColumnarFeed();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "channel":
+                        readChannel(in, feed);
+                        break;
+                    case "feeds":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            readEntry(in, feed);
+                        }
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return feed;
+        }
+
+        private void readChannel(JsonReader in, ColumnarFeed feed) throws IOException {
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "id":
+                        feed.channelId = in.nextInt();
+                        break;
+                    case "name":
+                        feed.channelName = in.nextString();
+                        break;
+                    case "description":
+                        feed.channelDescription = in.nextString();
+                        break;
+                    case "created_at":
+                        feed.channelCreationDate = dateAdapter.read(in);
+                        break;
+                    case "updated_at":
+                        feed.channelUpdateDate = dateAdapter.read(in);
+                        break;
+                    case "last_entry_id":
+                        feed.channelLastEntryId = in.nextInt();
+                        break;
+                    default:
+                        int field = fieldIndex(name);
+                        if (field >= 0) {
+                            feed.fieldNames[field] = in.nextString();
+                        } else {
+                            in.skipValue();
+                        }
+                }
+            }
+            in.endObject();
+        }
+
+        private void readEntry(JsonReader in, ColumnarFeed feed) throws IOException {
+            feed.grow();
+            int row = feed.size;
+            feed.timestamps[row] = 0;
+            feed.entryIds[row] = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "created_at":
+                        String created = in.nextString();
+                        try {
+                            feed.timestamps[row] = TimestampCodec.parse(created);
+                        } catch (IllegalArgumentException ex) {
+                            throw new JsonSyntaxException(ex.getMessage(), ex);
+                        }
+                        break;
+                    case "entry_id":
+                        feed.entryIds[row] = in.nextInt();
+                        break;
+                    default:
+                        int field = fieldIndex(name);
+                        if (field >= 0) {
+                            feed.setValue(field, in.nextString());
+                        } else {
+                            in.skipValue();
+                        }
+                }
+            }
+            in.endObject();
+            feed.size++;
+        }
+
+        /**
+         * Get the column for a JSON name.
+         *
+         * @return 0-7 for "field1" to "field8", otherwise -1.
+         */
+        private static int fieldIndex(String name) {
+            if (name.length() == 6 && name.startsWith("field")) {
+                int field = name.charAt(5) - '1';
+                if (field >= 0 && field < FIELDS) {
+                    return field;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public void write(JsonWriter out, ColumnarFeed feed) throws IOException {
+            if (feed == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("channel");
+            writeChannel(out, feed);
+            out.name("feeds");
+            out.beginArray();
+            for (int row = 0; row < feed.size; row++) {
+                writeEntry(out, feed, row);
+            }
+            out.endArray();
+            out.endObject();
+        }
+
+        private void writeChannel(JsonWriter out, ColumnarFeed feed) throws IOException {
+            out.beginObject();
+            out.name("id").value(feed.channelId);
+            out.name("name").value(feed.channelName);
+            out.name("description").value(feed.channelDescription);
+            out.name("created_at");
+            dateAdapter.write(out, feed.channelCreationDate);
+            out.name("updated_at");
+            dateAdapter.write(out, feed.channelUpdateDate);
+            out.name("last_entry_id").value(feed.channelLastEntryId);
+            for (int index = 0; index < FIELDS; index++) {
+                out.name("field" + (index + 1)).value(feed.fieldNames[index]);
+            }
+            out.endObject();
+        }
+
+        /**
+         * Write one row. Fields without a value are left out, which reads back
+         * as empty.
+         */
+        private void writeEntry(JsonWriter out, ColumnarFeed feed, int row) throws IOException {
+            out.beginObject();
+            out.name("created_at").value(TimestampCodec.format(feed.timestamps[row]));
+            out.name("entry_id").value(feed.entryIds[row]);
+            for (int index = 0; index < FIELDS; index++) {
+                if (feed.hasValue(index + 1, row)) {
+                    out.name("field" + (index + 1)).value(Double.toString(feed.values[index][row]));
+                }
+            }
+            out.endObject();
+        }
+    }
+}
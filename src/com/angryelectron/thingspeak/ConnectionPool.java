@@ -0,0 +1,142 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import com.mashape.unirest.http.Unirest;
+import com.mashape.unirest.http.options.Option;
+import com.mashape.unirest.http.options.Options;
+import java.io.Closeable;
+import java.io.IOException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+
+/**
+ * <p>
+ * Bounded pool of keep-alive connections shared by all {@link Channel}s that
+ * use the default {@link UnirestTransport}. By default the underlying HTTP
+ * client only keeps 2 connections per server, which limits the number of
+ * updates that can be in-flight at once. Configure the pool before making
+ * requests to raise (or lower) these limits:</p>
+ * <pre>
+ * {@code
+ * ConnectionPool.configure(500, 500);
+ * Channel channel = new Channel(1234, writeKey);
+ * CompletableFuture<Integer> id = channel.updateAsync(entry);
+ * }
+ * </pre>
+ * <p>
+ * Requests made while all connections are busy wait in the pool's queue rather
+ * than on a thread, so thousands of asynchronous updates can be outstanding
+ * while only a handful of I/O threads are used. If not configured explicitly,
+ * the pool is created with default limits by the first asynchronous
+ * request.</p>
+ */
+public final class ConnectionPool {
+
+    /**
+     * Default maximum number of connections, and connections per server.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+
+    private static CloseableHttpAsyncClient asyncClient;
+    private static CloseableHttpClient syncClient;
+
+    private ConnectionPool() {
+
+    }
+
+    /**
+     * Replace the connections used by the client with a new pool. Existing
+     * connections are closed.
+     *
+     * @param maxConnections Maximum number of open connections.
+     * @param maxPerServer Maximum number of open connections to a single
+     * ThingSpeak server.
+     */
+    public static synchronized void configure(int maxConnections, int maxPerServer) {
+        if (maxConnections < 1 || maxPerServer < 1) {
+            throw new IllegalArgumentException("Pool must allow at least one connection.");
+        }
+        RequestConfig config = RequestConfig.custom()
+                .setConnectTimeout(timeout(Option.CONNECTION_TIMEOUT, 10000))
+                .setSocketTimeout(timeout(Option.SOCKET_TIMEOUT, 60000))
+                .build();
+        CloseableHttpAsyncClient client = HttpAsyncClientBuilder.create()
+                .setDefaultRequestConfig(config)
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxPerServer)
+                .build();
+        client.start();
+        CloseableHttpClient sync = HttpClientBuilder.create()
+                .setDefaultRequestConfig(config)
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxPerServer)
+                .build();
+        Unirest.setHttpClient(sync);
+        Unirest.setAsyncHttpClient(client);
+        closeQuietly(asyncClient);
+        closeQuietly(syncClient);
+        asyncClient = client;
+        syncClient = sync;
+    }
+
+    /**
+     * Create the pool with default limits unless it has already been
+     * configured.
+     */
+    static synchronized void ensureConfigured() {
+        if (asyncClient == null) {
+            configure(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS);
+        }
+    }
+
+    /**
+     * Close all pooled connections and stop the I/O threads. Outstanding
+     * asynchronous requests will fail. The pool is re-created if further
+     * asynchronous requests are made.
+     */
+    public static synchronized void shutdown() {
+        closeQuietly(asyncClient);
+        asyncClient = null;
+    }
+
+    /**
+     * Use the same timeouts as the default client. See
+     * {@link Unirest#setTimeouts(long, long)}.
+     */
+    private static int timeout(Option option, int defaultMillis) {
+        Object value = Options.getOption(option);
+        return (value == null) ? defaultMillis : ((Long) value).intValue();
+    }
+
+    private static void closeQuietly(Closeable client) {
+        if (client == null) {
+            return;
+        }
+        try {
+            client.close();
+        } catch (IOException ex) {
+            /* connections are being discarded anyway */
+        }
+    }
+}
@@ -19,8 +19,19 @@
 
 package com.angryelectron.thingspeak;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.function.Function;
 
 /**
  * Create a new Entry to update a channel, or retrieve individual elements from
@@ -30,39 +41,229 @@ import java.util.HashMap;
 public class Entry {
     
     /**
-     * The names of these private members must match the JSON fields in a
-     * channel feed returned by ThingSpeak. If they don't, GSON might not be
-     * able to deserialize the JSON feed into Entry objects. Note that
+     * The names of these private members match the JSON fields in a
+     * channel feed returned by ThingSpeak. Feeds are de-serialized by
+     * {@link JsonAdapter}, which must be updated if members are added. Note that
      * 'longitude' and 'latitude' are returned by feeds, but 'lat' and 'long'
      * are used when updating.
      */
     private Date created_at;
     private Integer entry_id;
-    private String field1;
-    private String field2;
-    private String field3;
-    private String field4;
-    private String field5;
-    private String field6;
-    private String field7;
-    private String field8;
     private Double latitude;
     private Double longitude;
     private Double elevation;
     private String status;
     private String twitter;
     private String tweet;
-    
-    private final HashMap<String, Object> updateMap = new HashMap<>();
+
+    /**
+     * Field values, indexed by field number - 1. A field set with a number
+     * keeps it in {@link #numbers} and is only formatted as text when the
+     * text is needed. A text field read as a number is parsed once and the
+     * result kept in {@link #numbers}, with a bit set in {@link #parsed}.
+     */
+    private final String[] fields = new String[FIELDS];
+    private double[] numbers;
+    private int numeric;
+    private volatile int parsed;
+
+    /**
+     * Bits recording which values have been set for an update: one per field
+     * (bit 0 is field1), then the other update parameters.
+     */
+    private int updated;
+
+    private static final int FIELDS = 8;
+    private static final int LATITUDE = 1 << 8;
+    private static final int LONGITUDE = 1 << 9;
+    private static final int ELEVATION = 1 << 10;
+    private static final int STATUS = 1 << 11;
+    private static final int TWITTER = 1 << 12;
+    private static final int TWEET = 1 << 13;
+    private static final int CREATED = 1 << 14;
+
+    private static final String[] FIELD_NAMES = {
+        "field1", "field2", "field3", "field4", "field5", "field6", "field7", "field8"
+    };
 
     /**
      * Get a map of all fields in a format compatible with the API's update
      * parameters.  Used internally by {@link Channel#update(com.angryelectron.thingspeak.Entry)}.
+     * A new map is built on each call.
      * @return Field map.
      */
-    HashMap<String, Object> getUpdateMap() {        
+    HashMap<String, Object> getUpdateMap() {
+        HashMap<String, Object> updateMap = new HashMap<>();
+        for (int index = 0; index < FIELDS; index++) {
+            if ((updated & (1 << index)) != 0) {
+                updateMap.put(FIELD_NAMES[index], text(index));
+            }
+        }
+        if ((updated & LATITUDE) != 0) {
+            updateMap.put("lat", latitude);
+        }
+        if ((updated & LONGITUDE) != 0) {
+            updateMap.put("long", longitude);
+        }
+        if ((updated & ELEVATION) != 0) {
+            updateMap.put("elevation", elevation);
+        }
+        if ((updated & STATUS) != 0) {
+            updateMap.put("status", status);
+        }
+        if ((updated & TWITTER) != 0) {
+            updateMap.put("twitter", twitter);
+        }
+        if ((updated & TWEET) != 0) {
+            updateMap.put("tweet", tweet);
+        }
+        if ((updated & CREATED) != 0) {
+            updateMap.put("created_at", created_at);
+        }
         return updateMap;
     }
+
+    /**
+     * Append the values set for an update as a JSON object, in the format used
+     * by the bulk update API. Numbers are appended directly, without first
+     * being formatted as Strings. Null values are left out.
+     * @param json Output.
+     * @param dateFormat Formats the created date.
+     */
+    void appendUpdateJson(StringBuilder json, Function<Date, String> dateFormat) {
+        int start = json.length();
+        json.append('{');
+        for (int index = 0; index < FIELDS; index++) {
+            int bit = 1 << index;
+            if ((updated & bit) == 0) {
+                continue;
+            }
+            if ((numeric & bit) != 0) {
+                appendName(json, start, FIELD_NAMES[index]).append('"');
+                appendNumber(json, numbers[index]).append('"');
+            } else if (fields[index] != null) {
+                appendString(appendName(json, start, FIELD_NAMES[index]), fields[index]);
+            }
+        }
+        if ((updated & LATITUDE) != 0 && isFinite(latitude)) {
+            appendNumber(appendName(json, start, "lat"), latitude);
+        }
+        if ((updated & LONGITUDE) != 0 && isFinite(longitude)) {
+            appendNumber(appendName(json, start, "long"), longitude);
+        }
+        if ((updated & ELEVATION) != 0 && isFinite(elevation)) {
+            appendNumber(appendName(json, start, "elevation"), elevation);
+        }
+        if ((updated & STATUS) != 0 && status != null) {
+            appendString(appendName(json, start, "status"), status);
+        }
+        if ((updated & TWITTER) != 0 && twitter != null) {
+            appendString(appendName(json, start, "twitter"), twitter);
+        }
+        if ((updated & TWEET) != 0 && tweet != null) {
+            appendString(appendName(json, start, "tweet"), tweet);
+        }
+        if ((updated & CREATED) != 0 && created_at != null) {
+            appendString(appendName(json, start, "created_at"), dateFormat.apply(created_at));
+        }
+        json.append('}');
+    }
+
+    private static boolean isFinite(Double value) {
+        return value != null && !value.isNaN() && !value.isInfinite();
+    }
+
+    /**
+     * Append a member name, preceded by a comma unless it is the first member
+     * of the object which starts at position start.
+     */
+    private static StringBuilder appendName(StringBuilder json, int start, String name) {
+        if (json.length() > start + 1) {
+            json.append(',');
+        }
+        return json.append('"').append(name).append("\":");
+    }
+
+    private static StringBuilder appendNumber(StringBuilder json, double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return json.append((long) value);
+        }
+        return json.append(value);
+    }
+
+    private static StringBuilder appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"');
+    }
+
+    /**
+     * Copy every value that has been set in a newer entry into this one,
+     * replacing any existing value.  Used to coalesce several pending updates
+     * into a single update.
+     * @param newer Entry whose values take precedence.
+     */
+    void merge(Entry newer) {
+        for (int index = 0; index < FIELDS; index++) {
+            int bit = 1 << index;
+            if ((newer.updated & bit) != 0) {
+                if ((newer.numeric & bit) != 0) {
+                    setNumber(index, newer.numbers[index]);
+                } else {
+                    setText(index, newer.fields[index]);
+                }
+            }
+        }
+        if ((newer.updated & LATITUDE) != 0) {
+            setLatitude(newer.latitude);
+        }
+        if ((newer.updated & LONGITUDE) != 0) {
+            setLong(newer.longitude);
+        }
+        if ((newer.updated & ELEVATION) != 0) {
+            setElevation(newer.elevation);
+        }
+        if ((newer.updated & STATUS) != 0) {
+            setStatus(newer.status);
+        }
+        if ((newer.updated & TWITTER) != 0) {
+            setTwitter(newer.twitter);
+        }
+        if ((newer.updated & TWEET) != 0) {
+            setTweet(newer.tweet);
+        }
+        if ((newer.updated & CREATED) != 0) {
+            setCreated(newer.created_at);
+        }
+    }
+
+    /**
+     * Clear all values so this entry can be reused for another update. Does
+     * not allocate.
+     */
+    public void reset() {
+        Arrays.fill(fields, null);
+        numeric = 0;
+        parsed = 0;
+        updated = 0;
+        created_at = null;
+        entry_id = null;
+        latitude = null;
+        longitude = null;
+        elevation = null;
+        status = null;
+        twitter = null;
+        tweet = null;
+    }
             
     /**
      * Get data for a field.  Fields must be enabled via the web in the Channel's
@@ -72,25 +273,7 @@ public class Entry {
      * feeds where field was not specified.
      */
     public Object getField(Integer field) {
-        switch(field) {
-            case 1:
-                return field1;
-            case 2:
-                return field2;
-            case 3:
-                return field3;
-            case 4:
-                return field4;
-            case 5:
-                return field5;
-            case 6:
-                return field6;
-            case 7:
-                return field7;
-            case 8:
-                return field8;                
-        }
-        throw new IllegalArgumentException("Invalid field.");
+        return text(index(field));
     }
 
     /**
@@ -100,41 +283,130 @@ public class Entry {
      * @param value Value for field.  
      */
     public void setField(Integer field, String value) {
-        switch(field) {
-            case 1:
-                field1 = value;
-                updateMap.put("field1", value);
-                return;
-            case 2:
-                field2 = value;
-                updateMap.put("field2", value);
-                return;
-            case 3:
-                field3 = value;
-                updateMap.put("field3", value);
-                return;
-            case 4:
-                field4 = value;
-                updateMap.put("field4", value);
-                return;
-            case 5:
-                field5 = value;
-                updateMap.put("field5", value);
-                return;
-            case 6:
-                field6 = value;
-                updateMap.put("field6", value);
-                return;
-            case 7:
-                field7 = value;
-                updateMap.put("field7", value);
-                return;
-            case 8:
-                field8 = value;
-                updateMap.put("field8", value);
-                return;
+        setText(index(field), value);
+    }
+
+    /**
+     * Set a numeric value for a field. The number is stored without boxing
+     * and is only formatted when the update is sent. Whole numbers are sent
+     * without a decimal point.
+     * @param field 1-8.
+     * @param value Value for field.
+     */
+    public void setField(int field, double value) {
+        setNumber(index(field), value);
+    }
+
+    /**
+     * Set a whole-number value for a field. See {@link #setField(int, double)}.
+     * Values beyond 2^53 lose precision.
+     * @param field 1-8.
+     * @param value Value for field.
+     */
+    public void setField(int field, long value) {
+        setNumber(index(field), value);
+    }
+
+    private static int index(Integer field) {
+        if (field == null || field < 1 || field > FIELDS) {
+            throw new IllegalArgumentException("Invalid field.");
+        }
+        return field - 1;
+    }
+
+    private void setText(int index, String value) {
+        int bit = 1 << index;
+        fields[index] = value;
+        numeric &= ~bit;
+        parsed &= ~bit;
+        updated |= bit;
+    }
+
+    private void setNumber(int index, double value) {
+        int bit = 1 << index;
+        if (numbers == null) {
+            numbers = new double[FIELDS];
+        }
+        numbers[index] = value;
+        fields[index] = null;
+        numeric |= bit;
+        parsed &= ~bit;
+        updated |= bit;
+    }
+
+    /**
+     * Get the value of a field as a number. The field's text is parsed the
+     * first time this is called and the result is kept, so repeated reads
+     * are cheap.
+     * @param field 1-8.
+     * @return Field value; NaN if the field is empty or is not a number.
+     */
+    public double getFieldAsDouble(int field) {
+        int index = index(field);
+        int bit = 1 << index;
+        if (((numeric | parsed) & bit) != 0) {
+            return numbers[index];
+        }
+        return parse(index);
+    }
+
+    /**
+     * Get the value of a field as a whole number. See
+     * {@link #getFieldAsDouble(int)}.
+     * @param field 1-8.
+     * @return Field value, with any fraction discarded; Long.MIN_VALUE if the
+     * field is empty or is not a number.
+     */
+    public long getFieldAsLong(int field) {
+        double value = getFieldAsDouble(field);
+        return Double.isNaN(value) ? Long.MIN_VALUE : (long) value;
+    }
+
+    /**
+     * Parse the text of a field and keep the result. Synchronized so that
+     * entries shared between threads are parsed safely; once parsed, reads do
+     * not lock.
+     */
+    private synchronized double parse(int index) {
+        int bit = 1 << index;
+        if (((numeric | parsed) & bit) != 0) {
+            return numbers[index];
+        }
+        double value = Double.NaN;
+        String text = fields[index];
+        if (text != null) {
+            try {
+                value = Double.parseDouble(text);
+            } catch (NumberFormatException ex) {
+                /* not a number */
+            }
+        }
+        if (numbers == null) {
+            numbers = new double[FIELDS];
+        }
+        numbers[index] = value;
+        parsed |= bit;
+        return value;
+    }
+
+    /**
+     * Get the text of a field, formatting a number set with
+     * {@link #setField(int, double)} the first time it is needed.
+     */
+    private String text(int index) {
+        String text = fields[index];
+        if (text == null && (numeric & (1 << index)) != 0) {
+            text = format(numbers[index]);
+            fields[index] = text;
+        }
+        return text;
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
         }
-        throw new IllegalArgumentException("Invalid field.");
+        return Double.toString(value);
     }
     
     /**
@@ -153,7 +425,7 @@ public class Entry {
      */
     public void setLatitude(Double latitude) {
         this.latitude = latitude;
-        updateMap.put("lat", latitude);
+        updated |= LATITUDE;
     }
 
     /**
@@ -171,7 +443,7 @@ public class Entry {
      */
     public void setLong(Double longitude) {
         this.longitude = longitude;
-        updateMap.put("long", longitude);
+        updated |= LONGITUDE;
     }
 
     /**
@@ -189,7 +461,7 @@ public class Entry {
      */
     public void setElevation(Double elevation) {
         this.elevation = elevation;
-        updateMap.put("elevation", elevation);
+        updated |= ELEVATION;
     }
 
     /**
@@ -207,7 +479,7 @@ public class Entry {
      */
     public void setStatus(String status) {
         this.status = status;
-        updateMap.put("status", status);
+        updated |= STATUS;
     }
     
     /**
@@ -217,7 +489,7 @@ public class Entry {
      */
     public void setTwitter(String twitter) {
         this.twitter = twitter;
-        updateMap.put("twitter", twitter);
+        updated |= TWITTER;
     }
 
     /**
@@ -227,7 +499,7 @@ public class Entry {
      */
     public void setTweet(String tweet) {
         this.tweet = tweet;
-        updateMap.put("tweet", tweet);
+        updated |= TWEET;
     }
 
     /**
@@ -237,7 +509,7 @@ public class Entry {
      */
     public void setCreated(Date created) {
         this.created_at = created;
-        updateMap.put("created_at", created);
+        updated |= CREATED;
     }
 	
     /**
@@ -255,5 +527,153 @@ public class Entry {
      */
     public Integer getEntryId() {
         return entry_id;
-    }                  
+    }
+
+    /**
+     * Reads Entry objects directly from a JSON stream. Feeds can contain
+     * thousands of entries, so this avoids the reflection GSON would otherwise
+     * use for every one of them. Register {@link #FACTORY} with a GsonBuilder
+     * which has a Date adapter, such as {@link TimestampCodec.DateAdapter};
+     * dates are read with it.
+     */
+    static class JsonAdapter extends TypeAdapter<Entry> {
+
+        static final TypeAdapterFactory FACTORY = new TypeAdapterFactory() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+                if (type.getRawType() != Entry.class) {
+                    return null;
+                }
+                return (TypeAdapter<T>) new JsonAdapter(gson.getAdapter(Date.class));
+            }
+        };
+
+        private final TypeAdapter<Date> dateAdapter;
+
+        private JsonAdapter(TypeAdapter<Date> dateAdapter) {
+            this.dateAdapter = dateAdapter;
+        }
+
+        @Override
+        public Entry read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Entry entry = new Entry();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                switch (name) {
+                    case "created_at":
+                        entry.created_at = dateAdapter.read(in);
+                        break;
+                    case "entry_id":
+                        entry.entry_id = readInteger(in);
+                        break;
+                    case "field1":
+                        entry.fields[0] = readString(in);
+                        break;
+                    case "field2":
+                        entry.fields[1] = readString(in);
+                        break;
+                    case "field3":
+                        entry.fields[2] = readString(in);
+                        break;
+                    case "field4":
+                        entry.fields[3] = readString(in);
+                        break;
+                    case "field5":
+                        entry.fields[4] = readString(in);
+                        break;
+                    case "field6":
+                        entry.fields[5] = readString(in);
+                        break;
+                    case "field7":
+                        entry.fields[6] = readString(in);
+                        break;
+                    case "field8":
+                        entry.fields[7] = readString(in);
+                        break;
+                    case "latitude":
+                        entry.latitude = readDouble(in);
+                        break;
+                    case "longitude":
+                        entry.longitude = readDouble(in);
+                        break;
+                    case "elevation":
+                        entry.elevation = readDouble(in);
+                        break;
+                    case "status":
+                        entry.status = readString(in);
+                        break;
+                    case "twitter":
+                        entry.twitter = readString(in);
+                        break;
+                    case "tweet":
+                        entry.tweet = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return entry;
+        }
+
+        @Override
+        public void write(JsonWriter out, Entry entry) throws IOException {
+            if (entry == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("created_at");
+            dateAdapter.write(out, entry.created_at);
+            out.name("entry_id").value(entry.entry_id);
+            for (int index = 0; index < FIELDS; index++) {
+                out.name(FIELD_NAMES[index]).value(entry.text(index));
+            }
+            out.name("latitude").value(entry.latitude);
+            out.name("longitude").value(entry.longitude);
+            out.name("elevation").value(entry.elevation);
+            out.name("status").value(entry.status);
+            out.name("twitter").value(entry.twitter);
+            out.name("tweet").value(entry.tweet);
+            out.endObject();
+        }
+
+        private static String readString(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return in.nextString();
+        }
+
+        private static Integer readInteger(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return in.nextInt();
+        }
+
+        /**
+         * Location values are sometimes sent as empty strings, which are read
+         * as null.
+         */
+        private static Double readDouble(JsonReader in) throws IOException {
+            String value = readString(in);
+            if (value == null || value.isEmpty()) {
+                return null;
+            }
+            try {
+                return Double.valueOf(value);
+            } catch (NumberFormatException ex) {
+                throw new JsonSyntaxException(ex);
+            }
+        }
+    }
 }
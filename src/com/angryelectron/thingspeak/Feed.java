@@ -17,9 +17,12 @@
  */
 package com.angryelectron.thingspeak;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -70,6 +73,7 @@ public class Feed {
     }
     private final ChannelInfo channel = new ChannelInfo();
     private final ArrayList<Entry> feeds = new ArrayList<>();
+    private transient Index index;
 
     /**
      * Constructor is package/class private so it can only be created via GSON
@@ -178,7 +182,26 @@ public class Feed {
     }
 
     /**
-     * Get a Map of all {@link Entry}s in this feed. 
+     * Get every value of a field as a number, in the order of
+     * {@link #getEntryList()}. Each value is parsed once and kept by its
+     * Entry; see {@link Entry#getFieldAsDouble(int)}.
+     *
+     * @param field 1-8.
+     * @return Field values, one per entry; NaN where an entry has no value or
+     * the value is not a number.
+     */
+    public double[] fieldValues(int field) {
+        double[] values = new double[feeds.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = feeds.get(i).getFieldAsDouble(field);
+        }
+        return values;
+    }
+
+    /**
+     * Get a Map of all {@link Entry}s in this feed. A new map is built on each
+     * call; to look up entries by id use {@link #getEntry(java.lang.Integer)},
+     * which uses an index.
      *
      * @return All Entries in this feed, keyed by entry ID.
      */
@@ -191,9 +214,8 @@ public class Feed {
     }
 
     /**
-     * Get an Entry in the feed by ID. If the feed is large, or you need to lookup
-     * many different entries, this method could be quite slow. It may be better
-     * to call {@link #getEntryMap()} to obtain a map of entries indexed by id.
+     * Get an Entry in the feed by ID. An index of entry IDs is built the
+     * first time this is called, after which each lookup takes constant time.
      *
      * @param id Entry ID.
      * @return Entry.
@@ -201,13 +223,11 @@ public class Feed {
      * the given id.
      */
     public Entry getEntry(Integer id) throws ThingSpeakException {
-        for (Entry entry : this.feeds) {
-            if (entry.getEntryId().equals(id)) {
-                return entry;
-            }
+        int row = (id == null) ? -1 : index().row(id);
+        if (row < 0) {
+            throw new ThingSpeakException("Entry with ID " + id + " not found in feed.");
         }
-        throw new ThingSpeakException("Entry with ID " + id + " not found in feed.");
-
+        return feeds.get(row);
     }
 
     /**
@@ -223,4 +243,200 @@ public class Feed {
         return getEntry(channel.last_entry_id);
     }
 
+    /**
+     * Get all entries created within a period of time, oldest first. Entries
+     * are found using an index of creation dates which is built the first
+     * time it is needed, so each query takes O(log n) time.
+     *
+     * @param start Start of the period, inclusive.
+     * @param end End of the period, inclusive.
+     * @return Entries created within the period. The list is a read-only view
+     * of this feed.
+     */
+    public List<Entry> getEntriesBetween(Date start, Date end) {
+        final Index index = index();
+        final int from = index.ceiling(start.getTime());
+        final int to = Math.max(from, index.floor(end.getTime()) + 1);
+        return new AbstractList<Entry>() {
+            @Override
+            public Entry get(int i) {
+                if (i < 0 || i >= to - from) {
+                    throw new IndexOutOfBoundsException("Index: " + i);
+                }
+                return feeds.get(index.timeRows[from + i]);
+            }
+
+            @Override
+            public int size() {
+                return to - from;
+            }
+        };
+    }
+
+    /**
+     * Get the latest entry created at or before a given date.
+     *
+     * @param date Date.
+     * @return Entry, or null if every entry was created after the date.
+     */
+    public Entry getFloorEntry(Date date) {
+        Index index = index();
+        int i = index.floor(date.getTime());
+        return (i < 0) ? null : feeds.get(index.timeRows[i]);
+    }
+
+    /**
+     * Get the earliest entry created at or after a given date.
+     *
+     * @param date Date.
+     * @return Entry, or null if every entry was created before the date.
+     */
+    public Entry getCeilingEntry(Date date) {
+        Index index = index();
+        int i = index.ceiling(date.getTime());
+        return (i >= index.times.length) ? null : feeds.get(index.timeRows[i]);
+    }
+
+    /**
+     * Get the index of this feed, building it if needed. The index is rebuilt
+     * if entries have been added to or removed from the list returned by
+     * {@link #getEntryList()}.
+     *
+     * @return Index.
+     */
+    private Index index() {
+        Index current = index;
+        if (current == null || current.size != feeds.size()) {
+            current = new Index(feeds);
+            index = current;
+        }
+        return current;
+    }
+
+    /**
+     * Lookup tables over the rows of {@link #feeds}: an open-addressing hash
+     * table from entry id to row, and the rows sorted by creation date.
+     * Entries without an id or a date are left out of the respective table.
+     */
+    private static final class Index {
+
+        private final int size;
+        private final int[] idKeys;
+        private final int[] idRows;
+        private final int mask;
+        private final long[] times;
+        private final int[] timeRows;
+
+        private Index(List<Entry> entries) {
+            size = entries.size();
+
+            int capacity = Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+            idKeys = new int[capacity];
+            idRows = new int[capacity];
+            mask = capacity - 1;
+            Arrays.fill(idRows, -1);
+            for (int row = 0; row < size; row++) {
+                Integer id = entries.get(row).getEntryId();
+                if (id == null) {
+                    continue;
+                }
+                int slot = slot(id);
+                if (idRows[slot] < 0) {
+                    /* if an id appears twice, the first entry is returned */
+                    idKeys[slot] = id;
+                    idRows[slot] = row;
+                }
+            }
+
+            int count = 0;
+            boolean sorted = true;
+            long[] dates = new long[size];
+            int[] rows = new int[size];
+            for (int row = 0; row < size; row++) {
+                Date created = entries.get(row).getCreated();
+                if (created != null) {
+                    dates[count] = created.getTime();
+                    rows[count] = row;
+                    if (count > 0 && dates[count] < dates[count - 1]) {
+                        sorted = false;
+                    }
+                    count++;
+                }
+            }
+            if (!sorted) {
+                Integer[] order = new Integer[count];
+                for (int i = 0; i < count; i++) {
+                    order[i] = i;
+                }
+                final long[] unsorted = dates;
+                Arrays.sort(order, (a, b) -> Long.compare(unsorted[a], unsorted[b]));
+                long[] sortedDates = new long[count];
+                int[] sortedRows = new int[count];
+                for (int i = 0; i < count; i++) {
+                    sortedDates[i] = dates[order[i]];
+                    sortedRows[i] = rows[order[i]];
+                }
+                dates = sortedDates;
+                rows = sortedRows;
+            }
+            times = Arrays.copyOf(dates, count);
+            timeRows = Arrays.copyOf(rows, count);
+        }
+
+        /**
+         * Find the slot for an id: either the slot holding it or the empty
+         * slot where it belongs.
+         */
+        private int slot(int id) {
+            int slot = (id * 0x9E3779B9) >>> 1 & mask;
+            while (idRows[slot] >= 0 && idKeys[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * @return Row of the entry with this id, or -1.
+         */
+        private int row(int id) {
+            return idRows[slot(id)];
+        }
+
+        /**
+         * @return Position in {@link #times} of the first entry created at or
+         * after time, or times.length if there is none.
+         */
+        private int ceiling(long time) {
+            int low = 0;
+            int high = times.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return Position in {@link #times} of the last entry created at or
+         * before time, or -1 if there is none.
+         */
+        private int floor(long time) {
+            int low = 0;
+            int high = times.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] <= time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low - 1;
+        }
+    }
+
 }
@@ -0,0 +1,53 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+/**
+ * Optional parameters for a feed request, as accepted by {@link Channel}.
+ * Implemented by {@link FeedParameters}, which can be changed, and by
+ * {@link ImmutableFeedParameters}, which cannot.
+ */
+public interface FeedOptions {
+
+    /**
+     * Get the parameters encoded as a query string, in order of name, eg.
+     * "results=100&amp;status=true".
+     *
+     * @return Query string, or an empty String if no parameters are set.
+     */
+    String getQueryString();
+
+    /**
+     * Get a key which identifies these parameters. Parameters which result in
+     * the same request have the same key, regardless of the order they were
+     * set in or whether they are mutable, so it can be used to cache or
+     * coalesce feed requests.
+     *
+     * @return Key.
+     */
+    String cacheKey();
+
+    /**
+     * Start building new immutable parameters from a copy of these.
+     *
+     * @return A builder.
+     */
+    FeedParameters.Builder toBuilder();
+}
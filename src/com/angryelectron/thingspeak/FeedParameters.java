@@ -19,9 +19,13 @@
 
 package com.angryelectron.thingspeak;
 
-import java.text.SimpleDateFormat;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
 
 /**
  * <p>
@@ -45,8 +49,21 @@ import java.util.HashMap;
  * Feed feed = channel.getChannelFeed(options);
  * }
  * </pre>
+ * <p>
+ * Parameters used for many requests, or shared between threads, can be
+ * built once as {@link ImmutableFeedParameters} with {@link Builder}. Its
+ * query string is encoded when it is built rather than for every
+ * request:</p>
+ * <pre>
+ * {@code
+ * ImmutableFeedParameters options = new FeedParameters.Builder()
+ *         .status(true)
+ *         .results(100)
+ *         .build();
+ * }
+ * </pre>
  */
-public class FeedParameters {
+public class FeedParameters implements FeedOptions {
         
     /**
      * Pre-defined time periods.  ThingSpeak only accepts certain values.
@@ -114,13 +131,284 @@ public class FeedParameters {
     /**
      * A map to store the parameter names and values.
      */
-    HashMap<String, Object> fields = new HashMap<>();
-    
+    final HashMap<String, Object> fields = new HashMap<>();
+
     /**
-     * The date format required by ThingSpeak.
+     * Time zone in which start and end dates are sent with the timezone
+     * parameter, by {@link #utcPeriod(long, long)}.
      */
-    private final SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss");
-                    
+    private static final TimeZone UTC = TimeZone.getTimeZone("Etc/UTC");
+
+    /**
+     * Constructor.
+     */
+    public FeedParameters() {
+    }
+
+    /**
+     * Create a copy.
+     *
+     * @param from Parameters to copy.
+     */
+    FeedParameters(FeedParameters from) {
+        this.fields.putAll(from.fields);
+    }
+
+    /**
+     * Builds {@link ImmutableFeedParameters}, which are safe to share
+     * between threads and requests. The methods have the same meaning as
+     * those of FeedParameters.
+     */
+    public static class Builder {
+
+        private final FeedParameters parameters;
+
+        /**
+         * Constructor.
+         */
+        public Builder() {
+            this.parameters = new FeedParameters();
+        }
+
+        /**
+         * Start with a copy of existing parameters. To copy
+         * {@link ImmutableFeedParameters}, use
+         * {@link ImmutableFeedParameters#toBuilder()}.
+         *
+         * @param from Parameters to copy.
+         */
+        public Builder(FeedParameters from) {
+            this.parameters = new FeedParameters(from);
+        }
+
+        /**
+         * See {@link FeedParameters#results(java.lang.Integer)}.
+         *
+         * @param results Number of results.
+         * @return This builder.
+         */
+        public Builder results(Integer results) {
+            parameters.results(results);
+            return this;
+        }
+
+        /**
+         * See {@link FeedParameters#days(java.lang.Integer)}.
+         *
+         * @param days Number of days.
+         * @return This builder.
+         */
+        public Builder days(Integer days) {
+            parameters.days(days);
+            return this;
+        }
+
+        /**
+         * See {@link FeedParameters#start(java.util.Date)}.
+         *
+         * @param date Start date.
+         * @return This builder.
+         */
+        public Builder start(Date date) {
+            parameters.start(date);
+            return this;
+        }
+
+        /**
+         * See {@link FeedParameters#end(java.util.Date)}.
+         *
+         * @param date End date.
+         * @return This builder.
+         */
+        public Builder end(Date date) {
+            parameters.end(date);
+            return this;
+        }
+
+        /**
+         * See {@link FeedParameters#utcPeriod(long, long)}.
+         *
+         * @param start Start, in milliseconds since the epoch.
+         * @param end End, in milliseconds since the epoch.
+         * @return This builder.
+         */
+        Builder utcPeriod(long start, long end) {
+            parameters.utcPeriod(start, end);
+            return this;
+        }
+
+        /**
+         * See {@link FeedParameters#offset(java.lang.Integer)}.
+         *
+         * @param hours Offset in hours.
+         * @return This builder.
+         */
+        public Builder offset(Integer hours) {
+            parameters.offset(hours);
+            return this;
+        }
+
+        /**
+         * See {@link FeedParameters#status(java.lang.Boolean)}.
+         *
+         * @param include Include the status field.
+         * @return This builder.
+         */
+        public Builder status(Boolean include) {
+            parameters.status(include);
+            return this;
+        }
+
+        /**
+         * See {@link FeedParameters#location(java.lang.Boolean)}.
+         *
+         * @param include Include location fields.
+         * @return This builder.
+         */
+        public Builder location(Boolean include) {
+            parameters.location(include);
+            return this;
+        }
+
+        /**
+         * See {@link FeedParameters#min(java.lang.Double)}.
+         *
+         * @param value Minimum value.
+         * @return This builder.
+         */
+        public Builder min(Double value) {
+            parameters.min(value);
+            return this;
+        }
+
+        /**
+         * See {@link FeedParameters#max(java.lang.Double)}.
+         *
+         * @param value Maximum value.
+         * @return This builder.
+         */
+        public Builder max(Double value) {
+            parameters.max(value);
+            return this;
+        }
+
+        /**
+         * See {@link FeedParameters#round(java.lang.Integer)}.
+         *
+         * @param places Decimal places.
+         * @return This builder.
+         */
+        public Builder round(Integer places) {
+            parameters.round(places);
+            return this;
+        }
+
+        /**
+         * See {@link FeedParameters#timescale(com.angryelectron.thingspeak.FeedParameters.Period)}.
+         *
+         * @param t Time period.
+         * @return This builder.
+         */
+        public Builder timescale(Period t) {
+            parameters.timescale(t);
+            return this;
+        }
+
+        /**
+         * See {@link FeedParameters#sum(com.angryelectron.thingspeak.FeedParameters.Period)}.
+         *
+         * @param t Time period.
+         * @return This builder.
+         */
+        public Builder sum(Period t) {
+            parameters.sum(t);
+            return this;
+        }
+
+        /**
+         * See {@link FeedParameters#average(com.angryelectron.thingspeak.FeedParameters.Period)}.
+         *
+         * @param t Time period.
+         * @return This builder.
+         */
+        public Builder average(Period t) {
+            parameters.average(t);
+            return this;
+        }
+
+        /**
+         * See {@link FeedParameters#median(com.angryelectron.thingspeak.FeedParameters.Period)}.
+         *
+         * @param t Time period.
+         * @return This builder.
+         */
+        public Builder median(Period t) {
+            parameters.median(t);
+            return this;
+        }
+
+        /**
+         * Create the parameters.
+         *
+         * @return Immutable parameters.
+         */
+        public ImmutableFeedParameters build() {
+            return new ImmutableFeedParameters(parameters);
+        }
+    }
+
+    /**
+     * {@inheritDoc} Encoded each time it is called, since these parameters
+     * can change.
+     */
+    @Override
+    public String getQueryString() {
+        return encode(fields);
+    }
+
+    @Override
+    public String cacheKey() {
+        return getQueryString();
+    }
+
+    @Override
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * Encode parameters in order of name.
+     */
+    private static String encode(Map<String, Object> fields) {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Object> field : new TreeMap<>(fields).entrySet()) {
+            if (builder.length() > 0) {
+                builder.append('&');
+            }
+            builder.append(URLEncoder.encode(field.getKey(), StandardCharsets.UTF_8))
+                    .append('=')
+                    .append(URLEncoder.encode(field.getValue().toString(), StandardCharsets.UTF_8));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @throws IllegalArgumentException The value is null.
+     */
+    private static void requireValue(String name, Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value of " + name + " cannot be null.");
+        }
+    }
+
+    /**
+     * Store a parameter.
+     */
+    private void put(String name, Object value) {
+        requireValue(name, value);
+        fields.put(name, value);
+    }
+
     /**
      * Select the number of results to be returned.  Feeds that return more than 100
      * results are cached for 5 minutes, so set results &lt; 100 for real time 
@@ -128,17 +416,18 @@ public class FeedParameters {
      * @param results 8000 max, or less than 100 to disable 5 minute data cache.
      */
     public void results(Integer results) {
+        requireValue("results", results);
         if (results > 8000) {
             throw new IllegalArgumentException("Feed cannot return more than 8000 results.");
         }
-        fields.put("results", results);
+        put("results", results);
     }
     /**
      * Limit results to the past number of days.
      * @param days Number of days prior to now to include in feed.
      */       
     public void days(Integer days) {
-        fields.put("days", days);
+        put("days", days);
     }
     
     /**
@@ -146,7 +435,8 @@ public class FeedParameters {
      * @param date Start date.
      */
     public void start(Date date) {
-        fields.put("start", formatter.format(date));
+        requireValue("start", date);
+        put("start", TimestampCodec.formatParameter(date.getTime(), TimeZone.getDefault()));
     }
     
     /**
@@ -154,7 +444,22 @@ public class FeedParameters {
      * @param date End date.
      */
     public void end(Date date) {
-        fields.put("end", formatter.format(date));
+        requireValue("end", date);
+        put("end", TimestampCodec.formatParameter(date.getTime(), TimeZone.getDefault()));
+    }
+
+    /**
+     * Limit results to a period given in milliseconds since the epoch. The
+     * dates are sent in UTC together with the timezone parameter, so the
+     * server reads them exactly whatever the channel's time zone. Used by
+     * {@link HistoryExporter} to fetch adjacent slices.
+     * @param start Start, in milliseconds since the epoch.
+     * @param end End, in milliseconds since the epoch.
+     */
+    void utcPeriod(long start, long end) {
+        put("timezone", UTC.getID());
+        put("start", TimestampCodec.formatParameter(start, UTC));
+        put("end", TimestampCodec.formatParameter(end, UTC));
     }
     
     /**
@@ -163,7 +468,7 @@ public class FeedParameters {
      * @param hours Offset (+/-) in hours.
      */
     public void offset(Integer hours) {
-        fields.put("offset", hours);
+        put("offset", hours);
     }
     
     /**
@@ -172,7 +477,7 @@ public class FeedParameters {
      * @param include Feed includes the status field when True.
      */
     public void status(Boolean include) {
-        fields.put("status", include);
+        put("status", include);
     }
     
     /**
@@ -181,7 +486,7 @@ public class FeedParameters {
      * @param include Feed includes location fields when True.
      */
     public void location(Boolean include) {
-        fields.put("location", include);
+        put("location", include);
     }
     
     /**
@@ -190,7 +495,7 @@ public class FeedParameters {
      * @param value Minimum value.
      */
     public void min(Double value) {
-        fields.put("min", value);
+        put("min", value);
     }
     
     /**
@@ -198,7 +503,7 @@ public class FeedParameters {
      * @param value Maximum value.
      */
     public void max(Double value) {
-        fields.put("max", value);
+        put("max", value);
     }
     
     /**
@@ -206,7 +511,7 @@ public class FeedParameters {
      * @param places Round to this many decimal places.
      */
     public void round(Integer places) {
-        fields.put("round", places);
+        put("round", places);
     }
     
     /**
@@ -214,7 +519,8 @@ public class FeedParameters {
      * @param t Time period.
      */
     public void timescale(Period t) {
-        fields.put("timescale", t.minutes());
+        requireValue("timescale", t);
+        put("timescale", t.minutes());
     }
     
     /**
@@ -222,7 +528,8 @@ public class FeedParameters {
      * @param t Time period.
      */
     public void sum(Period t) {
-        fields.put("sum", t.minutes());
+        requireValue("sum", t);
+        put("sum", t.minutes());
     }
     
     /**
@@ -230,7 +537,8 @@ public class FeedParameters {
      * @param t Time period.
      */
     public void average(Period t) {
-        fields.put("average", t.minutes());        
+        requireValue("average", t);
+        put("average", t.minutes());        
     }
     
     /**
@@ -238,7 +546,8 @@ public class FeedParameters {
      * @param t Time period.
      */
     public void median(Period t) {
-        fields.put("median", t.minutes());
+        requireValue("median", t);
+        put("median", t.minutes());
     }
     
 }
@@ -0,0 +1,243 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import com.mashape.unirest.http.exceptions.UnirestException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Keeps a local copy of the most recent entries of one or more channels and
+ * keeps it up to date by downloading only new entries. Instead of requesting
+ * the whole feed each time a dashboard refreshes, call
+ * {@link #sync(com.angryelectron.thingspeak.Channel)}:</p>
+ * <pre>
+ * {@code
+ * FeedSync sync = new FeedSync(1000);
+ * List<Entry> added = sync.sync(channel);
+ * List<Entry> latest = sync.getEntries(channel);
+ * }
+ * </pre>
+ * <p>
+ * The first sync downloads up to the window size. After that, each sync asks
+ * the server for the channel's last entry id using a feed with no results,
+ * and if it is newer than the last entry held locally, requests exactly the
+ * missing number of results. Entry ids increase by one with each update, so
+ * the cost of a sync depends only on how much new data there is. Small
+ * incremental requests also avoid the 5 minute cache ThingSpeak applies to
+ * feeds of more than 100 results. If more entries arrive between the two
+ * requests, the last entry id in the second feed shows that some are
+ * missing, and a larger feed is requested.</p>
+ * <p>
+ * If the channel has been cleared (its last entry id goes backwards) the
+ * local copy is discarded and downloaded again. This class is thread-safe;
+ * concurrent syncs of the same channel are serialized.</p>
+ */
+public class FeedSync {
+
+    /**
+     * The most results ThingSpeak returns in a single feed.
+     */
+    private static final int MAX_RESULTS = 8000;
+
+    /**
+     * How many times to ask for a larger feed when entries arrive during a
+     * sync.
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final int windowSize;
+    private final ImmutableFeedParameters options;
+    private final ConcurrentHashMap<Channel, Store> stores = new ConcurrentHashMap<>();
+
+    /**
+     * Entries held for one channel, oldest first.
+     */
+    private static class Store {
+
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        /**
+         * The id of the newest entry held, 0 for an empty channel, or null
+         * before the first sync.
+         */
+        private Integer lastEntryId;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param windowSize The number of recent entries to keep for each channel,
+     * up to 8000.
+     */
+    public FeedSync(int windowSize) {
+        this(windowSize, new FeedParameters());
+    }
+
+    /**
+     * Constructor with additional feed parameters.
+     *
+     * @param windowSize The number of recent entries to keep for each channel,
+     * up to 8000.
+     * @param options Feed parameters to include in each request. Only
+     * parameters which do not change the set of entries returned are
+     * supported: status, location, offset, and round.
+     */
+    public FeedSync(int windowSize, FeedOptions options) {
+        if (windowSize < 1 || windowSize > MAX_RESULTS) {
+            throw new IllegalArgumentException("Window size must be between 1 and " + MAX_RESULTS + ".");
+        }
+        this.windowSize = windowSize;
+        this.options = options.toBuilder().build();
+    }
+
+    /**
+     * Download any entries added to a channel since the last sync.
+     *
+     * @param channel Channel.
+     * @return The new entries, oldest first. Empty if there are none.
+     * @throws UnirestException The request cannot be made.
+     * @throws ThingSpeakException The request is invalid.
+     */
+    public List<Entry> sync(Channel channel) throws UnirestException, ThingSpeakException {
+        Store store = stores.computeIfAbsent(channel, c -> new Store());
+        synchronized (store) {
+            int results = windowSize;
+            if (store.lastEntryId != null) {
+                int serverLastEntryId = lastEntryId(channel.getChannelFeed(options(0)));
+                if (serverLastEntryId < store.lastEntryId) {
+                    store.entries.clear();
+                    store.lastEntryId = null;
+                } else if (serverLastEntryId == store.lastEntryId) {
+                    return Collections.emptyList();
+                } else {
+                    results = Math.min(serverLastEntryId - store.lastEntryId, windowSize);
+                }
+            }
+            Feed feed = channel.getChannelFeed(options(results));
+            if (store.lastEntryId != null) {
+                for (int attempt = 0; attempt < MAX_ATTEMPTS && results < windowSize; attempt++) {
+                    int missing = lastEntryId(feed) - store.lastEntryId;
+                    if (missing <= results) {
+                        break;
+                    }
+                    results = Math.min(missing, windowSize);
+                    feed = channel.getChannelFeed(options(results));
+                }
+            }
+            return merge(store, feed);
+        }
+    }
+
+    /**
+     * Add the entries in a feed which are newer than those already held.
+     *
+     * @param store Local entries.
+     * @param feed Feed from the server.
+     * @return Entries which were added.
+     */
+    private List<Entry> merge(Store store, Feed feed) {
+        ArrayList<Entry> added = new ArrayList<>();
+        for (Entry entry : feed.getEntryList()) {
+            Integer id = entry.getEntryId();
+            if (id == null || (store.lastEntryId != null && id <= store.lastEntryId)) {
+                continue;
+            }
+            added.add(entry);
+            store.entries.addLast(entry);
+            store.lastEntryId = id;
+        }
+        while (store.entries.size() > windowSize) {
+            store.entries.removeFirst();
+        }
+        if (store.lastEntryId == null) {
+            /* an empty channel: remember that it has been synced */
+            store.lastEntryId = lastEntryId(feed);
+        }
+        return added;
+    }
+
+    /**
+     * Get the last entry id of a channel from a feed.
+     *
+     * @param feed Feed.
+     * @return Last entry id, or 0 if the channel has no entries.
+     */
+    private static int lastEntryId(Feed feed) {
+        Integer last = feed.getChannelLastEntryId();
+        return (last == null) ? 0 : last;
+    }
+
+    /**
+     * Build the parameters for a request.
+     *
+     * @param results Number of results to request.
+     * @return Parameters.
+     */
+    private ImmutableFeedParameters options(int results) {
+        return options.toBuilder().results(results).build();
+    }
+
+    /**
+     * Get the entries held locally for a channel. Does not make any requests.
+     *
+     * @param channel Channel.
+     * @return A copy of the entries, oldest first; empty if the channel has
+     * not been synced.
+     */
+    public List<Entry> getEntries(Channel channel) {
+        Store store = stores.get(channel);
+        if (store == null) {
+            return Collections.emptyList();
+        }
+        synchronized (store) {
+            return new ArrayList<>(store.entries);
+        }
+    }
+
+    /**
+     * Get the id of the newest entry held locally for a channel.
+     *
+     * @param channel Channel.
+     * @return Entry id, or null if the channel has not been synced.
+     */
+    public Integer getLastEntryId(Channel channel) {
+        Store store = stores.get(channel);
+        if (store == null) {
+            return null;
+        }
+        synchronized (store) {
+            return store.lastEntryId;
+        }
+    }
+
+    /**
+     * Discard the entries held for a channel. The next sync downloads the
+     * full window again.
+     *
+     * @param channel Channel.
+     */
+    public void forget(Channel channel) {
+        stores.remove(channel);
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import com.mashape.unirest.http.exceptions.UnirestException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * Downloads the complete history of a channel between two dates. A single
+ * feed cannot return more than 8000 entries, so the period is split into
+ * time slices which are requested in parallel. A slice which returns 8000
+ * entries may have been truncated, so it is split in half and each half is
+ * requested again, until every slice is complete. Entries are passed to a
+ * {@link Sink} in order, oldest first, as soon as the slices before them have
+ * been written, so the full history is never held in memory:</p>
+ * <pre>
+ * {@code
+ * HistoryExporter exporter = new HistoryExporter(channel);
+ * exporter.setParallelism(8);
+ * exporter.setSliceLength(6, TimeUnit.HOURS);
+ * long count = exporter.export(start, end, entry -> writer.println(entry.getField(1)));
+ * }
+ * </pre>
+ * <p>
+ * At most twice the parallelism slices are downloaded ahead of the one being
+ * written. Choose a slice length which usually contains fewer than 8000
+ * entries; it only needs to be approximate.</p>
+ */
+public class HistoryExporter {
+
+    /**
+     * The most results ThingSpeak returns in a single feed.
+     */
+    private static final int MAX_RESULTS = 8000;
+
+    /**
+     * Start and end dates have a resolution of one second.
+     */
+    private static final long SECOND = 1000;
+
+    /**
+     * Receives exported entries.
+     */
+    public interface Sink {
+
+        /**
+         * Write an entry. Called from the thread which called
+         * {@link HistoryExporter#export(java.util.Date, java.util.Date, com.angryelectron.thingspeak.HistoryExporter.Sink)}.
+         *
+         * @param entry Entry.
+         * @throws IOException The entry cannot be written. The export stops.
+         */
+        void write(Entry entry) throws IOException;
+    }
+
+    private final Channel channel;
+    private int parallelism = 4;
+    private long sliceLength = TimeUnit.DAYS.toMillis(1);
+    private ImmutableFeedParameters options = new FeedParameters.Builder().build();
+
+    /**
+     * Constructor.
+     *
+     * @param channel Channel to export.
+     */
+    public HistoryExporter(Channel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Set the number of requests made at once. Default is 4.
+     *
+     * @param parallelism Number of requests.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Set the length of the slices the period is initially split into.
+     * Default is 1 day.
+     *
+     * @param length Slice length, at least one second.
+     * @param unit Units of length.
+     */
+    public void setSliceLength(long length, TimeUnit unit) {
+        long millis = unit.toMillis(length);
+        if (millis < SECOND) {
+            throw new IllegalArgumentException("Slices must be at least one second long.");
+        }
+        this.sliceLength = millis;
+    }
+
+    /**
+     * Set additional feed parameters to include in each request. Only
+     * parameters which do not change the set of entries returned are
+     * supported: status, location, and round.
+     *
+     * @param options Feed parameters.
+     */
+    public void setOptions(FeedOptions options) {
+        this.options = options.toBuilder().build();
+    }
+
+    /**
+     * Export all entries created between two dates.
+     *
+     * @param start Start date, inclusive.
+     * @param end End date, inclusive.
+     * @param sink Receives the entries, oldest first.
+     * @return The number of entries exported.
+     * @throws UnirestException A request cannot be made.
+     * @throws ThingSpeakException A request is invalid.
+     * @throws IOException The sink failed.
+     */
+    public long export(Date start, Date end, Sink sink) throws UnirestException, ThingSpeakException, IOException {
+        long first = start.getTime() / SECOND * SECOND;
+        long last = end.getTime() / SECOND * SECOND;
+        /* a worker waiting for half of a split slice does not get a
+         * replacement thread, so there are never more than parallelism
+         * requests in flight */
+        ForkJoinPool pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+                null, false, 0, parallelism, 1, p -> true, 60, TimeUnit.SECONDS);
+        ArrayDeque<ForkJoinTask<List<Entry>>> pending = new ArrayDeque<>();
+        HashSet<Integer> previous = new HashSet<>();
+        long count = 0;
+        try {
+            long next = first;
+            while (next <= last || !pending.isEmpty()) {
+                while (next <= last && pending.size() < parallelism * 2) {
+                    long sliceEnd = Math.min(next + sliceLength - SECOND, last);
+                    pending.add(pool.submit(new Slice(next, sliceEnd)));
+                    next = sliceEnd + SECOND;
+                }
+                List<Entry> entries = join(pending.remove());
+                /* slices do not overlap, but skip anything already written in
+                 * case the server's idea of the boundaries differs */
+                HashSet<Integer> written = new HashSet<>();
+                for (Entry entry : entries) {
+                    Integer id = entry.getEntryId();
+                    if (id != null && (previous.contains(id) || !written.add(id))) {
+                        continue;
+                    }
+                    sink.write(entry);
+                    count++;
+                }
+                previous = written;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return count;
+    }
+
+    /**
+     * Wait for a slice to finish.
+     *
+     * @param task Slice.
+     * @return Entries in the slice.
+     * @throws UnirestException A request cannot be made.
+     * @throws ThingSpeakException A request is invalid.
+     */
+    private static List<Entry> join(ForkJoinTask<List<Entry>> task) throws UnirestException, ThingSpeakException {
+        try {
+            return task.join();
+        } catch (SliceException ex) {
+            Throwable cause = ex.getCause();
+            while (cause instanceof SliceException) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof ThingSpeakException) {
+                throw (ThingSpeakException) cause;
+            }
+            throw (UnirestException) cause;
+        }
+    }
+
+    /**
+     * Carries a checked exception out of a {@link Slice}.
+     */
+    private static class SliceException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private SliceException(Exception cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Downloads the entries created in a period, splitting it in half if the
+     * feed is full.
+     */
+    private class Slice extends RecursiveTask<List<Entry>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long start;
+        private final long end;
+
+        /**
+         * @param start First second of the slice, in milliseconds.
+         * @param end Last second of the slice, in milliseconds.
+         */
+        private Slice(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<Entry> compute() {
+            List<Entry> entries = fetch();
+            if (entries.size() < MAX_RESULTS) {
+                return entries;
+            }
+            if (end == start) {
+                Logger.getLogger(HistoryExporter.class.getName()).log(Level.WARNING,
+                        "More than {0} entries were created at {1}; some may be missing.",
+                        new Object[]{MAX_RESULTS, new Date(start)});
+                return entries;
+            }
+            long middle = start + (end - start) / 2 / SECOND * SECOND;
+            Slice earlier = new Slice(start, middle);
+            Slice later = new Slice(middle + SECOND, end);
+            later.fork();
+            List<Entry> result = new ArrayList<>(earlier.compute());
+            result.addAll(later.join());
+            return result;
+        }
+
+        private List<Entry> fetch() {
+            ImmutableFeedParameters request = options.toBuilder()
+                    .utcPeriod(start, end)
+                    .results(MAX_RESULTS)
+                    .build();
+            try {
+                List<Entry> entries = channel.getChannelFeed(request).getEntryList();
+                return (entries == null) ? Collections.<Entry>emptyList() : entries;
+            } catch (UnirestException | ThingSpeakException ex) {
+                throw new SliceException(ex);
+            }
+        }
+    }
+}
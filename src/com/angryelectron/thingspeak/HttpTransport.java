@@ -0,0 +1,68 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>
+ * Sends HTTP requests to a ThingSpeak server. All requests made by
+ * {@link Channel} and {@link com.angryelectron.thingspeak.pub.PublicChannelCollection}
+ * go through a transport, so the HTTP client can be replaced or tuned
+ * without changing the rest of the library. Two implementations are
+ * included:</p>
+ * <ul>
+ * <li>{@link UnirestTransport}, the default, which uses the bundled Unirest
+ * library.</li>
+ * <li>{@link JdkHttpTransport}, which uses java.net.http.HttpClient and
+ * supports HTTP/2 without any additional libraries.</li>
+ * </ul>
+ * <p>
+ * To use a different transport for all channels:</p>
+ * <pre>
+ * {@code
+ * Channel.setDefaultTransport(new JdkHttpTransport.Builder().build());
+ * }
+ * </pre>
+ * <p>
+ * Implementations must be thread-safe.</p>
+ */
+public interface HttpTransport {
+
+    /**
+     * Send a request and wait for the response. The caller must close the
+     * response.
+     *
+     * @param request The request.
+     * @return The response. Any HTTP status code is returned normally.
+     * @throws IOException The request cannot be made.
+     */
+    TransportResponse execute(TransportRequest request) throws IOException;
+
+    /**
+     * Send a request without blocking the calling thread.
+     *
+     * @param request The request.
+     * @return A future which completes with the response, or completes
+     * exceptionally with an {@link IOException} if the request cannot be made.
+     */
+    CompletableFuture<TransportResponse> executeAsync(TransportRequest request);
+}
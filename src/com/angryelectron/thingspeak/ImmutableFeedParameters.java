@@ -0,0 +1,68 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+/**
+ * Feed parameters which cannot be changed, created with
+ * {@link FeedParameters.Builder}. They are safe to share between threads and
+ * requests, and their query string is encoded once, when they are built:
+ * <pre>
+ * {@code
+ * ImmutableFeedParameters options = new FeedParameters.Builder()
+ *         .status(true)
+ *         .results(100)
+ *         .build();
+ * }
+ * </pre>
+ */
+public final class ImmutableFeedParameters implements FeedOptions {
+
+    /**
+     * A private copy of the parameters, used to make new builders.
+     */
+    private final FeedParameters parameters;
+    private final String query;
+
+    /**
+     * @param parameters Parameters to copy.
+     */
+    ImmutableFeedParameters(FeedParameters parameters) {
+        this.parameters = new FeedParameters(parameters);
+        this.query = parameters.getQueryString();
+    }
+
+    /**
+     * {@inheritDoc} Encoded when these parameters were built.
+     */
+    @Override
+    public String getQueryString() {
+        return query;
+    }
+
+    @Override
+    public String cacheKey() {
+        return query;
+    }
+
+    @Override
+    public FeedParameters.Builder toBuilder() {
+        return new FeedParameters.Builder(parameters);
+    }
+}
@@ -0,0 +1,351 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>
+ * {@link HttpTransport} which uses java.net.http.HttpClient. It needs no
+ * libraries outside the JDK, negotiates HTTP/2 where the server supports it,
+ * and keeps connections alive between requests:</p>
+ * <pre>
+ * {@code
+ * HttpTransport transport = new JdkHttpTransport.Builder()
+ *         .connectTimeout(Duration.ofSeconds(5))
+ *         .requestTimeout(Duration.ofSeconds(30))
+ *         .maxConcurrentRequests(200)
+ *         .build();
+ * Channel.setDefaultTransport(transport);
+ * }
+ * </pre>
+ * <p>
+ * The number of requests in flight at once is limited by
+ * {@link Builder#maxConcurrentRequests(int)}, which also bounds the number of
+ * HTTP/1.1 connections. Asynchronous requests beyond the limit wait in a queue
+ * without holding a thread. Idle connections are pooled by the JDK; the pool
+ * can be tuned with the jdk.httpclient.connectionPoolSize and
+ * jdk.httpclient.keepalive.timeout system properties.</p>
+ */
+public class JdkHttpTransport implements HttpTransport {
+
+    /**
+     * Builds a {@link JdkHttpTransport}.
+     */
+    public static class Builder {
+
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration requestTimeout = Duration.ofSeconds(60);
+        private int maxConcurrentRequests = 64;
+        private HttpClient.Version version = HttpClient.Version.HTTP_2;
+        private Executor executor;
+
+        /**
+         * Time allowed to establish a connection. Default is 10 seconds.
+         *
+         * @param timeout Timeout.
+         * @return This builder.
+         */
+        public Builder connectTimeout(Duration timeout) {
+            this.connectTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Time allowed for a response after a request is sent. Default is 60
+         * seconds.
+         *
+         * @param timeout Timeout.
+         * @return This builder.
+         */
+        public Builder requestTimeout(Duration timeout) {
+            this.requestTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Maximum number of requests in flight at once. Default is 64.
+         *
+         * @param max Maximum requests.
+         * @return This builder.
+         */
+        public Builder maxConcurrentRequests(int max) {
+            if (max < 1) {
+                throw new IllegalArgumentException("At least one request must be allowed.");
+            }
+            this.maxConcurrentRequests = max;
+            return this;
+        }
+
+        /**
+         * Preferred HTTP version. Default is HTTP/2, falling back to HTTP/1.1
+         * if the server does not support it.
+         *
+         * @param version HTTP version.
+         * @return This builder.
+         */
+        public Builder version(HttpClient.Version version) {
+            this.version = version;
+            return this;
+        }
+
+        /**
+         * Executor used to complete asynchronous requests. By default, the
+         * HttpClient creates its own.
+         *
+         * @param executor Executor.
+         * @return This builder.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Create the transport.
+         *
+         * @return Transport.
+         */
+        public JdkHttpTransport build() {
+            return new JdkHttpTransport(this);
+        }
+    }
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final int maxConcurrentRequests;
+
+    /**
+     * Requests waiting for a free slot, synchronous and asynchronous alike,
+     * in the order they arrived, and the number of requests in flight.
+     * Guarded by this.
+     */
+    private final ArrayDeque<Waiter> waiting = new ArrayDeque<>();
+    private int active;
+
+    /**
+     * A request waiting for a slot. Asynchronous requests are sent by the
+     * thread which frees the slot; synchronous requests are woken up.
+     */
+    private static final class Waiter {
+
+        private final Runnable send;
+        private boolean granted;
+
+        Waiter(Runnable send) {
+            this.send = send;
+        }
+    }
+
+    private JdkHttpTransport(Builder builder) {
+        HttpClient.Builder client = HttpClient.newBuilder()
+                .version(builder.version)
+                .connectTimeout(builder.connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL);
+        if (builder.executor != null) {
+            client.executor(builder.executor);
+        }
+        this.client = client.build();
+        this.requestTimeout = builder.requestTimeout;
+        this.maxConcurrentRequests = builder.maxConcurrentRequests;
+    }
+
+    /**
+     * The body is streamed rather than buffered, so large feeds can be parsed
+     * as they arrive. The request keeps its slot until the response is
+     * closed.
+     */
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        HttpRequest httpRequest = prepare(request);
+        try {
+            acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        boolean streaming = false;
+        try {
+            HttpResponse<InputStream> response = client.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+            TransportResponse result = new TransportResponse(response.statusCode(), new FilterInputStream(response.body()) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (!closed) {
+                            closed = true;
+                            release();
+                        }
+                    }
+                }
+            });
+            streaming = true;
+            return result;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            if (!streaming) {
+                release();
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> executeAsync(TransportRequest request) {
+        final CompletableFuture<TransportResponse> future = new CompletableFuture<>();
+        final HttpRequest httpRequest;
+        try {
+            httpRequest = prepare(request);
+        } catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+            return future;
+        }
+        Runnable send = new Runnable() {
+            @Override
+            public void run() {
+                client.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray())
+                        .whenComplete((response, error) -> {
+                            release();
+                            if (error != null) {
+                                future.completeExceptionally(unwrap(error));
+                            } else {
+                                future.complete(new TransportResponse(response.statusCode(),
+                                        new ByteArrayInputStream(response.body())));
+                            }
+                        });
+            }
+        };
+        synchronized (this) {
+            if (active >= maxConcurrentRequests || !waiting.isEmpty()) {
+                waiting.add(new Waiter(send));
+                return future;
+            }
+            active++;
+        }
+        send.run();
+        return future;
+    }
+
+    /**
+     * Wait for a free slot. Used by synchronous requests, which queue behind
+     * any request already waiting.
+     */
+    private void acquire() throws InterruptedException {
+        Waiter waiter = new Waiter(null);
+        synchronized (this) {
+            if (active < maxConcurrentRequests && waiting.isEmpty()) {
+                active++;
+                return;
+            }
+            waiting.add(waiter);
+            try {
+                while (!waiter.granted) {
+                    wait();
+                }
+                return;
+            } catch (InterruptedException ex) {
+                if (!waiter.granted) {
+                    waiting.remove(waiter);
+                    throw ex;
+                }
+            }
+        }
+        /* interrupted after the slot was handed over, so pass it on */
+        release();
+        throw new InterruptedException();
+    }
+
+    /**
+     * Free a slot, handing it to the request which has waited longest, if
+     * there is one.
+     */
+    private void release() {
+        Waiter next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                active--;
+                return;
+            }
+            if (next.send == null) {
+                next.granted = true;
+                notifyAll();
+                return;
+            }
+        }
+        next.send.run();
+    }
+
+    /**
+     * Convert a transport request into an HttpRequest.
+     */
+    private HttpRequest prepare(TransportRequest request) {
+        String parameters = request.encodeParameters();
+        HttpRequest.Builder builder = HttpRequest.newBuilder().timeout(requestTimeout);
+        if (request.getMethod() == TransportRequest.Method.GET) {
+            String url = request.getUrl();
+            if (!parameters.isEmpty()) {
+                url += (url.contains("?") ? "&" : "?") + parameters;
+            }
+            builder.uri(URI.create(url)).GET();
+        } else if (request.getJson() != null) {
+            builder.uri(URI.create(request.getUrl()))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(request.getJson()));
+        } else {
+            builder.uri(URI.create(request.getUrl()))
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .POST(HttpRequest.BodyPublishers.ofString(parameters));
+        }
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        return builder.build();
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof UncheckedIOException) {
+            return ((UncheckedIOException) error).getCause();
+        }
+        return error;
+    }
+}
@@ -0,0 +1,394 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only queue of records stored in memory-mapped segment files. Used by
+ * {@link WriteAheadQueue}.
+ *
+ * <p>
+ * Each segment is a fixed-size file named by its sequence number. Records are
+ * written as [length][crc32][bytes]; a zero length marks the end of the data
+ * in a segment. When a record does not fit in the current segment, a new one
+ * is started. The position of the oldest unconsumed record is kept in a
+ * checkpoint file, and segments are deleted once they have been consumed.</p>
+ *
+ * <p>
+ * Records are flushed to disk before {@link #append(byte[])} returns, unless
+ * the flush is deferred so that several records can share it. After a
+ * crash, the journal is recovered up to the last complete record. Records
+ * consumed after the last checkpoint may be read again, so delivery is
+ * at-least-once.</p>
+ */
+class Journal {
+
+    private static final String SUFFIX = ".seg";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final int HEADER = 8;
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    /**
+     * Segment sequence numbers currently on disk, oldest first, and their
+     * mappings.
+     */
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+
+    /**
+     * Position of the next record to be written.
+     */
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+
+    /**
+     * Position of the oldest record that has not been consumed.
+     */
+    private long readSegment;
+    private int readOffset;
+
+    private final MappedByteBuffer checkpoint;
+    private long records;
+
+    /**
+     * True if records have been written to the current segment since it was
+     * last flushed to disk.
+     */
+    private boolean unforced;
+
+    /**
+     * Open a journal, creating it if it does not exist.
+     *
+     * @param directory Directory in which to store segments. Must not be
+     * shared with other journals.
+     * @param segmentSize Size of each segment file, in bytes.
+     * @param maxSegments Maximum number of segments to keep. When exceeded,
+     * the oldest segment and any unconsumed records it contains are discarded.
+     * @throws IOException The journal cannot be opened.
+     */
+    Journal(File directory, int segmentSize, int maxSegments) throws IOException {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("Segment size must be at least 1024 bytes.");
+        }
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("Journal must have at least one segment.");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.checkpoint = map(new File(directory, CHECKPOINT), 16);
+        recover();
+    }
+
+    /**
+     * Add a record to the end of the journal. The record is on disk when this
+     * method returns.
+     *
+     * @param record Record to add.
+     * @throws IOException The record cannot be written.
+     */
+    synchronized void append(byte[] record) throws IOException {
+        append(record, true);
+    }
+
+    /**
+     * Add a record to the end of the journal, optionally without waiting for
+     * it to reach the disk. An unflushed record is in the mapped segment, so
+     * it survives the application stopping but not the machine; it is
+     * flushed by {@link #force()} or by the next flushed append.
+     *
+     * @param record Record to add.
+     * @param force Flush the record to disk before returning.
+     * @throws IOException The record cannot be written.
+     */
+    synchronized void append(byte[] record, boolean force) throws IOException {
+        if (record.length == 0 || record.length > segmentSize - HEADER) {
+            throw new IllegalArgumentException("Invalid record length " + record.length);
+        }
+        if (writeBuffer.remaining() < HEADER + record.length) {
+            rotate();
+        }
+        int start = writeBuffer.position();
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        writeBuffer.position(start + HEADER);
+        writeBuffer.put(record);
+        writeBuffer.putInt(start + 4, (int) crc.getValue());
+        writeBuffer.putInt(start, record.length);
+        if (force) {
+            writeBuffer.force();
+            unforced = false;
+        } else {
+            unforced = true;
+        }
+        records++;
+    }
+
+    /**
+     * Flush records added with a deferred flush to disk.
+     */
+    synchronized void force() {
+        if (unforced) {
+            writeBuffer.force();
+            unforced = false;
+        }
+    }
+
+    /**
+     * Read the oldest records without consuming them.
+     *
+     * @param max Maximum number of records to read.
+     * @return Records, oldest first; empty if the journal is empty.
+     */
+    synchronized List<byte[]> peek(int max) {
+        List<byte[]> result = new ArrayList<>();
+        long segment = readSegment;
+        int offset = readOffset;
+        while (result.size() < max) {
+            ByteBuffer buffer = segments.get(segment);
+            byte[] record = (buffer == null) ? null : read(buffer, offset);
+            if (record == null) {
+                Long next = segments.higherKey(segment);
+                if (next == null) {
+                    break;
+                }
+                segment = next;
+                offset = 0;
+                continue;
+            }
+            result.add(record);
+            offset += HEADER + record.length;
+        }
+        return result;
+    }
+
+    /**
+     * Consume the oldest records, which have usually been read with
+     * {@link #peek(int)}. Segments which no longer contain unconsumed records
+     * are deleted.
+     *
+     * @param count Number of records to consume.
+     */
+    synchronized void remove(int count) {
+        for (int i = 0; i < count; i++) {
+            byte[] record = read(segments.get(readSegment), readOffset);
+            while (record == null && readSegment < writeSegment) {
+                advanceReadSegment();
+                record = read(segments.get(readSegment), readOffset);
+            }
+            if (record == null) {
+                break;
+            }
+            readOffset += HEADER + record.length;
+            records--;
+        }
+        while (readSegment < writeSegment && read(segments.get(readSegment), readOffset) == null) {
+            advanceReadSegment();
+        }
+        saveCheckpoint();
+    }
+
+    /**
+     * Get the number of records which have not been consumed.
+     *
+     * @return Number of records.
+     */
+    synchronized long size() {
+        return records;
+    }
+
+    /**
+     * Start a new segment, discarding the oldest if there are too many.
+     */
+    private void rotate() throws IOException {
+        force();
+        writeSegment++;
+        writeBuffer = map(segmentFile(writeSegment), segmentSize);
+        segments.put(writeSegment, writeBuffer);
+        while (segments.size() > maxSegments) {
+            long oldest = segments.firstKey();
+            int dropped = count(oldest, (oldest == readSegment) ? readOffset : 0);
+            Logger.getLogger(Journal.class.getName()).log(Level.WARNING,
+                    "Journal full, discarding {0} records.", dropped);
+            records -= dropped;
+            if (oldest == readSegment) {
+                advanceReadSegment();
+            } else {
+                delete(oldest);
+            }
+        }
+        saveCheckpoint();
+    }
+
+    /**
+     * Move the read position to the start of the next segment and delete the
+     * old one.
+     */
+    private void advanceReadSegment() {
+        long old = readSegment;
+        readSegment = segments.higherKey(old);
+        readOffset = 0;
+        delete(old);
+    }
+
+    private void delete(long segment) {
+        segments.remove(segment);
+        if (!segmentFile(segment).delete()) {
+            Logger.getLogger(Journal.class.getName()).log(Level.WARNING,
+                    "Cannot delete journal segment {0}", segmentFile(segment));
+        }
+    }
+
+    /**
+     * Read the record at an offset in a segment.
+     *
+     * @return Record, or null if there is no valid record at the offset.
+     */
+    private byte[] read(ByteBuffer segment, int offset) {
+        if (segment == null || offset + HEADER > segment.limit()) {
+            return null;
+        }
+        int length = segment.getInt(offset);
+        if (length <= 0 || offset + HEADER + length > segment.limit()) {
+            return null;
+        }
+        byte[] record = new byte[length];
+        ByteBuffer view = segment.duplicate();
+        view.position(offset + HEADER);
+        view.get(record);
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, length);
+        if ((int) crc.getValue() != segment.getInt(offset + 4)) {
+            return null;
+        }
+        return record;
+    }
+
+    /**
+     * Count the valid records in a segment from an offset.
+     */
+    private int count(long segment, int offset) {
+        ByteBuffer buffer = segments.get(segment);
+        int count = 0;
+        byte[] record;
+        while ((record = read(buffer, offset)) != null) {
+            count++;
+            offset += HEADER + record.length;
+        }
+        return count;
+    }
+
+    /**
+     * Load the segments and checkpoint from disk, and find the end of the
+     * data in the newest segment.
+     */
+    private void recover() throws IOException {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(SUFFIX)) {
+                    try {
+                        long sequence = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                        segments.put(sequence, map(file, segmentSize));
+                    } catch (NumberFormatException ex) {
+                        /* not one of ours */
+                    }
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.put(0L, map(segmentFile(0), segmentSize));
+        }
+        writeSegment = segments.lastKey();
+        writeBuffer = segments.get(writeSegment);
+
+        long savedSegment = checkpoint.getLong(0);
+        int savedOffset = checkpoint.getInt(8);
+        if (checkpoint.getInt(12) == checksum(savedSegment, savedOffset) && segments.containsKey(savedSegment)) {
+            readSegment = savedSegment;
+            readOffset = savedOffset;
+        } else {
+            readSegment = segments.firstKey();
+            readOffset = 0;
+        }
+        for (Long segment : segments.headMap(readSegment).keySet().toArray(new Long[0])) {
+            delete(segment);
+        }
+
+        records = 0;
+        for (long segment : segments.keySet()) {
+            records += count(segment, (segment == readSegment) ? readOffset : 0);
+        }
+
+        /* find the end of the valid data and clear anything after it */
+        int end = 0;
+        byte[] record;
+        while ((record = read(writeBuffer, end)) != null) {
+            end += HEADER + record.length;
+        }
+        for (int i = end; i < writeBuffer.limit(); i++) {
+            writeBuffer.put(i, (byte) 0);
+        }
+        writeBuffer.force();
+        writeBuffer.position(end);
+        saveCheckpoint();
+    }
+
+    private void saveCheckpoint() {
+        checkpoint.putLong(0, readSegment);
+        checkpoint.putInt(8, readOffset);
+        checkpoint.putInt(12, checksum(readSegment, readOffset));
+        checkpoint.force();
+    }
+
+    private static int checksum(long segment, int offset) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(12).putLong(segment).putInt(offset).array(), 0, 12);
+        return (int) crc.getValue();
+    }
+
+    private File segmentFile(long sequence) {
+        return new File(directory, String.format("%020d%s", sequence, SUFFIX));
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import com.mashape.unirest.http.exceptions.UnirestException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A table of requests in flight. When several threads make the same request
+ * at the same time, only the first one is sent, and every caller receives
+ * its result. A request is removed from the table as soon as it completes,
+ * so results are never reused by later callers. Used by {@link Channel} to
+ * coalesce identical reads.
+ */
+final class SingleFlight {
+
+    /**
+     * A request which returns a result or throws the same exceptions as
+     * {@link Channel}.
+     */
+    interface Call<T> {
+
+        T call() throws UnirestException, ThingSpeakException;
+    }
+
+    private final ConcurrentHashMap<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Make a request, or wait for an identical request already in flight.
+     *
+     * @param key Identifies the request; equal keys must return equal
+     * results.
+     * @param call Makes the request.
+     * @return The result.
+     * @throws UnirestException The request cannot be made.
+     * @throws ThingSpeakException The request is invalid.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T execute(String key, Call<T> call) throws UnirestException, ThingSpeakException {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<T> existing = (CompletableFuture<T>) inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            T result = call.call();
+            inFlight.remove(key, future);
+            future.complete(result);
+            return result;
+        } catch (UnirestException | ThingSpeakException | RuntimeException | Error ex) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Make a request without blocking, or share an identical request already
+     * in flight.
+     *
+     * @param key Identifies the request; equal keys must return equal
+     * results.
+     * @param call Starts the request.
+     * @return A future which completes with the result.
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> executeAsync(String key, Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<T> existing = (CompletableFuture<T>) inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<T> request;
+        try {
+            request = call.get();
+        } catch (RuntimeException | Error ex) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(ex);
+            return future;
+        }
+        request.whenComplete((result, error) -> {
+            inFlight.remove(key, future);
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Wait for another caller's request to complete.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws UnirestException, ThingSpeakException {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof UnirestException) {
+                throw (UnirestException) cause;
+            } else if (cause instanceof ThingSpeakException) {
+                throw (ThingSpeakException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw ex;
+        }
+    }
+}
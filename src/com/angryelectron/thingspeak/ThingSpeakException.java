@@ -24,7 +24,43 @@ package com.angryelectron.thingspeak;
  * or data formats.
  */
 public class ThingSpeakException extends Exception {
+
+    private final int statusCode;
+
     public ThingSpeakException(String message) {
+        this(message, 0);
+    }
+
+    /**
+     * Constructor for a request rejected with an HTTP error status.
+     *
+     * @param message Message.
+     * @param statusCode HTTP status code.
+     */
+    public ThingSpeakException(String message, int statusCode) {
         super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Get the HTTP status code of the rejected request.
+     *
+     * @return Status code, or 0 if the server did not return an error status,
+     * for example when an update is refused because it came too soon after
+     * the previous one.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Check whether the same request might succeed later. Requests rejected
+     * with a 4xx status, other than 408 (timeout) and 429 (too many
+     * requests), will fail again and should not be retried.
+     *
+     * @return False if retrying is pointless.
+     */
+    public boolean isRetryable() {
+        return statusCode == 0 || statusCode == 408 || statusCode == 429 || statusCode >= 500;
     }
 }
@@ -0,0 +1,306 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * <p>
+ * Reads and writes the timestamps used by ThingSpeak. Feeds use ISO-8601 dates
+ * such as "2014-01-31T20:15:00Z" or "2014-01-31T12:15:00-08:00", and request
+ * parameters use "2014-01-31 12:15:00" in the channel's time zone.</p>
+ * <p>
+ * Unlike SimpleDateFormat, all methods are thread-safe and hold no locks.
+ * Dates are converted to and from epoch milliseconds with integer arithmetic
+ * on the proleptic Gregorian calendar, so parsing creates no objects and
+ * formatting only appends characters to a StringBuilder. Years must be in
+ * the range 0000 to 9999.</p>
+ */
+public final class TimestampCodec {
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private TimestampCodec() {
+    }
+
+    /**
+     * Parse an ISO-8601 timestamp, eg. "2014-01-31T20:15:00Z". Fractional
+     * seconds are optional. The offset may be "Z", "+hh:mm", "+hhmm" or
+     * "+hh"; if it is missing the time is taken to be UTC. A space is accepted
+     * in place of the 'T'.
+     *
+     * @param text Timestamp.
+     * @return Milliseconds since the epoch.
+     * @throws IllegalArgumentException The timestamp is not valid.
+     */
+    public static long parse(CharSequence text) {
+        int length = text.length();
+        if (length < 19
+                || text.charAt(4) != '-' || text.charAt(7) != '-'
+                || (text.charAt(10) != 'T' && text.charAt(10) != ' ')
+                || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            throw invalid(text);
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1
+                || day > daysInMonth(year, month) || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            throw invalid(text);
+        }
+        int pos = 19;
+        int millis = 0;
+        if (pos < length && text.charAt(pos) == '.') {
+            int scale = 100;
+            int start = ++pos;
+            while (pos < length && isDigit(text.charAt(pos))) {
+                millis += (text.charAt(pos) - '0') * scale;
+                scale /= 10;
+                pos++;
+            }
+            if (pos == start) {
+                throw invalid(text);
+            }
+        }
+        int offset = 0;
+        if (pos < length) {
+            char sign = text.charAt(pos++);
+            if (sign == 'Z' && pos == length) {
+                offset = 0;
+            } else if (sign == '+' || sign == '-') {
+                int offsetHours = digits(text, pos, 2);
+                int offsetMinutes = 0;
+                pos += 2;
+                if (pos < length && text.charAt(pos) == ':') {
+                    pos++;
+                }
+                if (pos < length) {
+                    offsetMinutes = digits(text, pos, 2);
+                    pos += 2;
+                }
+                if (offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0
+                        || offsetMinutes > 59 || pos != length) {
+                    throw invalid(text);
+                }
+                offset = (offsetHours * 60 + offsetMinutes) * 60000;
+                if (sign == '-') {
+                    offset = -offset;
+                }
+            } else {
+                throw invalid(text);
+            }
+        }
+        long seconds = (hour * 60 + minute) * 60 + second;
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + seconds * MILLIS_PER_SECOND + millis - offset;
+    }
+
+    /**
+     * Format a time as an ISO-8601 timestamp in UTC, eg.
+     * "2014-01-31T20:15:00Z". Milliseconds are dropped, as they are in the
+     * feeds returned by the server.
+     *
+     * @param millis Milliseconds since the epoch.
+     * @return Timestamp.
+     */
+    public static String format(long millis) {
+        return append(new StringBuilder(20), millis).toString();
+    }
+
+    /**
+     * Append a time as an ISO-8601 timestamp in UTC, eg.
+     * "2014-01-31T20:15:00Z".
+     *
+     * @param out Destination.
+     * @param millis Milliseconds since the epoch.
+     * @return out.
+     */
+    public static StringBuilder append(StringBuilder out, long millis) {
+        appendDateTime(out, millis, 'T');
+        return out.append('Z');
+    }
+
+    /**
+     * Format a time as a request parameter, eg. "2014-01-31 12:15:00", in the
+     * given time zone.
+     *
+     * @param millis Milliseconds since the epoch.
+     * @param zone Time zone.
+     * @return Formatted time.
+     */
+    public static String formatParameter(long millis, TimeZone zone) {
+        return appendParameter(new StringBuilder(19), millis, zone).toString();
+    }
+
+    /**
+     * Append a time as a request parameter, eg. "2014-01-31 12:15:00", in the
+     * given time zone.
+     *
+     * @param out Destination.
+     * @param millis Milliseconds since the epoch.
+     * @param zone Time zone.
+     * @return out.
+     */
+    public static StringBuilder appendParameter(StringBuilder out, long millis, TimeZone zone) {
+        appendDateTime(out, millis + zone.getOffset(millis), ' ');
+        return out;
+    }
+
+    /**
+     * Gson adapter for java.util.Date which uses this codec. Register it in
+     * place of GsonBuilder.setDateFormat():
+     * <pre>
+     * {@code
+     * Gson gson = new GsonBuilder()
+     *         .registerTypeAdapter(Date.class, new TimestampCodec.DateAdapter())
+     *         .create();
+     * }
+     * </pre>
+     */
+    public static class DateAdapter extends TypeAdapter<Date> {
+
+        @Override
+        public Date read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String text = in.nextString();
+            try {
+                return new Date(parse(text));
+            } catch (IllegalArgumentException ex) {
+                throw new JsonSyntaxException(ex.getMessage(), ex);
+            }
+        }
+
+        @Override
+        public void write(JsonWriter out, Date date) throws IOException {
+            if (date == null) {
+                out.nullValue();
+            } else {
+                out.value(format(date.getTime()));
+            }
+        }
+    }
+
+    /**
+     * Append "yyyy-MM-dd?HH:mm:ss" for a time in UTC.
+     */
+    private static void appendDateTime(StringBuilder out, long millis, char separator) {
+        long days = Math.floorDiv(millis, MILLIS_PER_DAY);
+        int secondOfDay = (int) (Math.floorMod(millis, MILLIS_PER_DAY) / MILLIS_PER_SECOND);
+
+        /* Convert days since the epoch to a civil date. See Howard Hinnant,
+         * "chrono-Compatible Low-Level Date Algorithms". */
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            throw new IllegalArgumentException("Year out of range: " + year);
+        }
+
+        pad(out, (int) year, 4).append('-');
+        pad(out, month, 2).append('-');
+        pad(out, day, 2).append(separator);
+        pad(out, secondOfDay / 3600, 2).append(':');
+        pad(out, secondOfDay / 60 % 60, 2).append(':');
+        pad(out, secondOfDay % 60, 2);
+    }
+
+    /**
+     * Days since the epoch for a civil date.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Read a fixed number of decimal digits.
+     *
+     * @return The value, or -1 if any character is not a digit.
+     */
+    private static int digits(CharSequence text, int start, int count) {
+        if (start + count > text.length()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static StringBuilder pad(StringBuilder out, int value, int width) {
+        for (int divisor = width == 4 ? 1000 : 10; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + value / divisor % 10));
+        }
+        return out;
+    }
+
+    private static IllegalArgumentException invalid(CharSequence text) {
+        return new IllegalArgumentException("Invalid timestamp: " + text);
+    }
+}
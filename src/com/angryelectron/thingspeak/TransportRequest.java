@@ -0,0 +1,225 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An HTTP request to be sent by an {@link HttpTransport}. Requests are one of:
+ * <ul>
+ * <li>GET, with parameters sent in the query string.</li>
+ * <li>POST, with parameters sent as a url-encoded form.</li>
+ * <li>POST, with a JSON body.</li>
+ * </ul>
+ */
+public final class TransportRequest {
+
+    /**
+     * HTTP request methods used by the ThingSpeak API.
+     */
+    public enum Method {
+
+        /**
+         * Read data.
+         */
+        GET,
+
+        /**
+         * Write data.
+         */
+        POST
+    }
+
+    private final Method method;
+    private final String url;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private final Map<String, Object> parameters = new LinkedHashMap<>();
+    private final String json;
+    private String query = "";
+
+    private TransportRequest(Method method, String url, String json) {
+        this.method = method;
+        this.url = url;
+        this.json = json;
+    }
+
+    /**
+     * Create a GET request.
+     *
+     * @param url Request URL.
+     * @return Request.
+     */
+    public static TransportRequest get(String url) {
+        return new TransportRequest(Method.GET, url, null);
+    }
+
+    /**
+     * Create a POST request with a url-encoded form body.
+     *
+     * @param url Request URL.
+     * @return Request.
+     */
+    public static TransportRequest postForm(String url) {
+        return new TransportRequest(Method.POST, url, null);
+    }
+
+    /**
+     * Create a POST request with a JSON body.
+     *
+     * @param url Request URL.
+     * @param json Body.
+     * @return Request.
+     */
+    public static TransportRequest postJson(String url, String json) {
+        return new TransportRequest(Method.POST, url, json);
+    }
+
+    /**
+     * Add a header.
+     *
+     * @param name Header name.
+     * @param value Header value.
+     * @return This request.
+     */
+    public TransportRequest header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    /**
+     * Add a parameter. Parameters with null values are ignored.
+     *
+     * @param name Parameter name.
+     * @param value Parameter value, sent as a String.
+     * @return This request.
+     */
+    public TransportRequest parameter(String name, Object value) {
+        if (value != null) {
+            parameters.put(name, value);
+        }
+        return this;
+    }
+
+    /**
+     * Add several parameters.
+     *
+     * @param values Parameter names and values.
+     * @return This request.
+     */
+    public TransportRequest parameters(Map<String, ?> values) {
+        for (Map.Entry<String, ?> value : values.entrySet()) {
+            parameter(value.getKey(), value.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * Set parameters which have already been encoded, such as
+     * {@link FeedParameters#getQueryString()}. They are sent ahead of any
+     * other parameters. Only GET requests can have an encoded query.
+     *
+     * @param encoded Encoded parameters, eg. "results=10&amp;status=true".
+     * @return This request.
+     */
+    public TransportRequest query(String encoded) {
+        if (method != Method.GET) {
+            throw new IllegalStateException("Only GET requests have a query string.");
+        }
+        this.query = encoded;
+        return this;
+    }
+
+    /**
+     * Get the parameters set with {@link #query(java.lang.String)}.
+     *
+     * @return Encoded parameters, or an empty String.
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * Get the request method.
+     *
+     * @return Method.
+     */
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Get the request URL, without parameters.
+     *
+     * @return URL.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Get the request headers.
+     *
+     * @return Headers, in the order they were added.
+     */
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Get the request parameters, not including the encoded query.
+     *
+     * @return Parameters, in the order they were added.
+     */
+    public Map<String, Object> getParameters() {
+        return Collections.unmodifiableMap(parameters);
+    }
+
+    /**
+     * Get the JSON body of the request.
+     *
+     * @return JSON, or null if this request does not have a JSON body.
+     */
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * Encode the parameters, including the encoded query, for use in a query
+     * string or form body.
+     *
+     * @return Encoded parameters, eg. "results=10&amp;status=true".
+     */
+    public String encodeParameters() {
+        StringBuilder builder = new StringBuilder(query);
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append('&');
+            }
+            builder.append(URLEncoder.encode(parameter.getKey(), StandardCharsets.UTF_8))
+                    .append('=')
+                    .append(URLEncoder.encode(parameter.getValue().toString(), StandardCharsets.UTF_8));
+        }
+        return builder.toString();
+    }
+}
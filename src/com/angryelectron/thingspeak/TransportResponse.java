@@ -0,0 +1,85 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An HTTP response returned by an {@link HttpTransport}. The body can be read
+ * once, either as a stream or as a String. Close the response when done to
+ * release the connection.
+ */
+public final class TransportResponse implements Closeable {
+
+    private final int code;
+    private final InputStream body;
+
+    /**
+     * Constructor.
+     *
+     * @param code HTTP status code.
+     * @param body Response body.
+     */
+    public TransportResponse(int code, InputStream body) {
+        this.code = code;
+        this.body = body;
+    }
+
+    /**
+     * Get the HTTP status code.
+     *
+     * @return Status code.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Get the response body as a stream.
+     *
+     * @return Body.
+     */
+    public InputStream getStream() {
+        return body;
+    }
+
+    /**
+     * Read the whole response body as a UTF-8 String.
+     *
+     * @return Body.
+     * @throws IOException The body cannot be read.
+     */
+    public String getBody() throws IOException {
+        return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Release the response.
+     *
+     * @throws IOException The response cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        body.close();
+    }
+}
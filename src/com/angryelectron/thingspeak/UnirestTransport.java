@@ -0,0 +1,103 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import com.mashape.unirest.http.HttpResponse;
+import com.mashape.unirest.http.Unirest;
+import com.mashape.unirest.http.async.Callback;
+import com.mashape.unirest.http.exceptions.UnirestException;
+import com.mashape.unirest.request.BaseRequest;
+import com.mashape.unirest.request.GetRequest;
+import com.mashape.unirest.request.HttpRequestWithBody;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link HttpTransport} which uses the Unirest library. This is the default
+ * transport. Connections are shared by all instances; use
+ * {@link ConnectionPool} to size the pool. Errors are reported as an
+ * IOException caused by a {@link UnirestException}.
+ */
+public class UnirestTransport implements HttpTransport {
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        ConnectionPool.ensureConfigured();
+        try {
+            HttpResponse<InputStream> response = prepare(request).asBinary();
+            return new TransportResponse(response.getCode(), response.getBody());
+        } catch (UnirestException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> executeAsync(TransportRequest request) {
+        final CompletableFuture<TransportResponse> future = new CompletableFuture<>();
+        ConnectionPool.ensureConfigured();
+        prepare(request).asBinaryAsync(new Callback<InputStream>() {
+            @Override
+            public void completed(HttpResponse<InputStream> response) {
+                future.complete(new TransportResponse(response.getCode(), response.getBody()));
+            }
+
+            @Override
+            public void failed(UnirestException ex) {
+                future.completeExceptionally(new IOException(ex));
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Convert a transport request into a Unirest request.
+     */
+    private BaseRequest prepare(TransportRequest request) {
+        if (request.getMethod() == TransportRequest.Method.GET) {
+            String url = request.getUrl();
+            if (!request.getQuery().isEmpty()) {
+                url += (url.contains("?") ? "&" : "?") + request.getQuery();
+            }
+            GetRequest get = Unirest.get(url);
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                get.header(header.getKey(), header.getValue());
+            }
+            for (Map.Entry<String, Object> parameter : request.getParameters().entrySet()) {
+                get.field(parameter.getKey(), parameter.getValue());
+            }
+            return get;
+        }
+        HttpRequestWithBody post = Unirest.post(request.getUrl());
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            post.header(header.getKey(), header.getValue());
+        }
+        if (request.getJson() != null) {
+            return post.header("Content-Type", "application/json").body(request.getJson());
+        }
+        return post.fields(request.getParameters());
+    }
+}
@@ -0,0 +1,414 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * Sends updates to many channels without exceeding the server's rate limit.
+ * ThingSpeak rejects updates made to a channel less than a minimum interval
+ * (15 seconds on thingspeak.com) after the previous one.  Instead of
+ * calling {@link Channel#update(com.angryelectron.thingspeak.Entry)} directly,
+ * submit entries to the scheduler. It holds them until the channel's next
+ * update slot, then sends everything that has accumulated in a single
+ * request:</p>
+ * <ul>
+ * <li>{@link Mode#COALESCE} merges pending entries into one update. Where
+ * several entries set the same field, the most recent value wins.</li>
+ * <li>{@link Mode#BULK} sends every pending entry, with its original date,
+ * using the bulk update API.</li>
+ * </ul>
+ * <pre>
+ * {@code
+ * UpdateScheduler scheduler = new UpdateScheduler(15, TimeUnit.SECONDS, UpdateScheduler.Mode.BULK, 2);
+ * scheduler.submit(channel, entry);
+ * }
+ * </pre>
+ * <p>
+ * Requests are sent asynchronously, so a small number of threads can serve
+ * thousands of channels. If an update fails, its entries are returned to the
+ * channel's queue and retried after a delay which doubles with each failure,
+ * up to 5 minutes. Entries are dropped after {@link #setMaxRetries(int)}
+ * failed attempts, or at once if the server rejects them in a way which will
+ * not change on retry (see {@link ThingSpeakException#isRetryable()}).
+ * {@link #close()} waits for pending entries to be sent.</p>
+ */
+public class UpdateScheduler implements AutoCloseable {
+
+    /**
+     * How pending entries are combined when a channel's slot comes up.
+     */
+    public enum Mode {
+
+        /**
+         * Merge all pending entries into a single update; the most recent
+         * value of each field wins.
+         */
+        COALESCE,
+
+        /**
+         * Send all pending entries in a single bulk update.
+         */
+        BULK
+    }
+
+    /**
+     * Pending entries and timing for one channel. Guarded by itself.
+     */
+    private class Slot {
+
+        private final Channel channel;
+        private long intervalMillis;
+        private ArrayList<Entry> pending = new ArrayList<>();
+
+        /**
+         * Earliest time (System.nanoTime) at which the next update may be
+         * sent.
+         */
+        private long nextSend = System.nanoTime();
+
+        /**
+         * True while a send is scheduled or in-flight. Only one may be
+         * outstanding per channel.
+         */
+        private boolean busy;
+
+        /**
+         * Number of consecutive failed attempts to send the first batch.
+         */
+        private int failures;
+
+        private Slot(Channel channel) {
+            this.channel = channel;
+            this.intervalMillis = defaultIntervalMillis;
+        }
+    }
+
+    private final long defaultIntervalMillis;
+    private final Mode mode;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<Channel, Slot> slots = new ConcurrentHashMap<>();
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 300000;
+    private volatile int maxRetries = 5;
+    private volatile long closeTimeoutMillis = 30000;
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Number of slots with a send scheduled or in-flight, and whether the
+     * scheduler is closed. Guarded by this.
+     */
+    private int busySlots;
+    private boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param interval Minimum time between updates to each channel.
+     * @param unit Unit of interval.
+     * @param mode How pending entries are combined.
+     * @param threads Number of threads used to schedule updates.
+     */
+    public UpdateScheduler(long interval, TimeUnit unit, Mode mode, int threads) {
+        this.defaultIntervalMillis = unit.toMillis(interval);
+        this.mode = mode;
+        this.executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "thingspeak-scheduler-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Use a different minimum interval for one channel, for example a channel
+     * hosted on a server with different rate limits.
+     *
+     * @param channel Channel.
+     * @param interval Minimum time between updates to the channel.
+     * @param unit Unit of interval.
+     */
+    public void setInterval(Channel channel, long interval, TimeUnit unit) {
+        Slot slot = slot(channel);
+        synchronized (slot) {
+            slot.intervalMillis = unit.toMillis(interval);
+        }
+    }
+
+    /**
+     * Set the number of times a failed update is retried before its entries
+     * are dropped. Default is 5.
+     *
+     * @param retries Number of retries.
+     */
+    public void setMaxRetries(int retries) {
+        if (retries < 0) {
+            throw new IllegalArgumentException("Retries cannot be negative.");
+        }
+        this.maxRetries = retries;
+    }
+
+    /**
+     * Set how long {@link #close()} waits for pending entries to be sent.
+     * Default is 30 seconds.
+     *
+     * @param timeout Timeout.
+     * @param unit Unit of timeout.
+     */
+    public void setCloseTimeout(long timeout, TimeUnit unit) {
+        this.closeTimeoutMillis = unit.toMillis(timeout);
+    }
+
+    /**
+     * Get the number of entries which were dropped because they could not be
+     * sent.
+     *
+     * @return Number of entries.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Queue an entry to be sent in the channel's next update slot. If the
+     * entry does not have a date it is set to the current time, so
+     * {@link Mode#BULK} updates keep the time the data was submitted.
+     *
+     * @param channel Channel to update.
+     * @param entry The new data to be posted.
+     */
+    public void submit(Channel channel, Entry entry) {
+        if (entry.getCreated() == null) {
+            entry.setCreated(new Date());
+        }
+        Slot slot = slot(channel);
+        synchronized (slot) {
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("Scheduler is closed.");
+                }
+                if (!slot.busy) {
+                    busySlots++;
+                }
+            }
+            slot.pending.add(entry);
+            if (!slot.busy) {
+                schedule(slot);
+            }
+        }
+    }
+
+    /**
+     * Get the number of entries waiting to be sent to a channel.
+     *
+     * @param channel Channel.
+     * @return Number of entries.
+     */
+    public int pending(Channel channel) {
+        Slot slot = slots.get(channel);
+        if (slot == null) {
+            return 0;
+        }
+        synchronized (slot) {
+            return slot.pending.size();
+        }
+    }
+
+    /**
+     * Stop accepting entries and wait for pending entries to be sent in their
+     * channels' update slots, up to the close timeout. Entries which have not
+     * been sent by then are dropped and logged.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            long deadline = System.currentTimeMillis() + closeTimeoutMillis;
+            long remaining = closeTimeoutMillis;
+            while (busySlots > 0 && remaining > 0) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+        executor.shutdownNow();
+        int unsent = 0;
+        for (Slot slot : slots.values()) {
+            synchronized (slot) {
+                unsent += slot.pending.size();
+                slot.pending.clear();
+            }
+        }
+        if (unsent > 0) {
+            dropped.addAndGet(unsent);
+            Logger.getLogger(UpdateScheduler.class.getName()).log(Level.WARNING,
+                    "Closed with {0} entries unsent.", unsent);
+        }
+    }
+
+    private Slot slot(Channel channel) {
+        Slot slot = slots.get(channel);
+        if (slot == null) {
+            Slot created = new Slot(channel);
+            slot = slots.putIfAbsent(channel, created);
+            if (slot == null) {
+                slot = created;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Schedule a send for the channel's next slot. Caller must hold the slot.
+     */
+    private void schedule(final Slot slot) {
+        slot.busy = true;
+        long delay = Math.max(0, slot.nextSend - System.nanoTime());
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                send(slot);
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Take the pending entries for a channel and send them.
+     */
+    private void send(final Slot slot) {
+        final List<Entry> batch;
+        synchronized (slot) {
+            if (slot.pending.isEmpty()) {
+                idle(slot);
+                return;
+            }
+            batch = takeBatch(slot);
+        }
+        CompletableFuture<?> request;
+        try {
+            if (mode == Mode.COALESCE) {
+                Entry merged = new Entry();
+                for (Entry entry : batch) {
+                    merged.merge(entry);
+                }
+                request = slot.channel.updateAsync(merged);
+            } else {
+                request = slot.channel.bulkUpdateAsync(batch);
+            }
+        } catch (RuntimeException ex) {
+            sent(slot, batch, ex);
+            return;
+        }
+        request.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object result, Throwable error) {
+                sent(slot, batch, error);
+            }
+        });
+    }
+
+    /**
+     * Remove the entries to be sent in one request. Caller must hold the
+     * slot.
+     */
+    private List<Entry> takeBatch(Slot slot) {
+        if (mode == Mode.COALESCE || slot.pending.size() <= Channel.MAX_BULK_ENTRIES) {
+            List<Entry> batch = slot.pending;
+            slot.pending = new ArrayList<>();
+            return batch;
+        }
+        List<Entry> head = slot.pending.subList(0, Channel.MAX_BULK_ENTRIES);
+        List<Entry> batch = new ArrayList<>(head);
+        head.clear();
+        return batch;
+    }
+
+    /**
+     * Called when a request completes. The interval is measured from the
+     * completion of the request, so the server will always have seen the
+     * previous update at least one interval earlier. A failed batch is
+     * returned to the queue, unless it cannot succeed or has used up its
+     * retries, and the next attempt is delayed by the backoff.
+     */
+    private void sent(Slot slot, List<Entry> batch, Throwable error) {
+        synchronized (slot) {
+            long delay = slot.intervalMillis;
+            if (error == null) {
+                slot.failures = 0;
+            } else {
+                Throwable cause = (error instanceof CompletionException && error.getCause() != null) ? error.getCause() : error;
+                boolean retryable = !(cause instanceof ThingSpeakException) || ((ThingSpeakException) cause).isRetryable();
+                if (!retryable || slot.failures >= maxRetries) {
+                    Logger.getLogger(UpdateScheduler.class.getName()).log(Level.SEVERE,
+                            "Dropped " + batch.size() + " entries after " + (slot.failures + 1) + " attempts.", cause);
+                    dropped.addAndGet(batch.size());
+                    slot.failures = 0;
+                } else {
+                    Logger.getLogger(UpdateScheduler.class.getName()).log(Level.WARNING, null, cause);
+                    slot.pending.addAll(0, batch);
+                    delay = Math.max(delay, Math.min(MAX_BACKOFF_MILLIS,
+                            Math.max(slot.intervalMillis, MIN_BACKOFF_MILLIS) << Math.min(slot.failures, 20)));
+                    slot.failures++;
+                }
+            }
+            slot.nextSend = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            if (slot.pending.isEmpty() || executor.isShutdown()) {
+                idle(slot);
+            } else {
+                schedule(slot);
+            }
+        }
+    }
+
+    /**
+     * Mark a slot as having nothing scheduled. Caller must hold the slot.
+     */
+    private void idle(Slot slot) {
+        slot.busy = false;
+        synchronized (this) {
+            busySlots--;
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,503 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.mashape.unirest.http.exceptions.UnirestException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * Durable queue of updates for a channel. Entries are written to an on-disk
+ * journal before being sent, so they survive network outages, server
+ * outages, and application restarts:</p>
+ * <pre>
+ * {@code
+ * Channel channel = new Channel(1234, writeKey);
+ * WriteAheadQueue queue = new WriteAheadQueue(channel, new File("/var/spool/thingspeak/1234"));
+ * queue.enqueue(entry);
+ * }
+ * </pre>
+ * <p>
+ * Each entry is time-stamped with {@link Entry#setCreated(java.util.Date)}
+ * (unless it already has a date) and is on disk when
+ * {@link #enqueue(Entry)} returns. Callers which add entries one at a time
+ * on a busy thread can use {@link #enqueueDeferred(Entry)} instead, which
+ * flushes them to disk together shortly afterwards. A background thread sends queued entries,
+ * oldest first, using {@link Channel#bulkUpdate(java.util.List)}, so a backlog
+ * built up during a long outage is cleared quickly once the server is
+ * reachable. Entries are only removed from the journal after the server has
+ * accepted them. If the application stops before the server confirms a
+ * batch, the batch is sent again when the queue is re-opened. A queue opened
+ * with {@link #WriteAheadQueue(Channel, File, int, int)} has no background
+ * sender; its owner sends the entries with {@link #sendNext()}, at the same
+ * pace as its other updates to the channel.</p>
+ * <p>
+ * Unless a limit is set, the journal grows until the server can be reached.
+ * With a limit, the oldest entries are discarded when the journal is full.</p>
+ * <p>
+ * A batch the server rejects outright (a 4xx status other than 408 or 429)
+ * is split in half and sent again, until the entry which caused the
+ * rejection is found. That entry is moved to a file named
+ * {@value #REJECTED_FILE} in the journal directory, one JSON record per line,
+ * so that it cannot hold up the entries behind it. Errors which are not
+ * caused by an entry leave the journal unchanged and are retried: a 401 or
+ * 403 status (a wrong or revoked write key), or a second entry being
+ * rejected before the server has accepted any entry since the first.</p>
+ */
+public class WriteAheadQueue implements AutoCloseable {
+
+    /**
+     * Default size of each journal segment file.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Name of the file in the journal directory which holds rejected entries.
+     */
+    public static final String REJECTED_FILE = "rejected.json";
+
+    private static final long MAX_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * How long entries added by {@link #enqueueDeferred(Entry)} may wait
+     * before they are flushed to disk.
+     */
+    private static final long FORCE_DELAY_MILLIS = 100;
+
+    private final Channel channel;
+    private final Journal journal;
+    private final long intervalMillis;
+    private final boolean sendInBackground;
+    private final ScheduledExecutorService executor;
+    private final File rejectedFile;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * True while a send is scheduled or running. Guarded by this.
+     */
+    private boolean scheduled;
+    private boolean forceScheduled;
+    private long retryMillis;
+    private volatile long lastSend;
+
+    /**
+     * Held while sending, so batches are sent one at a time and in order.
+     */
+    private final Object sendLock = new Object();
+
+    /**
+     * Largest batch to send next, and the number of entries at the head of
+     * the journal which include one the server rejected. Used to find the
+     * rejected entry by halving. unconfirmed is set when an entry is moved
+     * to the rejected file, and cleared when the server accepts an entry.
+     * Guarded by sendLock.
+     */
+    private int batchLimit = Channel.MAX_BULK_ENTRIES;
+    private int suspect;
+    private boolean unconfirmed;
+
+    /**
+     * Open a queue with unlimited size. Queued entries are sent no more than
+     * once every 15 seconds, the rate limit of thingspeak.com.
+     *
+     * @param channel The channel to update.
+     * @param directory Directory where the journal is stored. Use a separate
+     * directory for each queue.
+     * @throws IOException The journal cannot be opened.
+     */
+    public WriteAheadQueue(Channel channel, File directory) throws IOException {
+        this(channel, directory, 15, TimeUnit.SECONDS, DEFAULT_SEGMENT_SIZE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Open a queue.
+     *
+     * @param channel The channel to update.
+     * @param directory Directory where the journal is stored. Use a separate
+     * directory for each queue.
+     * @param interval Minimum time between bulk updates.
+     * @param unit Unit of interval.
+     * @param segmentSize Size of each journal segment file, in bytes.
+     * @param maxSegments Maximum number of segment files. When the journal is
+     * full, the oldest segment is discarded.
+     * @throws IOException The journal cannot be opened.
+     */
+    public WriteAheadQueue(Channel channel, File directory, long interval, TimeUnit unit, int segmentSize, int maxSegments) throws IOException {
+        this(channel, directory, unit.toMillis(interval), segmentSize, maxSegments, true);
+    }
+
+    /**
+     * Open a queue which does not send entries by itself. The caller sends
+     * them a batch at a time with {@link #sendNext()}, so that they can be
+     * paced together with the caller's other updates to the channel.
+     *
+     * @param channel The channel to update.
+     * @param directory Directory where the journal is stored. Use a separate
+     * directory for each queue.
+     * @param segmentSize Size of each journal segment file, in bytes.
+     * @param maxSegments Maximum number of segment files. When the journal is
+     * full, the oldest segment is discarded.
+     * @throws IOException The journal cannot be opened.
+     */
+    public WriteAheadQueue(Channel channel, File directory, int segmentSize, int maxSegments) throws IOException {
+        this(channel, directory, 0, segmentSize, maxSegments, false);
+    }
+
+    private WriteAheadQueue(Channel channel, File directory, long intervalMillis, int segmentSize, int maxSegments, boolean sendInBackground) throws IOException {
+        this.channel = channel;
+        this.journal = new Journal(directory, segmentSize, maxSegments);
+        this.intervalMillis = intervalMillis;
+        this.sendInBackground = sendInBackground;
+        this.rejectedFile = new File(directory, REJECTED_FILE);
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "thingspeak-write-ahead-queue");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        synchronized (this) {
+            if (journal.size() > 0) {
+                schedule(0);
+            }
+        }
+    }
+
+    /**
+     * Add an entry to the queue. If the entry has no date, it is set to the
+     * current time. When this method returns, the entry is stored on disk.
+     *
+     * @param entry The new data to be posted.
+     * @throws IOException The entry cannot be stored.
+     */
+    public void enqueue(Entry entry) throws IOException {
+        if (entry.getCreated() == null) {
+            entry.setCreated(new Date());
+        }
+        journal.append(encode(entry));
+        synchronized (this) {
+            if (!scheduled && !executor.isShutdown()) {
+                schedule(Math.max(0, lastSend + intervalMillis - System.currentTimeMillis()));
+            }
+        }
+    }
+
+    /**
+     * Add an entry to the queue without waiting for it to reach the disk.
+     * The entry is written to the journal before this method returns, so it
+     * survives the application stopping, and it is flushed to disk by the
+     * background thread within about 100ms, together with any other entries
+     * added this way. Use this instead of {@link #enqueue(Entry)} when adding
+     * many entries one at a time from a thread which should not wait for the
+     * disk.
+     *
+     * @param entry The new data to be posted.
+     * @throws IOException The entry cannot be stored.
+     */
+    public void enqueueDeferred(Entry entry) throws IOException {
+        if (entry.getCreated() == null) {
+            entry.setCreated(new Date());
+        }
+        journal.append(encode(entry), false);
+        synchronized (this) {
+            if (executor.isShutdown()) {
+                journal.force();
+                return;
+            }
+            if (!forceScheduled) {
+                forceScheduled = true;
+                executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (WriteAheadQueue.this) {
+                            forceScheduled = false;
+                        }
+                        journal.force();
+                    }
+                }, FORCE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            if (!scheduled) {
+                schedule(Math.max(0, lastSend + intervalMillis - System.currentTimeMillis()));
+            }
+        }
+    }
+
+    /**
+     * Get the number of entries which have not been accepted by the server.
+     *
+     * @return Number of entries.
+     */
+    public long pending() {
+        return journal.size();
+    }
+
+    /**
+     * Get the number of entries which the server rejected since this queue
+     * was opened. Rejected entries are appended to {@value #REJECTED_FILE}
+     * in the journal directory.
+     *
+     * @return Number of entries.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Send all queued entries now, ignoring the minimum interval between
+     * updates. Blocks until the queue is empty or a request fails. Entries
+     * rejected by the server are set aside and do not stop the drain.
+     *
+     * @throws UnirestException The request cannot be made.
+     * @throws ThingSpeakException The request is invalid.
+     */
+    public void drain() throws UnirestException, ThingSpeakException {
+        synchronized (sendLock) {
+            while (sendBatch()) {
+                /* keep going until empty */
+            }
+        }
+    }
+
+    /**
+     * Send the next batch of queued entries now, ignoring the minimum
+     * interval between updates. Used by the owner of a queue which does not
+     * send entries by itself. A rejected entry is set aside as it would be
+     * by the background thread.
+     *
+     * @return True if a request was made or an entry set aside, false if
+     * the queue is empty.
+     * @throws UnirestException The request cannot be made.
+     * @throws ThingSpeakException The request is invalid.
+     */
+    public boolean sendNext() throws UnirestException, ThingSpeakException {
+        synchronized (sendLock) {
+            return sendBatch();
+        }
+    }
+
+    /**
+     * Stop sending entries. Blocks until any batch being sent has completed.
+     * Entries which have not been sent remain in the journal and will be sent
+     * when a queue is opened on the same directory.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        synchronized (sendLock) {
+            /* wait for the current batch */
+        }
+        journal.force();
+    }
+
+    /**
+     * Send one batch of entries, and remove them from the journal if they are
+     * accepted. If the server rejects the batch, the next batch is half the
+     * size; a single rejected entry (or one which cannot be decoded) is moved
+     * to the rejected file. If the server does not accept the channel, or
+     * rejects entries one after another without accepting any, the journal
+     * is left as it is and the error is thrown. Caller must hold sendLock.
+     *
+     * @return True if a batch was sent, false if the queue is empty.
+     */
+    private boolean sendBatch() throws UnirestException, ThingSpeakException {
+        List<byte[]> records = journal.peek(batchLimit);
+        if (records.isEmpty()) {
+            return false;
+        }
+        List<Entry> batch = new ArrayList<>(records.size());
+        for (byte[] record : records) {
+            try {
+                batch.add(decode(record));
+            } catch (RuntimeException ex) {
+                if (batch.isEmpty()) {
+                    Logger.getLogger(WriteAheadQueue.class.getName()).log(Level.WARNING, "Cannot decode queued entry", ex);
+                    reject(record);
+                    return true;
+                }
+                /* send what comes before it, and deal with it next time */
+                records = records.subList(0, batch.size());
+                break;
+            }
+        }
+        lastSend = System.currentTimeMillis();
+        try {
+            channel.bulkUpdate(batch);
+        } catch (ThingSpeakException ex) {
+            if (ex.isRetryable() || ex.getStatusCode() == 401 || ex.getStatusCode() == 403) {
+                throw ex;
+            }
+            if (records.size() > 1) {
+                Logger.getLogger(WriteAheadQueue.class.getName()).log(Level.WARNING, "Server rejected " + batch.size() + " queued entries", ex);
+                suspect = records.size();
+                batchLimit = suspect / 2;
+            } else if (unconfirmed) {
+                /* nothing accepted since the last rejected entry: blame the channel, not the entry */
+                throw ex;
+            } else {
+                Logger.getLogger(WriteAheadQueue.class.getName()).log(Level.WARNING, "Server rejected a queued entry", ex);
+                reject(records.get(0));
+                unconfirmed = true;
+                suspect = 0;
+                batchLimit = Channel.MAX_BULK_ENTRIES;
+            }
+            return true;
+        }
+        journal.remove(records.size());
+        unconfirmed = false;
+        suspect = Math.max(0, suspect - records.size());
+        batchLimit = (suspect == 0) ? Channel.MAX_BULK_ENTRIES : Math.max(1, suspect / 2);
+        return true;
+    }
+
+    /**
+     * Move the record at the head of the journal to the rejected file.
+     * Caller must hold sendLock.
+     */
+    private void reject(byte[] record) {
+        try (OutputStream out = new FileOutputStream(rejectedFile, true)) {
+            out.write(record);
+            out.write('\n');
+            out.flush();
+        } catch (IOException ex) {
+            Logger.getLogger(WriteAheadQueue.class.getName()).log(Level.SEVERE, "Cannot save rejected entry, discarding it", ex);
+        }
+        journal.remove(1);
+        rejected.incrementAndGet();
+    }
+
+    /**
+     * Send the next batch from the background thread, unless the owner of
+     * the queue sends them. Caller must hold this.
+     */
+    private void schedule(long delayMillis) {
+        if (!sendInBackground) {
+            return;
+        }
+        scheduled = true;
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                sendInBackground();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send a batch from the background thread. After a failure, wait longer
+     * before each retry, up to 5 minutes.
+     */
+    private void sendInBackground() {
+        boolean failed = false;
+        synchronized (sendLock) {
+            try {
+                sendBatch();
+            } catch (UnirestException | ThingSpeakException | RuntimeException ex) {
+                Logger.getLogger(WriteAheadQueue.class.getName()).log(Level.WARNING, null, ex);
+                failed = true;
+            }
+        }
+        synchronized (this) {
+            retryMillis = failed ? Math.min(MAX_RETRY_MILLIS, Math.max(intervalMillis, retryMillis * 2)) : 0;
+            scheduled = false;
+            if (journal.size() > 0 && !executor.isShutdown()) {
+                schedule(Math.max(intervalMillis, retryMillis));
+            }
+        }
+    }
+
+    /**
+     * Convert an entry into a journal record. The record contains the same
+     * values that would be sent to the server, with the date stored as
+     * milliseconds since the epoch.
+     */
+    static byte[] encode(Entry entry) {
+        JsonObject json = new JsonObject();
+        for (Map.Entry<String, Object> field : entry.getUpdateMap().entrySet()) {
+            Object value = field.getValue();
+            if (value instanceof Date) {
+                json.addProperty(field.getKey(), ((Date) value).getTime());
+            } else if (value instanceof Number) {
+                json.addProperty(field.getKey(), (Number) value);
+            } else if (value != null) {
+                json.addProperty(field.getKey(), value.toString());
+            }
+        }
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Convert a journal record back into an entry.
+     */
+    static Entry decode(byte[] record) {
+        JsonObject json = new JsonParser().parse(new String(record, StandardCharsets.UTF_8)).getAsJsonObject();
+        Entry entry = new Entry();
+        for (Map.Entry<String, JsonElement> field : json.entrySet()) {
+            String key = field.getKey();
+            JsonElement value = field.getValue();
+            switch (key) {
+                case "created_at":
+                    entry.setCreated(new Date(value.getAsLong()));
+                    break;
+                case "lat":
+                    entry.setLatitude(value.getAsDouble());
+                    break;
+                case "long":
+                    entry.setLong(value.getAsDouble());
+                    break;
+                case "elevation":
+                    entry.setElevation(value.getAsDouble());
+                    break;
+                case "status":
+                    entry.setStatus(value.getAsString());
+                    break;
+                case "twitter":
+                    entry.setTwitter(value.getAsString());
+                    break;
+                case "tweet":
+                    entry.setTweet(value.getAsString());
+                    break;
+                default:
+                    if (key.startsWith("field")) {
+                        entry.setField(Integer.parseInt(key.substring(5)), value.getAsString());
+                    }
+            }
+        }
+        return entry;
+    }
+}
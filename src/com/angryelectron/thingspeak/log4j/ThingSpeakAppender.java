@@ -20,16 +20,29 @@ package com.angryelectron.thingspeak.log4j;
 
 import com.angryelectron.thingspeak.Channel;
 import com.angryelectron.thingspeak.Entry;
+import com.angryelectron.thingspeak.HttpTransport;
 import com.angryelectron.thingspeak.ThingSpeakException;
+import com.angryelectron.thingspeak.TimestampCodec;
+import com.angryelectron.thingspeak.WriteAheadQueue;
 import com.mashape.unirest.http.exceptions.UnirestException;
+import java.io.File;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Priority;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.Filter;
 import org.apache.log4j.spi.LoggingEvent;
 
 /**
@@ -62,7 +75,70 @@ import org.apache.log4j.spi.LoggingEvent;
  * <ul>
  * <li>log4j.rootLogger=INFO, ThingSpeak</li>
  * </ul>
- * 
+ *
+ * <p>
+ * Logging never waits for the server. Events are placed in a bounded buffer
+ * and sent by a background thread using the bulk update API, either when a
+ * full batch is waiting or when the flush interval expires. Bulk updates are
+ * always at least the flush interval apart, so set it to the server's rate
+ * limit. {@link #close()} sends any events still in the buffer, as quickly
+ * as it can. If events arrive faster than they can be sent, the buffer fills
+ * and the {@link OverflowPolicy} decides what happens to new events. Threads
+ * waiting for space in the buffer do not hold the appender's lock. These
+ * options can be set in log4j.properties:</p>
+ * <ul>
+ * <li>log4j.appender.ThingSpeak.BufferSize = 8192</li>
+ * <li>log4j.appender.ThingSpeak.BatchSize = 960</li>
+ * <li>log4j.appender.ThingSpeak.FlushInterval = 15000</li>
+ * <li>log4j.appender.ThingSpeak.OverflowPolicy = DROP_OLDEST</li>
+ * <li>log4j.appender.ThingSpeak.OverflowThreshold = WARN</li>
+ * </ul>
+ *
+ * <p>
+ * In aggregate mode, events are summarized instead of being sent one by one.
+ * A single entry is written for each aggregation interval, however many
+ * events there were, with these fields:</p>
+ * <ol>
+ * <li>Number of FATAL events</li>
+ * <li>Number of ERROR events</li>
+ * <li>Number of WARN events</li>
+ * <li>Number of INFO events</li>
+ * <li>Number of DEBUG events</li>
+ * <li>Number of events at other levels</li>
+ * <li>Total number of events</li>
+ * <li>Number of distinct messages (estimated above 1024)</li>
+ * </ol>
+ * <p>
+ * The status of the entry holds the first and last messages of the interval,
+ * one per line. Summaries are sent no more often than the flush interval
+ * allows, so the aggregation interval should not be shorter than it. To
+ * enable aggregate mode:</p>
+ * <ul>
+ * <li>log4j.appender.ThingSpeak.Aggregate = true</li>
+ * <li>log4j.appender.ThingSpeak.AggregationInterval = 60000</li>
+ * </ul>
+ *
+ * <p>
+ * Events which cannot be sent, or which overflow the buffer, are discarded
+ * unless a spool directory is set. They are then written to a
+ * {@link WriteAheadQueue} in that directory, and replayed in order, with
+ * their original dates, once the server can be reached. Spooled events are
+ * sent by the same thread as other events, one bulk update per flush
+ * interval, so the two never add up to more than the rate limit. While the
+ * spool holds events, new batches are added to it rather than sent
+ * directly, so events reach the server in order. The spool is
+ * bounded; when it is full, its oldest segment is discarded. An event the
+ * server rejects outright (for example, one too large for a bulk update) is
+ * moved to the spool's {@value WriteAheadQueue#REJECTED_FILE} file so that
+ * it cannot hold up the events behind it; without a spool, the batch
+ * holding it is discarded. Events still in the spool when the appender is
+ * closed are sent the next time an appender is activated with the same
+ * directory:</p>
+ * <ul>
+ * <li>log4j.appender.ThingSpeak.SpoolDirectory = /var/spool/thingspeak</li>
+ * <li>log4j.appender.ThingSpeak.SpoolSegmentSize = 4194304</li>
+ * <li>log4j.appender.ThingSpeak.SpoolMaxSegments = 16</li>
+ * </ul>
  */
 public class ThingSpeakAppender extends AppenderSkeleton {
 
@@ -72,6 +148,184 @@ public class ThingSpeakAppender extends AppenderSkeleton {
     private final String serverPropertyKey = "com.angryelectron.thingspeak.log4j.server";    
     private Channel channel;
 
+    /**
+     * What to do with a new event when the buffer is full.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Wait for space in the buffer. An event whose thread is interrupted
+         * while waiting is handled as an overflow.
+         */
+        BLOCK,
+
+        /**
+         * Discard the oldest event in the buffer to make room.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Discard the new event if its level is below the overflow
+         * threshold, otherwise wait for space in the buffer.
+         */
+        DROP_BELOW_THRESHOLD
+    }
+
+    private int bufferSize = 8192;
+    private int batchSize = Channel.MAX_BULK_ENTRIES;
+    private long flushInterval = 15000;
+    private long closeTimeout = 30000;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private Priority overflowThreshold = org.apache.log4j.Level.WARN;
+    private boolean aggregate;
+    private long aggregationInterval = 60000;
+    private String spoolDirectory;
+    private int spoolSegmentSize = WriteAheadQueue.DEFAULT_SEGMENT_SIZE;
+    private int spoolMaxSegments = 16;
+
+    /**
+     * Counts of the events in the current aggregation interval. Guarded by
+     * this.
+     */
+    private Interval interval;
+
+    /**
+     * Summary of the events logged during one aggregation interval.
+     */
+    private static class Interval {
+
+        /**
+         * Most distinct messages held to count them exactly. Beyond this,
+         * they are counted with a fixed-size bitmap instead.
+         */
+        private static final int MAX_MESSAGES = 1024;
+
+        /**
+         * Bits in the bitmap. Linear counting with 64K bits estimates up to
+         * several hundred thousand distinct messages to within a few percent.
+         */
+        private static final int SKETCH_BITS = 1 << 16;
+
+        private final long[] counts = new long[6];
+        private long total;
+        private HashSet<String> messages = new HashSet<>();
+        private long[] sketch;
+        private String first;
+        private String last;
+
+        void add(Priority level, String message) {
+            switch (level.toInt()) {
+                case Priority.FATAL_INT:
+                    counts[0]++;
+                    break;
+                case Priority.ERROR_INT:
+                    counts[1]++;
+                    break;
+                case Priority.WARN_INT:
+                    counts[2]++;
+                    break;
+                case Priority.INFO_INT:
+                    counts[3]++;
+                    break;
+                case Priority.DEBUG_INT:
+                    counts[4]++;
+                    break;
+                default:
+                    counts[5]++;
+            }
+            total++;
+            addMessage(message);
+            if (first == null) {
+                first = message;
+            }
+            last = message;
+        }
+
+        /**
+         * Count a message, switching from the set to the bitmap once the set
+         * is full.
+         */
+        private void addMessage(String message) {
+            if (sketch == null) {
+                messages.add(message);
+                if (messages.size() <= MAX_MESSAGES) {
+                    return;
+                }
+                sketch = new long[SKETCH_BITS / 64];
+                for (String held : messages) {
+                    mark(held);
+                }
+                messages = null;
+                return;
+            }
+            mark(message);
+        }
+
+        private void mark(String message) {
+            /* spread the hash, as HashMap does, before taking the low bits */
+            int hash = message.hashCode() * 0x9E3779B9;
+            int bit = (hash ^ (hash >>> 16)) & (SKETCH_BITS - 1);
+            sketch[bit >>> 6] |= 1L << bit;
+        }
+
+        /**
+         * Get the number of distinct messages: exact up to
+         * {@link #MAX_MESSAGES}, then estimated from the fraction of bits
+         * still clear.
+         */
+        long distinct() {
+            if (sketch == null) {
+                return messages.size();
+            }
+            int clear = 0;
+            for (long word : sketch) {
+                clear += Long.bitCount(~word);
+            }
+            if (clear == 0) {
+                clear = 1;
+            }
+            return Math.round(-SKETCH_BITS * Math.log((double) clear / SKETCH_BITS));
+        }
+
+        Entry toEntry(long end) {
+            Entry entry = new Entry();
+            for (int i = 0; i < counts.length; i++) {
+                entry.setField(i + 1, counts[i]);
+            }
+            entry.setField(7, total);
+            entry.setField(8, distinct());
+            if (first != null) {
+                entry.setStatus(first + "\n" + last);
+            }
+            entry.setCreated(new Date(end));
+            return entry;
+        }
+    }
+
+    /**
+     * Events waiting to be sent, and the thread that sends them. Created by
+     * {@link #activateOptions()} or by the first event.
+     */
+    private volatile RingBuffer<Entry> buffer;
+    private volatile Thread flusher;
+    private volatile WriteAheadQueue spool;
+    private volatile boolean closing;
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Logging threads waiting for space in the buffer wait on space, and the
+     * flusher notifies them after taking events from the buffer. waiting is
+     * the number of such threads. Guarded by space.
+     */
+    private final Object space = new Object();
+    private int waiting;
+
+    /**
+     * When the last bulk update was sent, from {@link System#nanoTime()}.
+     * Only used by the flusher thread.
+     */
+    private long lastSend;
+
     /**
      * Constructor.
      */
@@ -105,33 +359,493 @@ public class ThingSpeakAppender extends AppenderSkeleton {
             channel.setUrl(url);
         }
     }
+
+    /**
+     * Use a different {@link HttpTransport} to send log messages. Call after
+     * configuring the channel. By default,
+     * {@link Channel#getDefaultTransport()} is used.
+     *
+     * @param transport Transport.
+     */
+    public void setTransport(HttpTransport transport) {
+        if (channel == null) {
+            throw new IllegalStateException("Channel is not configured.");
+        }
+        channel.setTransport(transport);
+    }
     
     /**
-     * Internal. Append log messages as an entry in a ThingSpeak channel.
+     * Maximum number of events waiting to be sent. Default is 8192. Set
+     * before the appender is activated.
+     *
+     * @param size Number of events.
+     */
+    public void setBufferSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Buffer size must be at least 1.");
+        }
+        this.bufferSize = size;
+    }
+
+    /**
+     * Maximum number of events sent in one request. Default is
+     * {@link Channel#MAX_BULK_ENTRIES}.
+     *
+     * @param size Number of events.
+     */
+    public void setBatchSize(int size) {
+        if (size < 1 || size > Channel.MAX_BULK_ENTRIES) {
+            throw new IllegalArgumentException("Batch size must be between 1 and " + Channel.MAX_BULK_ENTRIES + ".");
+        }
+        this.batchSize = size;
+    }
+
+    /**
+     * Longest time an event waits before it is sent, unless a batch fills up
+     * first. Default is 15 seconds, the rate limit of thingspeak.com.
+     *
+     * @param millis Interval in milliseconds.
+     */
+    public void setFlushInterval(long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("Flush interval must be at least 1 ms.");
+        }
+        this.flushInterval = millis;
+    }
+
+    /**
+     * Longest time {@link #close()} waits for buffered events to be sent.
+     * Default is 30 seconds.
+     *
+     * @param millis Timeout in milliseconds.
+     */
+    public void setCloseTimeout(long millis) {
+        this.closeTimeout = millis;
+    }
+
+    /**
+     * What to do when the buffer is full. Default is DROP_OLDEST.
+     *
+     * @param policy Name of an {@link OverflowPolicy}, eg. "BLOCK".
+     */
+    public void setOverflowPolicy(String policy) {
+        this.overflowPolicy = OverflowPolicy.valueOf(policy.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Events at or above this level are kept when the buffer is full and the
+     * policy is DROP_BELOW_THRESHOLD. Default is WARN.
+     *
+     * @param threshold Level.
+     */
+    public void setOverflowThreshold(Priority threshold) {
+        this.overflowThreshold = threshold;
+    }
+
+    /**
+     * Write one entry summarizing the events in each aggregation interval
+     * instead of one entry per event. Default is false. Set before the
+     * appender is activated.
+     *
+     * @param aggregate True to enable aggregate mode.
+     */
+    public void setAggregate(boolean aggregate) {
+        this.aggregate = aggregate;
+    }
+
+    /**
+     * Length of the aggregation intervals. Default is 60 seconds.
+     *
+     * @param millis Interval in milliseconds.
+     */
+    public void setAggregationInterval(long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("Aggregation interval must be at least 1 ms.");
+        }
+        this.aggregationInterval = millis;
+    }
+
+    /**
+     * Directory in which to spool events which cannot be sent. By default,
+     * there is no spool and such events are discarded. Set before the
+     * appender is activated, and use a separate directory for each appender.
+     *
+     * @param directory Directory, created if it does not exist.
+     */
+    public void setSpoolDirectory(String directory) {
+        this.spoolDirectory = directory;
+    }
+
+    /**
+     * Size of each spool segment file. Default is 4 MB.
+     *
+     * @param bytes Size in bytes.
+     */
+    public void setSpoolSegmentSize(int bytes) {
+        this.spoolSegmentSize = bytes;
+    }
+
+    /**
+     * Maximum number of spool segment files. When the spool is full, the
+     * oldest segment is discarded. Default is 16.
+     *
+     * @param segments Number of segments.
+     */
+    public void setSpoolMaxSegments(int segments) {
+        this.spoolMaxSegments = segments;
+    }
+
+    /**
+     * Get the number of events in the spool waiting to be sent.
+     *
+     * @return Number of events, or 0 if there is no spool.
+     */
+    public long getSpooledCount() {
+        WriteAheadQueue queue = spool;
+        return (queue == null) ? 0 : queue.pending();
+    }
+
+    /**
+     * Get the number of events discarded because the buffer was full or the
+     * appender was closed.
+     *
+     * @return Number of events.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Internal. Start the background thread which sends events.
+     */
+    @Override
+    public synchronized void activateOptions() {
+        if (buffer != null || closed) {
+            return;
+        }
+        if (channel == null) {
+            errorHandler.error("Channel is not configured.");
+            return;
+        }
+        if (spoolDirectory != null) {
+            try {
+                spool = new WriteAheadQueue(channel, new File(spoolDirectory), spoolSegmentSize, spoolMaxSegments);
+            } catch (IOException | RuntimeException ex) {
+                errorHandler.error("Cannot open spool " + spoolDirectory, ex, 0);
+            }
+        }
+        buffer = new RingBuffer<>(bufferSize);
+        if (aggregate) {
+            interval = new Interval();
+        }
+        flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushUntilClosed();
+            }
+        }, "thingspeak-log4j-appender");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Internal. The same as {@link AppenderSkeleton#doAppend(LoggingEvent)},
+     * but not synchronized, so a thread waiting for space in the buffer does
+     * not stop other threads from logging or the appender from closing. The
+     * buffer is safe for many threads, and the aggregation interval has its
+     * own lock.
+     *
+     * @param event log4j event.
+     */
+    @Override
+    public void doAppend(LoggingEvent event) {
+        if (closing) {
+            LogLog.error("Attempted to append to closed appender named [" + name + "].");
+            return;
+        }
+        if (!isAsSevereAsThreshold(event.getLevel())) {
+            return;
+        }
+        for (Filter filter = headFilter; filter != null; filter = filter.next) {
+            int decision = filter.decide(event);
+            if (decision == Filter.DENY) {
+                return;
+            } else if (decision == Filter.ACCEPT) {
+                break;
+            }
+        }
+        append(event);
+    }
+
+    /**
+     * Internal. Add log messages to the buffer, to be sent as entries in a
+     * ThingSpeak channel.
      *
      * @param event log4j event.
      */
     @Override
     protected void append(LoggingEvent event) {
-        Date timeStamp = new Date(event.timeStamp);
-        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        if (buffer == null) {
+            activateOptions();
+            if (buffer == null) {
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+        if (aggregate) {
+            synchronized (this) {
+                interval.add(event.getLevel(), String.valueOf(event.getMessage()));
+            }
+            return;
+        }
         Entry entry = new Entry();
-        entry.setField(1, dateFormat.format(timeStamp));
+        entry.setField(1, TimestampCodec.formatParameter(event.timeStamp, TimeZone.getDefault()));
         entry.setField(2, event.getLevel().toString());
-        entry.setField(3, event.getMessage().toString());
-        try {            
-            channel.update(entry);
-        } catch (UnirestException | ThingSpeakException ex) {
+        entry.setField(3, String.valueOf(event.getMessage()));
+        entry.setCreated(new Date(event.timeStamp));
+        while (!buffer.offer(entry)) {
+            if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                Entry oldest = buffer.poll();
+                if (oldest != null) {
+                    overflow(oldest);
+                }
+            } else if (closing || (overflowPolicy == OverflowPolicy.DROP_BELOW_THRESHOLD
+                    && !event.getLevel().isGreaterOrEqual(overflowThreshold))) {
+                overflow(entry);
+                return;
+            } else if (!awaitSpace()) {
+                overflow(entry);
+                return;
+            }
+        }
+        if (buffer.size() >= batchSize) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    /**
+     * Wait until the flusher has taken events from the buffer, or the
+     * appender is closing.
+     *
+     * @return False if the appender is closing or the thread was interrupted
+     * (its interrupt status is kept), so the event cannot wait any longer.
+     */
+    private boolean awaitSpace() {
+        LockSupport.unpark(flusher);
+        synchronized (space) {
+            waiting++;
+            try {
+                while (!closing && buffer.size() >= buffer.capacity()) {
+                    space.wait();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                waiting--;
+            }
+        }
+        return !closing;
+    }
+
+    /**
+     * Wake logging threads waiting for space in the buffer.
+     */
+    private void signalSpace() {
+        synchronized (space) {
+            if (waiting > 0) {
+                space.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Send buffered events until the appender is closed and the buffer is
+     * empty. In aggregate mode, also close each aggregation interval and send
+     * its summary. Runs on the flusher thread.
+     */
+    private void flushUntilClosed() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(aggregationInterval);
+        long intervalEnd = System.nanoTime() + intervalNanos;
+        lastSend = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        while (true) {
+            boolean stopping = closing;
+            long now = System.nanoTime();
+            long remaining = deadline - now;
+            if (interval != null) {
+                remaining = Math.min(remaining, intervalEnd - now);
+            }
+            if (!stopping && remaining > 0 && buffer.size() < batchSize) {
+                LockSupport.parkNanos(this, remaining);
+                continue;
+            }
+            if (interval != null && (stopping || intervalEnd - now <= 0)) {
+                Interval ended;
+                synchronized (this) {
+                    ended = interval;
+                    interval = new Interval();
+                }
+                if (!stopping || ended.total > 0) {
+                    batch.add(ended.toEntry(System.currentTimeMillis()));
+                }
+                intervalEnd += intervalNanos;
+                if (intervalEnd - now <= 0) {
+                    intervalEnd = now + intervalNanos;
+                }
+            }
+            Entry entry;
+            while ((entry = buffer.poll()) != null) {
+                batch.add(entry);
+                if (batch.size() == batchSize) {
+                    signalSpace();
+                    send(batch);
+                }
+            }
+            signalSpace();
+            send(batch);
+            if (stopping) {
+                return;
+            }
+            sendSpooled();
+            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        }
+    }
+
+    /**
+     * Handle an event which does not fit in the buffer, by spooling it if
+     * there is a spool or discarding it if not. Called on the logging thread,
+     * so the spool flushes the event to disk later, together with others,
+     * rather than waiting for the disk here.
+     *
+     * @param entry Entry.
+     */
+    private void overflow(Entry entry) {
+        if (spool == null) {
+            dropped.incrementAndGet();
+            return;
+        }
+        try {
+            spool.enqueueDeferred(entry);
+        } catch (IOException | RuntimeException ex) {
+            dropped.incrementAndGet();
+            Logger.getLogger(ThingSpeakAppender.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Send a batch of entries. If the spool already holds entries, the batch
+     * is added to it instead so that entries are sent in order. Entries which
+     * cannot be sent are spooled, or logged and discarded if there is no
+     * spool.
+     *
+     * @param batch Entries to send. Cleared when done.
+     */
+    private void send(List<Entry> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            if (spool != null && spool.pending() > 0) {
+                spool(batch);
+                return;
+            }
+            pace();
+            channel.bulkUpdate(batch);
+        } catch (UnirestException | ThingSpeakException | RuntimeException ex) {
             Logger.getLogger(ThingSpeakAppender.class.getName()).log(Level.SEVERE, null, ex);
+            if (spool != null) {
+                spool(batch);
+            } else {
+                dropped.addAndGet(batch.size());
+            }
+        } finally {
+            batch.clear();
         }
     }
 
     /**
-     * Internal.
+     * Send the next batch of spooled events, if any, as one more paced bulk
+     * update. Failures are logged; the events stay in the spool and are
+     * tried again after the next flush interval.
+     */
+    private void sendSpooled() {
+        if (spool == null || spool.pending() == 0) {
+            return;
+        }
+        pace();
+        try {
+            spool.sendNext();
+        } catch (UnirestException | ThingSpeakException | RuntimeException ex) {
+            Logger.getLogger(ThingSpeakAppender.class.getName()).log(Level.WARNING, null, ex);
+        }
+    }
+
+    /**
+     * Wait until the flush interval has passed since the last bulk update,
+     * direct or from the spool, so that a backlog does not exceed the rate
+     * limit. Stops waiting when the appender is closing.
+     */
+    private void pace() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        long remaining;
+        while (!closing && (remaining = lastSend + intervalNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+        lastSend = System.nanoTime();
+    }
+
+    /**
+     * Add a batch of entries to the spool.
+     *
+     * @param batch Entries.
+     */
+    private void spool(List<Entry> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                spool.enqueueDeferred(batch.get(i));
+            } catch (IOException | RuntimeException ex) {
+                dropped.addAndGet(batch.size() - i);
+                Logger.getLogger(ThingSpeakAppender.class.getName()).log(Level.SEVERE, null, ex);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Internal. Send any buffered events and stop the background thread.
+     * Waits up to the close timeout for the events to be sent.
      */
     @Override
     public void close() {
-        /* nothing to do */
+        Thread thread;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closing = true;
+            thread = flusher;
+        }
+        if (thread == null) {
+            return;
+        }
+        synchronized (space) {
+            space.notifyAll();
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(closeTimeout);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            Logger.getLogger(ThingSpeakAppender.class.getName()).log(Level.WARNING,
+                    "Timed out sending {0} buffered log events.", buffer.size());
+        } else if (spool != null) {
+            spool.close();
+        }
     }
 
     /**
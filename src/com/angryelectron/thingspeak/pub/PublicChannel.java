@@ -145,8 +145,10 @@ public class PublicChannel {
      */
     public List<String> getTags() {
         List<String> list = new ArrayList<>();
-        for (Tag t : tags) {
-            list.add(t.name);
+        if (tags != null) {
+            for (Tag t : tags) {
+                list.add(t.name);
+            }
         }
         return list;
     }
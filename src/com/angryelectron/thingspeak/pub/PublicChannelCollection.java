@@ -19,8 +19,11 @@
 
 package com.angryelectron.thingspeak.pub;
 
+import com.angryelectron.thingspeak.Channel;
+import com.angryelectron.thingspeak.HttpTransport;
 import java.util.AbstractCollection;
 import java.util.Iterator;
+import java.util.Spliterator;
 
 /**
  * A collection of public ThingSpeak channels. The ThingSpeak Public API returns
@@ -45,14 +48,28 @@ import java.util.Iterator;
  * }
  * }
  * </pre>
+ * <p>
+ * While one page is being read, the following pages are requested
+ * concurrently; see {@link #setReadAhead(int)}. Streams split the directory
+ * into ranges of pages, so a parallel stream fetches and processes the pages
+ * in parallel:</p>
+ * <pre>
+ * {@code
+ * long located = new PublicChannelCollection().parallelStream()
+ *         .filter(channel -> channel.getLatitude() != 0.0)
+ *         .count();
+ * }
+ * </pre>
  *
  * @author abythell
  */
 public class PublicChannelCollection extends AbstractCollection<PublicChannel> {
 
-    private final String url = "http://api.thingspeak.com";   
+    private String url = "http://api.thingspeak.com";
     private final String tag;
     private Integer size;
+    private HttpTransport transport = Channel.getDefaultTransport();
+    private int readAhead = PublicIterator.DEFAULT_READ_AHEAD;
 
     /**
      * Create a collection containing all public channels.
@@ -70,12 +87,34 @@ public class PublicChannelCollection extends AbstractCollection<PublicChannel> {
     }
 
     /**
-     * Use a server other than thingspeak.com. If you are hosting your own
-     * Thingspeak server, set the url of the server here.  
+     * Use a server other than thingspeak.com. The public API is not
+     * implemented in open-source servers, but is implemented by
+     * {@link com.angryelectron.thingspeak.server.LocalThingSpeakServer}.
      * @param url eg. http://localhost, http://thingspeak.local:3000, etc.
      */    
     public void setUrl(String url) {
-        throw new UnsupportedOperationException("Public API is not implemented in open-source servers.");
+        this.url = url;
+    }
+
+    /**
+     * Use a different {@link HttpTransport} for requests made by this
+     * collection. By default, {@link Channel#getDefaultTransport()} is used.
+     * @param transport Transport.
+     */
+    public void setTransport(HttpTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Set the number of pages requested ahead of the page being read. Default
+     * is 4. Use 0 to request each page only when it is needed.
+     * @param pages Number of pages.
+     */
+    public void setReadAhead(int pages) {
+        if (pages < 0) {
+            throw new IllegalArgumentException("Read-ahead cannot be negative.");
+        }
+        this.readAhead = pages;
     }
 
     /**
@@ -84,17 +123,36 @@ public class PublicChannelCollection extends AbstractCollection<PublicChannel> {
      */
     @Override
     public Iterator<PublicChannel> iterator() {
-        PublicIterator iterator = new PublicIterator(url, tag);
+        PublicIterator iterator = new PublicIterator(transport, url, tag, readAhead);
         size = iterator.size();
         return iterator;
     }
+
+    /**
+     * Get a Spliterator which splits the collection by ranges of pages. The
+     * first page is fetched when this method is called.
+     * @return Spliterator.
+     */
+    @Override
+    public Spliterator<PublicChannel> spliterator() {
+        PublicIterator first = new PublicIterator(transport, url, tag, 0);
+        size = first.size();
+        return new PublicChannelSpliterator(transport, url, tag, readAhead, first.getFirstPage());
+    }
     
     /**
-     * Get the number of public channels in this collection.
+     * Get the number of public channels in this collection. The count is
+     * taken from the first page of results, which is fetched if the
+     * collection has not been iterated yet. To count channels repeatedly, or
+     * by tag, without contacting the server, use
+     * {@link PublicChannelDirectory}.
      * @return Number of channels.
      */
     @Override
     public int size() {
+        if (size == null) {
+            size = new PublicIterator(transport, url, tag, 0).size();
+        }
         return size;
     }
             
@@ -0,0 +1,492 @@
+/**
+ * ThingSpeak Java Client Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.angryelectron.thingspeak.pub;
+
+import com.angryelectron.thingspeak.Channel;
+import com.angryelectron.thingspeak.HttpTransport;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * A local copy of the whole ThingSpeak public channel directory. The
+ * directory is crawled once and kept in memory, along with an index from each
+ * tag to the channels which have it, so the number of channels and tag
+ * queries are answered without contacting the server:</p>
+ * <pre>
+ * {@code
+ * PublicChannelDirectory directory = new PublicChannelDirectory(1, TimeUnit.HOURS);
+ * int total = directory.size();
+ * List<PublicChannel> outdoor = directory.withAllTags("temperature", "outdoor");
+ * List<PublicChannel> weather = directory.withAnyTag("weather", "rain", "wind");
+ * }
+ * </pre>
+ * <p>
+ * The first query waits for the crawl. If any page cannot be fetched, the
+ * query throws IllegalStateException and the next query crawls again, so a
+ * partial directory is never used. Once the copy is older than the
+ * time-to-live, the next query starts a new crawl in the background, and
+ * every caller keeps using the old copy until it completes. If any page of
+ * the new crawl cannot be fetched, the old copy is kept for another
+ * time-to-live. Tags are matched without regard to case or surrounding
+ * whitespace. This class is thread-safe.</p>
+ */
+public class PublicChannelDirectory {
+
+    private volatile String url = "http://api.thingspeak.com";
+    private final long ttl;
+    private volatile HttpTransport transport = Channel.getDefaultTransport();
+    private volatile int readAhead = PublicIterator.DEFAULT_READ_AHEAD;
+    private volatile Executor executor = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            Thread thread = new Thread(task, "thingspeak-directory-refresh");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    };
+
+    /**
+     * The current copy of the directory, or null before the first crawl.
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * Held while crawling, so only one crawl runs at a time.
+     */
+    private final ReentrantLock crawling = new ReentrantLock();
+
+    /**
+     * True while a background refresh has been started and not finished.
+     */
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    /**
+     * An immutable copy of the directory.
+     */
+    private static class Snapshot {
+
+        /**
+         * Channels in directory order.
+         */
+        private final List<PublicChannel> channels;
+
+        /**
+         * Channels by id.
+         */
+        private final Map<Integer, PublicChannel> byId;
+
+        /**
+         * Ids of the channels with each normalized tag, in ascending order.
+         */
+        private final Map<String, int[]> tags;
+
+        /**
+         * Time the crawl finished, in milliseconds since the epoch.
+         */
+        private final long loaded;
+
+        /**
+         * Spatial index of the channels, built when first needed.
+         */
+        private volatile PublicChannelGeoIndex geoIndex;
+
+        Snapshot(List<PublicChannel> crawled, long loaded) {
+            LinkedHashMap<Integer, PublicChannel> unique = new LinkedHashMap<>();
+            for (PublicChannel channel : crawled) {
+                /* pages can shift during a crawl, repeating a channel */
+                if (channel.getId() != null) {
+                    unique.putIfAbsent(channel.getId(), channel);
+                }
+            }
+            HashMap<String, List<Integer>> ids = new HashMap<>();
+            for (PublicChannel channel : unique.values()) {
+                for (String tag : channel.getTags()) {
+                    String key = normalize(tag);
+                    if (!key.isEmpty()) {
+                        ids.computeIfAbsent(key, k -> new ArrayList<>()).add(channel.getId());
+                    }
+                }
+            }
+            HashMap<String, int[]> index = new HashMap<>();
+            for (Map.Entry<String, List<Integer>> entry : ids.entrySet()) {
+                int[] sorted = entry.getValue().stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+                index.put(entry.getKey(), sorted);
+            }
+            this.channels = Collections.unmodifiableList(new ArrayList<>(unique.values()));
+            this.byId = unique;
+            this.tags = index;
+            this.loaded = loaded;
+        }
+
+        /**
+         * Copy of an existing snapshot with a new load time.
+         */
+        Snapshot(Snapshot old, long loaded) {
+            this.channels = old.channels;
+            this.byId = old.byId;
+            this.tags = old.tags;
+            this.loaded = loaded;
+            this.geoIndex = old.geoIndex;
+        }
+    }
+
+    /**
+     * Constructor. The directory is not crawled until it is first queried.
+     *
+     * @param ttl How long a copy of the directory is used before it is
+     * crawled again.
+     * @param unit Unit of ttl.
+     */
+    public PublicChannelDirectory(long ttl, TimeUnit unit) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("Time-to-live cannot be negative.");
+        }
+        this.ttl = unit.toMillis(ttl);
+    }
+
+    /**
+     * Use a server other than thingspeak.com. See
+     * {@link PublicChannelCollection#setUrl(java.lang.String)}.
+     *
+     * @param url eg. http://localhost:3000
+     */
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    /**
+     * Use a different {@link HttpTransport} for requests made by this
+     * directory. By default, {@link Channel#getDefaultTransport()} is used.
+     *
+     * @param transport Transport.
+     */
+    public void setTransport(HttpTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Set the number of pages requested ahead of the page being read while
+     * crawling. Default is 4.
+     *
+     * @param pages Number of pages.
+     */
+    public void setReadAhead(int pages) {
+        if (pages < 0) {
+            throw new IllegalArgumentException("Read-ahead cannot be negative.");
+        }
+        this.readAhead = pages;
+    }
+
+    /**
+     * Set the executor which runs background refreshes. By default, each
+     * refresh runs on a new daemon thread.
+     *
+     * @param executor Executor.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Crawl the directory now, waiting for the crawl to finish. If a crawl is
+     * already running, wait for it and then crawl again.
+     *
+     * @throws IllegalStateException Pages could not be fetched and there is
+     * no previous copy of the directory to keep.
+     */
+    public void refresh() {
+        crawling.lock();
+        try {
+            crawl();
+        } finally {
+            crawling.unlock();
+        }
+    }
+
+    /**
+     * Get the number of public channels in the directory.
+     *
+     * @return Number of channels.
+     */
+    public int size() {
+        return current().channels.size();
+    }
+
+    /**
+     * Get all public channels, in the order the server lists them.
+     *
+     * @return Unmodifiable list of channels.
+     */
+    public List<PublicChannel> getChannels() {
+        return current().channels;
+    }
+
+    /**
+     * Get a public channel by id.
+     *
+     * @param id Channel id.
+     * @return Channel, or null if there is no public channel with this id.
+     */
+    public PublicChannel getChannel(int id) {
+        return current().byId.get(id);
+    }
+
+    /**
+     * Get every tag used by a public channel, in lower case.
+     *
+     * @return Unmodifiable set of tags.
+     */
+    public Set<String> getTags() {
+        return Collections.unmodifiableSet(current().tags.keySet());
+    }
+
+    /**
+     * Get the number of public channels with a tag.
+     *
+     * @param tag Tag.
+     * @return Number of channels.
+     */
+    public int count(String tag) {
+        int[] ids = current().tags.get(normalize(tag));
+        return (ids == null) ? 0 : ids.length;
+    }
+
+    /**
+     * Get the public channels which have all of the given tags.
+     *
+     * @param tags Tags.
+     * @return Channels, in ascending order of id.
+     */
+    public List<PublicChannel> withAllTags(String... tags) {
+        Snapshot s = current();
+        if (tags.length == 0) {
+            return Collections.emptyList();
+        }
+        int[][] lists = new int[tags.length][];
+        for (int i = 0; i < tags.length; i++) {
+            lists[i] = s.tags.get(normalize(tags[i]));
+            if (lists[i] == null) {
+                return Collections.emptyList();
+            }
+        }
+        /* intersect the shortest lists first, to keep the result small */
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        int[] result = lists[0];
+        int length = result.length;
+        for (int i = 1; i < lists.length && length > 0; i++) {
+            int[] next = new int[length];
+            length = intersect(result, length, lists[i], next);
+            result = next;
+        }
+        return channels(s, result, length);
+    }
+
+    /**
+     * Get the public channels which have at least one of the given tags.
+     *
+     * @param tags Tags.
+     * @return Channels, in ascending order of id.
+     */
+    public List<PublicChannel> withAnyTag(String... tags) {
+        Snapshot s = current();
+        int[] result = new int[0];
+        int length = 0;
+        for (String tag : tags) {
+            int[] ids = s.tags.get(normalize(tag));
+            if (ids != null) {
+                int[] next = new int[length + ids.length];
+                length = union(result, length, ids, next);
+                result = next;
+            }
+        }
+        return channels(s, result, length);
+    }
+
+    /**
+     * Get a spatial index of the public channels, for finding channels near a
+     * point. The index is built the first time it is needed for each crawl.
+     *
+     * @return Spatial index.
+     */
+    public PublicChannelGeoIndex getGeoIndex() {
+        Snapshot s = current();
+        PublicChannelGeoIndex index = s.geoIndex;
+        if (index == null) {
+            /* concurrent callers may each build one; any of them will do */
+            index = new PublicChannelGeoIndex(s.channels);
+            s.geoIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Get the time of the last successful crawl.
+     *
+     * @return Milliseconds since the epoch, or 0 if the directory has not
+     * been crawled.
+     */
+    public long getLoadTime() {
+        Snapshot s = snapshot;
+        return (s == null) ? 0 : s.loaded;
+    }
+
+    /**
+     * Get the current copy of the directory, crawling first if there is none
+     * and starting a background crawl if it has expired.
+     *
+     * @throws IllegalStateException There is no copy and the crawl failed.
+     */
+    private Snapshot current() {
+        Snapshot s = snapshot;
+        if (s == null) {
+            crawling.lock();
+            try {
+                if (snapshot == null) {
+                    crawl();
+                }
+            } finally {
+                crawling.unlock();
+            }
+            return snapshot;
+        }
+        if (System.currentTimeMillis() - s.loaded >= ttl && refreshing.compareAndSet(false, true)) {
+            try {
+                CompletableFuture.runAsync(() -> refreshInBackground(s), executor);
+            } catch (RuntimeException ex) {
+                refreshing.set(false);
+                Logger.getLogger(PublicChannelDirectory.class.getName()).log(Level.WARNING, "Cannot start refresh", ex);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Crawl again unless another crawl has already replaced an expired
+     * snapshot. Runs on the executor.
+     */
+    private void refreshInBackground(Snapshot expired) {
+        crawling.lock();
+        try {
+            if (snapshot == expired) {
+                crawl();
+            }
+        } catch (RuntimeException ex) {
+            Logger.getLogger(PublicChannelDirectory.class.getName()).log(Level.WARNING, null, ex);
+        } finally {
+            crawling.unlock();
+            refreshing.set(false);
+        }
+    }
+
+    /**
+     * Crawl every page of the directory and replace the snapshot. Called with
+     * the crawling lock held.
+     *
+     * @throws IllegalStateException Pages could not be fetched and there is
+     * no previous snapshot to keep.
+     */
+    private void crawl() {
+        PublicIterator iterator = new PublicIterator(transport, url, null, readAhead);
+        List<PublicChannel> crawled = new ArrayList<>(Math.max(iterator.size(), 0));
+        while (iterator.hasNext()) {
+            crawled.add(iterator.next());
+        }
+        long now = System.currentTimeMillis();
+        Snapshot old = snapshot;
+        int failed = iterator.getFailedPages();
+        if (failed > 0 && old == null) {
+            throw new IllegalStateException(failed + " pages of the public channel directory could not be fetched.");
+        } else if (failed > 0) {
+            Logger.getLogger(PublicChannelDirectory.class.getName()).log(Level.WARNING,
+                    "{0} pages could not be fetched; keeping the previous directory.", failed);
+            snapshot = new Snapshot(old, now);
+        } else {
+            snapshot = new Snapshot(crawled, now);
+        }
+    }
+
+    /**
+     * Intersect a sorted array with the first length elements of another.
+     *
+     * @return Number of ids written to out.
+     */
+    private static int intersect(int[] a, int length, int[] b, int[] out) {
+        int i = 0, j = 0, n = 0;
+        while (i < length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Merge a sorted array into the first length elements of another,
+     * without duplicates.
+     *
+     * @return Number of ids written to out.
+     */
+    private static int union(int[] a, int length, int[] b, int[] out) {
+        int i = 0, j = 0, n = 0;
+        while (i < length || j < b.length) {
+            if (j == b.length || (i < length && a[i] < b[j])) {
+                out[n++] = a[i++];
+            } else if (i == length || b[j] < a[i]) {
+                out[n++] = b[j++];
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n;
+    }
+
+    private static List<PublicChannel> channels(Snapshot s, int[] ids, int length) {
+        List<PublicChannel> list = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            list.add(s.byId.get(ids[i]));
+        }
+        return list;
+    }
+
+    private static String normalize(String tag) {
+        return (tag == null) ? "" : tag.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,432 @@
+/**
+ * ThingSpeak Java Client Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.angryelectron.thingspeak.pub;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * <p>
+ * A spatial index of public channels, for finding channels near a point
+ * without scanning the whole directory. The index is built once from a
+ * snapshot of channels, such as a {@link PublicChannelCollection} or
+ * {@link PublicChannelDirectory#getChannels()}, and does not change:</p>
+ * <pre>
+ * {@code
+ * PublicChannelGeoIndex index = new PublicChannelGeoIndex(new PublicChannelCollection());
+ * List<PublicChannel> near = index.withinRadius(49.28, -123.12, 5000);
+ * List<PublicChannel> closest = index.nearest(49.28, -123.12, 10);
+ * List<PublicChannel> visible = index.withinBox(49.0, -123.5, 49.5, -122.5);
+ * }
+ * </pre>
+ * <p>
+ * Channels are stored in a k-d tree of points on the unit sphere, so
+ * distances are great-circle distances and queries work across the poles and
+ * the 180th meridian. Distances are in metres. Channels without a location
+ * (latitude and longitude both 0.0) are not indexed. This class is
+ * thread-safe.</p>
+ */
+public class PublicChannelGeoIndex {
+
+    /**
+     * Mean radius of the Earth, in metres.
+     */
+    public static final double EARTH_RADIUS = 6371008.8;
+
+    /**
+     * Channels and their coordinates, in tree order. The node for the range
+     * [lo, hi) is at (lo + hi) / 2, and splits the range on axis[node].
+     */
+    private final PublicChannel[] channels;
+    private final double[][] xyz;
+    private final double[] lat;
+    private final double[] lon;
+    private final byte[] axis;
+
+    /**
+     * Latitude and longitude bounds of the subtree rooted at each node, used
+     * to skip subtrees outside a bounding box.
+     */
+    private final double[] minLat;
+    private final double[] maxLat;
+    private final double[] minLon;
+    private final double[] maxLon;
+
+    /**
+     * A channel found by a distance query.
+     */
+    private static final class Neighbour {
+
+        private final int node;
+        private final double chord2;
+
+        Neighbour(int node, double chord2) {
+            this.node = node;
+            this.chord2 = chord2;
+        }
+    }
+
+    private static final Comparator<Neighbour> NEAREST_FIRST = (a, b) -> Double.compare(a.chord2, b.chord2);
+
+    /**
+     * Build an index.
+     *
+     * @param source Channels to index. The source is read once.
+     */
+    public PublicChannelGeoIndex(Iterable<PublicChannel> source) {
+        List<PublicChannel> located = new ArrayList<>();
+        for (PublicChannel channel : source) {
+            Double latitude = channel.getLatitude();
+            Double longitude = channel.getLongitude();
+            if (latitude != null && longitude != null && (latitude != 0.0 || longitude != 0.0)
+                    && Math.abs(latitude) <= 90.0 && Math.abs(longitude) <= 180.0) {
+                located.add(channel);
+            }
+        }
+        int n = located.size();
+        double[][] points = new double[3][n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            PublicChannel channel = located.get(i);
+            toUnitVector(channel.getLatitude(), channel.getLongitude(), points, i);
+            order[i] = i;
+        }
+        axis = new byte[n];
+        build(order, points, 0, n);
+
+        /* copy into tree order, so a query reads memory sequentially */
+        channels = new PublicChannel[n];
+        xyz = new double[3][n];
+        lat = new double[n];
+        lon = new double[n];
+        for (int i = 0; i < n; i++) {
+            PublicChannel channel = located.get(order[i]);
+            channels[i] = channel;
+            lat[i] = channel.getLatitude();
+            lon[i] = channel.getLongitude();
+            for (int a = 0; a < 3; a++) {
+                xyz[a][i] = points[a][order[i]];
+            }
+        }
+        minLat = new double[n];
+        maxLat = new double[n];
+        minLon = new double[n];
+        maxLon = new double[n];
+        bound(0, n);
+    }
+
+    /**
+     * Get the number of channels in the index.
+     *
+     * @return Number of channels with a location.
+     */
+    public int size() {
+        return channels.length;
+    }
+
+    /**
+     * Get the channels within a distance of a point.
+     *
+     * @param latitude Latitude in decimal degrees.
+     * @param longitude Longitude in decimal degrees.
+     * @param radius Distance in metres.
+     * @return Channels, nearest first.
+     */
+    public List<PublicChannel> withinRadius(double latitude, double longitude, double radius) {
+        if (!(radius >= 0)) {
+            throw new IllegalArgumentException("Radius cannot be negative.");
+        }
+        double[] q = query(latitude, longitude);
+        double chord = 2 * Math.sin(Math.min(radius / EARTH_RADIUS, Math.PI) / 2);
+        List<Neighbour> found = new ArrayList<>();
+        radius(0, channels.length, q, chord * chord, found);
+        Collections.sort(found, NEAREST_FIRST);
+        return toChannels(found);
+    }
+
+    /**
+     * Get the channels nearest to a point.
+     *
+     * @param latitude Latitude in decimal degrees.
+     * @param longitude Longitude in decimal degrees.
+     * @param k Maximum number of channels to return.
+     * @return Up to k channels, nearest first.
+     */
+    public List<PublicChannel> nearest(double latitude, double longitude, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Number of channels cannot be negative.");
+        }
+        double[] q = query(latitude, longitude);
+        if (k == 0) {
+            return Collections.emptyList();
+        }
+        PriorityQueue<Neighbour> best = new PriorityQueue<>(k, NEAREST_FIRST.reversed());
+        nearest(0, channels.length, q, k, best);
+        List<Neighbour> found = new ArrayList<>(best);
+        Collections.sort(found, NEAREST_FIRST);
+        return toChannels(found);
+    }
+
+    /**
+     * Get the channels inside a bounding box. If west is greater than east,
+     * the box crosses the 180th meridian.
+     *
+     * @param south Southern latitude in decimal degrees.
+     * @param west Western longitude in decimal degrees.
+     * @param north Northern latitude in decimal degrees.
+     * @param east Eastern longitude in decimal degrees.
+     * @return Channels, in ascending order of id.
+     */
+    public List<PublicChannel> withinBox(double south, double west, double north, double east) {
+        checkLatitude(south);
+        checkLatitude(north);
+        checkLongitude(west);
+        checkLongitude(east);
+        List<PublicChannel> found = new ArrayList<>();
+        if (south > north) {
+            return found;
+        }
+        if (west <= east) {
+            box(0, channels.length, south, north, west, east, found);
+        } else {
+            box(0, channels.length, south, north, west, 180.0, found);
+            box(0, channels.length, south, north, -180.0, east, found);
+        }
+        Collections.sort(found, (a, b) -> Integer.compare(a.getId(), b.getId()));
+        return found;
+    }
+
+    /**
+     * Get the great-circle distance between two points.
+     *
+     * @param lat1 Latitude of the first point in decimal degrees.
+     * @param lon1 Longitude of the first point in decimal degrees.
+     * @param lat2 Latitude of the second point in decimal degrees.
+     * @param lon2 Longitude of the second point in decimal degrees.
+     * @return Distance in metres.
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(h)));
+    }
+
+    /**
+     * Arrange order[lo, hi) into a k-d tree, splitting each range on the
+     * axis with the widest spread.
+     */
+    private void build(int[] order, double[][] points, int lo, int hi) {
+        if (hi - lo < 2) {
+            return;
+        }
+        int widest = 0;
+        double spread = -1;
+        for (int a = 0; a < 3; a++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = lo; i < hi; i++) {
+                double v = points[a][order[i]];
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+            if (max - min > spread) {
+                spread = max - min;
+                widest = a;
+            }
+        }
+        int mid = (lo + hi) >>> 1;
+        select(order, points[widest], lo, hi - 1, mid);
+        axis[mid] = (byte) widest;
+        build(order, points, lo, mid);
+        build(order, points, mid + 1, hi);
+    }
+
+    /**
+     * Partially sort order[left, right] so the element at k is the one which
+     * would be there if the range were sorted by key.
+     */
+    private static void select(int[] order, double[] key, int left, int right, int k) {
+        while (right > left) {
+            double pivot = key[order[(left + right) >>> 1]];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (key[order[i]] < pivot) {
+                    i++;
+                }
+                while (key[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i] = order[j];
+                    order[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Compute the latitude and longitude bounds of the subtree [lo, hi).
+     */
+    private void bound(int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        minLat[mid] = maxLat[mid] = lat[mid];
+        minLon[mid] = maxLon[mid] = lon[mid];
+        if (lo < mid) {
+            bound(lo, mid);
+            include(mid, (lo + mid) >>> 1);
+        }
+        if (mid + 1 < hi) {
+            bound(mid + 1, hi);
+            include(mid, (mid + 1 + hi) >>> 1);
+        }
+    }
+
+    private void include(int node, int child) {
+        minLat[node] = Math.min(minLat[node], minLat[child]);
+        maxLat[node] = Math.max(maxLat[node], maxLat[child]);
+        minLon[node] = Math.min(minLon[node], minLon[child]);
+        maxLon[node] = Math.max(maxLon[node], maxLon[child]);
+    }
+
+    private void radius(int lo, int hi, double[] q, double limit, List<Neighbour> found) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            double d2 = chord2(mid, q);
+            if (d2 <= limit) {
+                found.add(new Neighbour(mid, d2));
+            }
+            double diff = q[axis[mid]] - xyz[axis[mid]][mid];
+            boolean far = diff * diff <= limit;
+            if (diff <= 0) {
+                if (far) {
+                    radius(mid + 1, hi, q, limit, found);
+                }
+                hi = mid;
+            } else {
+                if (far) {
+                    radius(lo, mid, q, limit, found);
+                }
+                lo = mid + 1;
+            }
+        }
+    }
+
+    private void nearest(int lo, int hi, double[] q, int k, PriorityQueue<Neighbour> best) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double d2 = chord2(mid, q);
+        if (best.size() < k) {
+            best.add(new Neighbour(mid, d2));
+        } else if (d2 < best.peek().chord2) {
+            best.poll();
+            best.add(new Neighbour(mid, d2));
+        }
+        double diff = q[axis[mid]] - xyz[axis[mid]][mid];
+        if (diff <= 0) {
+            nearest(lo, mid, q, k, best);
+            if (best.size() < k || diff * diff < best.peek().chord2) {
+                nearest(mid + 1, hi, q, k, best);
+            }
+        } else {
+            nearest(mid + 1, hi, q, k, best);
+            if (best.size() < k || diff * diff < best.peek().chord2) {
+                nearest(lo, mid, q, k, best);
+            }
+        }
+    }
+
+    private void box(int lo, int hi, double south, double north, double west, double east, List<PublicChannel> found) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (minLat[mid] > north || maxLat[mid] < south || minLon[mid] > east || maxLon[mid] < west) {
+            return;
+        }
+        if (lat[mid] >= south && lat[mid] <= north && lon[mid] >= west && lon[mid] <= east) {
+            found.add(channels[mid]);
+        }
+        box(lo, mid, south, north, west, east, found);
+        box(mid + 1, hi, south, north, west, east, found);
+    }
+
+    private double chord2(int node, double[] q) {
+        double dx = xyz[0][node] - q[0];
+        double dy = xyz[1][node] - q[1];
+        double dz = xyz[2][node] - q[2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private List<PublicChannel> toChannels(List<Neighbour> found) {
+        List<PublicChannel> list = new ArrayList<>(found.size());
+        for (Neighbour neighbour : found) {
+            list.add(channels[neighbour.node]);
+        }
+        return list;
+    }
+
+    private static double[] query(double latitude, double longitude) {
+        checkLatitude(latitude);
+        checkLongitude(longitude);
+        double phi = Math.toRadians(latitude);
+        double lambda = Math.toRadians(longitude);
+        return new double[]{Math.cos(phi) * Math.cos(lambda), Math.cos(phi) * Math.sin(lambda), Math.sin(phi)};
+    }
+
+    private static void toUnitVector(double latitude, double longitude, double[][] points, int i) {
+        double phi = Math.toRadians(latitude);
+        double lambda = Math.toRadians(longitude);
+        points[0][i] = Math.cos(phi) * Math.cos(lambda);
+        points[1][i] = Math.cos(phi) * Math.sin(lambda);
+        points[2][i] = Math.sin(phi);
+    }
+
+    private static void checkLatitude(double latitude) {
+        if (!(Math.abs(latitude) <= 90.0)) {
+            throw new IllegalArgumentException("Latitude must be between -90 and 90 degrees.");
+        }
+    }
+
+    private static void checkLongitude(double longitude) {
+        if (!(Math.abs(longitude) <= 180.0)) {
+            throw new IllegalArgumentException("Longitude must be between -180 and 180 degrees.");
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * ThingSpeak Java Client Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.angryelectron.thingspeak.pub;
+
+import com.angryelectron.thingspeak.HttpTransport;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Splits the public channel directory into ranges of pages, so the pages can
+ * be fetched and processed in parallel by a parallel stream. Each range is
+ * read with its own {@link PublicIterator}, which requests its pages ahead of
+ * the caller.
+ */
+class PublicChannelSpliterator implements Spliterator<PublicChannel> {
+
+    private final HttpTransport transport;
+    private final String url;
+    private final String tag;
+    private final int readAhead;
+    private final int perPage;
+
+    /**
+     * Channels already fetched which come before the range of pages, or null.
+     */
+    private Iterator<PublicChannel> fetched;
+
+    /**
+     * First and last pages which have not been requested. Empty if from is
+     * greater than to.
+     */
+    private int from;
+    private final int to;
+
+    /**
+     * Iterator over the range, created when the first channel in it is
+     * needed. The range can no longer be split once it has started.
+     */
+    private PublicIterator iterator;
+
+    /**
+     * Create a spliterator over the whole directory, starting with a page
+     * which has already been fetched.
+     *
+     * @param transport Transport used to make requests.
+     * @param url ThingSpeak server URL.
+     * @param tag Tag to search for, or null for all channels.
+     * @param readAhead Number of pages each range requests ahead.
+     * @param firstPage The first page of results, or null if it could not be
+     * fetched.
+     */
+    PublicChannelSpliterator(HttpTransport transport, String url, String tag, int readAhead, PublicJSONResult firstPage) {
+        this(transport, url, tag, readAhead,
+                (firstPage == null) ? 1 : firstPage.getPerPage(),
+                (firstPage == null) ? null : firstPage.iterator(),
+                2, (firstPage == null) ? 0 : firstPage.getPageCount());
+    }
+
+    private PublicChannelSpliterator(HttpTransport transport, String url, String tag, int readAhead, int perPage, Iterator<PublicChannel> fetched, int from, int to) {
+        this.transport = transport;
+        this.url = url;
+        this.tag = tag;
+        this.readAhead = readAhead;
+        this.perPage = perPage;
+        this.fetched = fetched;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super PublicChannel> action) {
+        if (fetched != null) {
+            if (fetched.hasNext()) {
+                action.accept(fetched.next());
+                return true;
+            }
+            fetched = null;
+        }
+        if (iterator == null) {
+            if (from > to) {
+                return false;
+            }
+            iterator = new PublicIterator(transport, url, tag, readAhead, from, to);
+        }
+        if (iterator.hasNext()) {
+            action.accept(iterator.next());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Split off the first half of the remaining pages. Channels which have
+     * already been fetched go with the first half.
+     */
+    @Override
+    public Spliterator<PublicChannel> trySplit() {
+        if (iterator != null) {
+            return null;
+        }
+        int pages = to - from + 1;
+        if (pages >= 2) {
+            int middle = from + pages / 2;
+            Spliterator<PublicChannel> prefix = new PublicChannelSpliterator(transport, url, tag, readAhead, perPage, fetched, from, middle - 1);
+            fetched = null;
+            from = middle;
+            return prefix;
+        }
+        if (pages == 1 && fetched != null) {
+            Spliterator<PublicChannel> prefix = new PublicChannelSpliterator(transport, url, tag, readAhead, perPage, fetched, from, from - 1);
+            fetched = null;
+            return prefix;
+        }
+        return null;
+    }
+
+    /**
+     * Estimate the number of channels from the number of pages. The last
+     * page may be partly full, and the directory may change while it is
+     * being read, so the size is not exact.
+     */
+    @Override
+    public long estimateSize() {
+        long pages = Math.max(0, to - from + 1);
+        if (fetched != null) {
+            pages++;
+        }
+        return pages * perPage;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+}
@@ -17,31 +17,54 @@
  */
 package com.angryelectron.thingspeak.pub;
 
+import com.angryelectron.thingspeak.HttpTransport;
 import com.angryelectron.thingspeak.ThingSpeakException;
+import com.angryelectron.thingspeak.TimestampCodec;
+import com.angryelectron.thingspeak.TransportRequest;
+import com.angryelectron.thingspeak.TransportResponse;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
-import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.JsonNode;
-import com.mashape.unirest.http.Unirest;
-import com.mashape.unirest.http.exceptions.UnirestException;
-import com.mashape.unirest.request.GetRequest;
+import com.google.gson.stream.JsonReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Date;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Provides a custom iterator for PublicChannelCollections which works with
- * ThingSpeak's paginated results.
+ * ThingSpeak's paginated results. While the caller works through one page,
+ * the following pages are requested concurrently, so the next page is
+ * usually ready by the time it is needed. Pages which cannot be fetched are
+ * logged and skipped.
  *
  * @author abythell
  */
 class PublicIterator implements Iterator<PublicChannel> {
 
+    /**
+     * Default number of pages to request ahead of the current one.
+     */
+    static final int DEFAULT_READ_AHEAD = 4;
+
+    /**
+     * Transport used to make requests.
+     */
+    private final HttpTransport transport;
+
     /**
      * URL of the Thingspeak server.
      */
@@ -53,12 +76,33 @@ class PublicIterator implements Iterator<PublicChannel> {
     private final String tag;
 
     /**
-     * Current page of results and an iterator to the list of PublicChannel
-     * channels it contains.
+     * Maximum number of pages requested but not yet returned.
+     */
+    private final int readAhead;
+
+    /**
+     * The first page of results, if this iterator started at page 1.
+     */
+    private final PublicJSONResult firstPage;
+
+    /**
+     * Pages which have been requested, in order, the next page to request,
+     * and the last page to return.
+     */
+    private final ArrayDeque<CompletableFuture<PublicJSONResult>> pending = new ArrayDeque<>();
+    private int nextPage;
+    private final int lastPage;
+
+    /**
+     * Iterator over the channels in the current page.
      */
-    private PublicJSONResult results;
     private Iterator<PublicChannel> iterator;
 
+    /**
+     * Number of pages which could not be fetched.
+     */
+    private int failedPages;
+
     /**
      * ThingSpeak channels don't always contain elevation, latitude, or
      * longitude data. These empty strings cause NumberFormatExceptions when
@@ -82,64 +126,153 @@ class PublicIterator implements Iterator<PublicChannel> {
      */
     private final Gson gson = new GsonBuilder()
             .registerTypeAdapter(Double.class, new LocationDeserializer())
-            .setDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX").create();
+            .registerTypeAdapter(Date.class, new TimestampCodec.DateAdapter())
+            .create();
 
     /**
      * Constructor.
      *
+     * @param transport Transport used to make requests.
      * @param url ThingSpeak server URL (eg. http://api.thingspeak.com).
      * @param tag Get channels with this tag only, or null to return all
      * channels.
      */
-    protected PublicIterator(String url, String tag) {
+    protected PublicIterator(HttpTransport transport, String url, String tag) {
+        this(transport, url, tag, DEFAULT_READ_AHEAD);
+    }
+
+    /**
+     * Constructor. Waits for the first page, which determines the number of
+     * pages.
+     *
+     * @param transport Transport used to make requests.
+     * @param url ThingSpeak server URL (eg. http://api.thingspeak.com).
+     * @param tag Get channels with this tag only, or null to return all
+     * channels.
+     * @param readAhead Number of pages to request ahead of the current one.
+     */
+    PublicIterator(HttpTransport transport, String url, String tag, int readAhead) {
+        this.transport = transport;
         this.url = url;
         this.tag = tag;
-        thingRequest(1);
+        this.readAhead = readAhead;
+        firstPage = await(thingRequest(1));
+        if (firstPage == null) {
+            iterator = Collections.emptyIterator();
+            lastPage = 0;
+        } else {
+            iterator = firstPage.iterator();
+            lastPage = firstPage.getPageCount();
+        }
+        nextPage = 2;
+        readAhead();
     }
 
     /**
-     * Make requests to the ThingSpeak server and parse the results.
+     * Constructor for a range of pages. Requests start immediately.
+     *
+     * @param transport Transport used to make requests.
+     * @param url ThingSpeak server URL (eg. http://api.thingspeak.com).
+     * @param tag Get channels with this tag only, or null to return all
+     * channels.
+     * @param readAhead Number of pages to request ahead of the current one.
+     * @param from First page to return.
+     * @param to Last page to return.
+     */
+    PublicIterator(HttpTransport transport, String url, String tag, int readAhead, int from, int to) {
+        this.transport = transport;
+        this.url = url;
+        this.tag = tag;
+        this.readAhead = readAhead;
+        this.firstPage = null;
+        this.iterator = Collections.emptyIterator();
+        this.nextPage = from;
+        this.lastPage = to;
+        readAhead();
+    }
+
+    /**
+     * Request a page of results without waiting for it.
      *
      * @param page The page of results to request.
+     * @return A future which completes with the parsed page.
      */
-    private void thingRequest(Integer page) {
-        try {
-            GetRequest request = Unirest.get(url + "/channels/public.json");
-            if (tag != null) {
-                request.field("tag", tag);
+    private CompletableFuture<PublicJSONResult> thingRequest(int page) {
+        TransportRequest request = TransportRequest.get(url + "/channels/public.json")
+                .parameter("tag", tag)
+                .parameter("page", page);
+        return transport.executeAsync(request).thenApply(response -> {
+            try {
+                return parse(response);
+            } catch (IOException | ThingSpeakException ex) {
+                throw new CompletionException(ex);
             }
-            request.field("page", page);
-            HttpResponse<JsonNode> response = request.asJson();
+        });
+    }
+
+    /**
+     * Parse a page of results.
+     *
+     * @param response Response.
+     * @return Page.
+     */
+    private PublicJSONResult parse(TransportResponse response) throws IOException, ThingSpeakException {
+        try (response) {
             if (response.getCode() != 200) {
                 throw new ThingSpeakException("Request failed with code " + response.getCode());
             }
-            results = gson.fromJson(response.getBody().toString(), PublicJSONResult.class);
-            iterator = results.iterator();
-        } catch (UnirestException | ThingSpeakException ex) {
-            Logger.getLogger(PublicIterator.class.getName()).log(Level.SEVERE, null, ex);
-            results = null;
+            JsonReader reader = new JsonReader(new InputStreamReader(response.getStream(), StandardCharsets.UTF_8));
+            return gson.fromJson(reader, PublicJSONResult.class);
+        }
+    }
+
+    /**
+     * Wait for a page.
+     *
+     * @return Page, or null if it could not be fetched.
+     */
+    private PublicJSONResult await(CompletableFuture<PublicJSONResult> page) {
+        try {
+            return page.join();
+        } catch (CompletionException | CancellationException ex) {
+            Throwable cause = (ex.getCause() != null) ? ex.getCause() : ex;
+            Logger.getLogger(PublicIterator.class.getName()).log(Level.SEVERE, null, cause);
+            failedPages++;
+            return null;
+        }
+    }
+
+    /**
+     * Request pages until readAhead pages are pending.
+     */
+    private void readAhead() {
+        while (pending.size() < readAhead && nextPage <= lastPage) {
+            pending.add(thingRequest(nextPage++));
         }
     }
 
     @Override
     public boolean hasNext() {
-        if (iterator.hasNext()) {
-            /* current page still has unreturned channels */
-            return true;
-        } else if (results.isLastPage()) {
-            /* current page has returned all channels and there
-             * are no more pages left */
-            return false;
-        } else {
-            /* current page has returned all channels but there
-             * are more pages remaining. */
-            thingRequest(results.getCurrentPage() + 1);
-            return true;
+        while (!iterator.hasNext()) {
+            if (pending.isEmpty()) {
+                if (nextPage > lastPage) {
+                    /* all pages have been returned */
+                    return false;
+                }
+                pending.add(thingRequest(nextPage++));
+            }
+            PublicJSONResult page = await(pending.poll());
+            readAhead();
+            iterator = (page == null) ? Collections.<PublicChannel>emptyIterator() : page.iterator();
         }
+        return true;
     }
 
     @Override
     public PublicChannel next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
         return iterator.next();
     }
 
@@ -149,7 +282,26 @@ class PublicIterator implements Iterator<PublicChannel> {
     }
 
     Integer size() {
-        return results.getTotalEntries();
+        return (firstPage == null) ? 0 : firstPage.getTotalEntries();
     }
 
+    /**
+     * Get the first page of results.
+     *
+     * @return Page, or null if this iterator did not start at page 1 or the
+     * page could not be fetched.
+     */
+    PublicJSONResult getFirstPage() {
+        return firstPage;
+    }
+
+    /**
+     * Get the number of pages which have been skipped because they could not
+     * be fetched.
+     *
+     * @return Number of pages.
+     */
+    int getFailedPages() {
+        return failedPages;
+    }
 }
@@ -53,16 +53,23 @@ class PublicJSONResult {
     }
         
     /**
-     * Determine if the current page is the last one in the set.
-     * @return True if this is the last page.
+     * Get the number of pages in the set. A partial last page counts as a
+     * page.
+     * @return Number of pages, at least 1.
      */
-    Boolean isLastPage() {
+    int getPageCount() {
         if (pagination.total_entries <= pagination.per_page) {
-            return true;
-        } else {
-            Double pages = (double) pagination.total_entries / pagination.per_page;
-            return (pages.intValue() == pagination.current_page);        
+            return 1;
         }
+        return (pagination.total_entries + pagination.per_page - 1) / pagination.per_page;
+    }
+
+    /**
+     * Get the number of channels on each page.
+     * @return Channels per page.
+     */
+    int getPerPage() {
+        return pagination.per_page;
     }
     
     /**
@@ -0,0 +1,886 @@
+/**
+ * ThingSpeak Java Client 
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak.server;
+
+import com.angryelectron.thingspeak.TimestampCodec;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * An in-process stand-in for the ThingSpeak server, for measuring the client's
+ * throughput and latency without network access or real channel keys. It
+ * implements the parts of the API used by this client: updates, bulk updates,
+ * channel, field and status feeds, last entries, and the public channel
+ * directory. Channels are kept in memory.</p>
+ * <pre>
+ * {@code
+ * LocalThingSpeakServer server = new LocalThingSpeakServer();
+ * server.setLatency(20, 250);
+ * server.setErrorRate(0.01);
+ * server.start();
+ * int id = server.addChannel("WRITEKEY", null);
+ * server.addEntries(id, 8000);
+ *
+ * Channel channel = new Channel(id, "WRITEKEY");
+ * channel.setUrl(server.getUrl());
+ * Feed feed = channel.getChannelFeed();
+ * server.stop();
+ * }
+ * </pre>
+ * <p>
+ * Latency is added to each response without holding a thread, so many slow
+ * requests can be in flight at once. Like ThingSpeak, an update which comes
+ * sooner than {@link #setUpdateInterval(long)} after the channel's previous
+ * update is refused. The results, days, start, end, timezone, status and
+ * location feed parameters are supported; the others are ignored. Dates are
+ * returned in UTC. This class is thread-safe.</p>
+ * <p>
+ * When measuring latency, run the JVM with
+ * {@code -Dsun.net.httpserver.nodelay=true}, or set that system property
+ * before the first HTTP server in the JVM is created. Without it, the JDK's
+ * server does not set TCP_NODELAY, and each response waits for the client
+ * to acknowledge its headers, adding about 40ms. The server does not set the
+ * property itself because it applies to every HTTP server in the JVM.</p>
+ */
+public class LocalThingSpeakServer implements Closeable {
+
+    private static final String APIHEADER = "X-THINGSPEAKAPIKEY";
+    private static final int DEFAULT_RESULTS = 100;
+    private static final int MAX_RESULTS = 8000;
+    private static final int MAX_BULK_ENTRIES = 960;
+    private static final int FIELDS = 8;
+
+    private static final Pattern CHANNEL_PATH = Pattern.compile("/channels/(\\d+)/(.+)");
+    private static final Pattern FIELD_PATH = Pattern.compile("field/([1-8])(/last)?\\.json");
+
+    private final int port;
+    private final ConcurrentSkipListMap<Integer, LocalChannel> channels = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, LocalChannel> writeKeys = new ConcurrentHashMap<>();
+    private final AtomicInteger nextChannelId = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+
+    private volatile LongSupplier latency = () -> 0;
+    private volatile double errorRate;
+    private volatile int errorCode = 500;
+    private volatile long updateInterval;
+    private volatile int publicPageSize = 15;
+
+    private HttpServer server;
+    private ExecutorService workers;
+    private ScheduledExecutorService delays;
+
+    /**
+     * A channel and its entries. Entries are guarded by the channel.
+     */
+    private static class LocalChannel {
+
+        private final int id;
+        private final String writeKey;
+        private final String readKey;
+        private final long created = System.currentTimeMillis();
+        private volatile String name;
+        private volatile double latitude;
+        private volatile double longitude;
+        private volatile String[] tags = new String[0];
+        private final ArrayList<StoredEntry> entries = new ArrayList<>();
+        private int lastEntryId;
+        private long lastUpdate = Long.MIN_VALUE;
+
+        LocalChannel(int id, String writeKey, String readKey) {
+            this.id = id;
+            this.writeKey = writeKey;
+            this.readKey = readKey;
+            this.name = "Channel " + id;
+        }
+
+        boolean isPublic() {
+            return readKey == null;
+        }
+
+        /**
+         * Add an entry, giving it the next id.
+         */
+        synchronized int add(StoredEntry entry) {
+            entry.id = ++lastEntryId;
+            entries.add(entry);
+            return entry.id;
+        }
+    }
+
+    /**
+     * An entry as stored by the server. Values are kept as the Strings which
+     * were sent.
+     */
+    private static class StoredEntry {
+
+        private int id;
+        private final long created;
+        private final String[] fields = new String[FIELDS];
+        private String status;
+        private String latitude;
+        private String longitude;
+        private String elevation;
+
+        StoredEntry(long created) {
+            this.created = created;
+        }
+    }
+
+    /**
+     * A response, ready to send.
+     */
+    private static class Response {
+
+        private final int code;
+        private final byte[] body;
+        private final String contentType;
+
+        Response(int code, String body, String contentType) {
+            this.code = code;
+            this.body = body.getBytes(StandardCharsets.UTF_8);
+            this.contentType = contentType;
+        }
+
+        static Response json(int code, CharSequence json) {
+            return new Response(code, json.toString(), "application/json; charset=utf-8");
+        }
+
+        static Response text(int code, String text) {
+            return new Response(code, text, "text/plain; charset=utf-8");
+        }
+    }
+
+    /**
+     * Create a server which listens on a free port.
+     */
+    public LocalThingSpeakServer() {
+        this(0);
+    }
+
+    /**
+     * Create a server which listens on the given port of the loopback
+     * address.
+     *
+     * @param port Port, or 0 for any free port.
+     */
+    public LocalThingSpeakServer(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Start accepting requests.
+     *
+     * @throws IOException The port cannot be opened.
+     */
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Server is already started.");
+        }
+        AtomicInteger threads = new AtomicInteger();
+        workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "thingspeak-local-server-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        delays = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "thingspeak-local-server-latency");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.createContext("/", this::handle);
+        server.setExecutor(workers);
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests and close open connections. Responses delayed
+     * by latency which have not been sent are abandoned.
+     */
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        delays.shutdownNow();
+        workers.shutdownNow();
+        server = null;
+    }
+
+    /**
+     * Same as {@link #stop()}.
+     */
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Get the URL of the server, to pass to
+     * {@link com.angryelectron.thingspeak.Channel#setUrl(java.lang.String)}.
+     *
+     * @return URL, eg. http://127.0.0.1:41234
+     */
+    public synchronized String getUrl() {
+        if (server == null) {
+            throw new IllegalStateException("Server is not started.");
+        }
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+
+    /**
+     * Create a channel.
+     *
+     * @param writeKey API write key.
+     * @param readKey API read key, or null for a public channel. Public
+     * channels are listed in the public channel directory.
+     * @return Channel id.
+     */
+    public int addChannel(String writeKey, String readKey) {
+        if (writeKey == null) {
+            throw new IllegalArgumentException("Write key is required.");
+        }
+        LocalChannel channel = new LocalChannel(nextChannelId.incrementAndGet(), writeKey, readKey);
+        if (writeKeys.putIfAbsent(writeKey, channel) != null) {
+            throw new IllegalArgumentException("Write key is already in use.");
+        }
+        channels.put(channel.id, channel);
+        return channel.id;
+    }
+
+    /**
+     * Set the name, location and tags shown for a channel in the public
+     * channel directory.
+     *
+     * @param channelId Channel id.
+     * @param name Name.
+     * @param latitude Latitude in decimal degrees.
+     * @param longitude Longitude in decimal degrees.
+     * @param tags Tags.
+     */
+    public void setListing(int channelId, String name, double latitude, double longitude, String... tags) {
+        LocalChannel channel = channel(channelId);
+        channel.name = name;
+        channel.latitude = latitude;
+        channel.longitude = longitude;
+        channel.tags = tags.clone();
+    }
+
+    /**
+     * Add synthetic entries to a channel, 15 seconds apart and ending now.
+     * All eight fields are set to numbers, and the status to text.
+     *
+     * @param channelId Channel id.
+     * @param count Number of entries.
+     */
+    public void addEntries(int channelId, int count) {
+        LocalChannel channel = channel(channelId);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            StoredEntry entry = new StoredEntry(now - (count - 1 - i) * 15000L);
+            for (int field = 0; field < FIELDS; field++) {
+                entry.fields[field] = Double.toString(Math.round(Math.sin(i / 40.0 + field) * 1000) / 100.0 + field * 10);
+            }
+            entry.status = "synthetic " + i;
+            channel.add(entry);
+        }
+    }
+
+    /**
+     * Get the number of entries in a channel.
+     *
+     * @param channelId Channel id.
+     * @return Number of entries.
+     */
+    public int getEntryCount(int channelId) {
+        LocalChannel channel = channel(channelId);
+        synchronized (channel) {
+            return channel.entries.size();
+        }
+    }
+
+    /**
+     * Set the delay before each response is sent.
+     *
+     * @param millis Supplies the delay for each response, in milliseconds.
+     */
+    public void setLatency(LongSupplier millis) {
+        this.latency = millis;
+    }
+
+    /**
+     * Delay responses by a log-normally distributed time, which is typical of
+     * network services: most responses take about the median, with a long
+     * tail.
+     *
+     * @param median Median delay in milliseconds.
+     * @param p99 99th percentile delay in milliseconds, at least median.
+     */
+    public void setLatency(long median, long p99) {
+        if (median < 0 || p99 < median) {
+            throw new IllegalArgumentException("Latency must satisfy 0 <= median <= p99.");
+        }
+        if (median == 0) {
+            setLatency(() -> 0);
+            return;
+        }
+        /* 2.326 is the 99th percentile of the standard normal distribution */
+        final double sigma = Math.log((double) p99 / median) / 2.326;
+        setLatency(() -> Math.round(median * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian())));
+    }
+
+    /**
+     * Fail a fraction of requests, chosen at random, with
+     * {@link #setErrorCode(int)}.
+     *
+     * @param probability Probability of failure, between 0 and 1. Default is
+     * 0.
+     */
+    public void setErrorRate(double probability) {
+        if (!(probability >= 0 && probability <= 1)) {
+            throw new IllegalArgumentException("Error rate must be between 0 and 1.");
+        }
+        this.errorRate = probability;
+    }
+
+    /**
+     * Set the HTTP status code of failed requests. Default is 500.
+     *
+     * @param code Status code.
+     */
+    public void setErrorCode(int code) {
+        this.errorCode = code;
+    }
+
+    /**
+     * Set the minimum time between updates to a channel. Single updates which
+     * come sooner are refused with an entry id of 0, and bulk updates with
+     * status 429. ThingSpeak allows one update every 15 seconds. Default is
+     * 0, which allows any rate.
+     *
+     * @param millis Minimum interval in milliseconds.
+     */
+    public void setUpdateInterval(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Interval cannot be negative.");
+        }
+        this.updateInterval = millis;
+    }
+
+    /**
+     * Set the number of channels in each page of the public channel
+     * directory. Default is 15.
+     *
+     * @param channels Channels per page.
+     */
+    public void setPublicPageSize(int channels) {
+        if (channels < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1.");
+        }
+        this.publicPageSize = channels;
+    }
+
+    /**
+     * Get the number of requests received.
+     *
+     * @return Number of requests.
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Get the number of requests failed by {@link #setErrorRate(double)}.
+     *
+     * @return Number of requests.
+     */
+    public long getInjectedErrorCount() {
+        return injectedErrors.get();
+    }
+
+    /**
+     * Get the number of updates refused by
+     * {@link #setUpdateInterval(long)}.
+     *
+     * @return Number of updates.
+     */
+    public long getRateLimitedCount() {
+        return rateLimited.get();
+    }
+
+    private LocalChannel channel(int channelId) {
+        LocalChannel channel = channels.get(channelId);
+        if (channel == null) {
+            throw new IllegalArgumentException("No channel with id " + channelId + ".");
+        }
+        return channel;
+    }
+
+    /**
+     * Answer a request, after the latency if there is one.
+     */
+    private void handle(final HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        Response response;
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            injectedErrors.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            response = Response.text(errorCode, "");
+        } else {
+            try {
+                response = route(exchange);
+            } catch (IllegalArgumentException ex) {
+                response = Response.text(400, "-1");
+            } catch (RuntimeException ex) {
+                Logger.getLogger(LocalThingSpeakServer.class.getName()).log(Level.SEVERE, null, ex);
+                response = Response.text(500, "");
+            }
+        }
+        final Response send = response;
+        long delay = latency.getAsLong();
+        if (delay <= 0) {
+            send(exchange, send);
+            return;
+        }
+        try {
+            delays.schedule(() -> workers.execute(() -> {
+                try {
+                    send(exchange, send);
+                } catch (IOException ex) {
+                    /* the client has gone away */
+                    exchange.close();
+                }
+            }), delay, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException ex) {
+            /* stopping */
+            exchange.close();
+        }
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", response.contentType);
+        exchange.sendResponseHeaders(response.code, (response.body.length == 0) ? -1 : response.body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response.body);
+        }
+    }
+
+    private Response route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        Map<String, String> query = decode(exchange.getRequestURI().getRawQuery());
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        if (path.equals("/update")) {
+            Map<String, String> parameters = new HashMap<>(query);
+            if (method.equals("POST")) {
+                parameters.putAll(decode(new String(body, StandardCharsets.UTF_8)));
+            }
+            String key = exchange.getRequestHeaders().getFirst(APIHEADER);
+            if (key == null) {
+                key = (parameters.get("api_key") != null) ? parameters.get("api_key") : parameters.get("key");
+            }
+            return update(key, parameters);
+        }
+        if (path.equals("/channels/public.json")) {
+            return publicChannels(query);
+        }
+        Matcher matcher = CHANNEL_PATH.matcher(path);
+        if (!matcher.matches()) {
+            return Response.text(404, "");
+        }
+        LocalChannel channel = channels.get(Integer.valueOf(matcher.group(1)));
+        String resource = matcher.group(2);
+        if (channel == null) {
+            return Response.text(404, "");
+        }
+        if (resource.equals("bulk_update.json")) {
+            if (!method.equals("POST")) {
+                return Response.text(405, "");
+            }
+            return bulkUpdate(channel, new String(body, StandardCharsets.UTF_8));
+        }
+        String key = query.get("key");
+        if (!channel.isPublic() && !channel.readKey.equals(key) && !channel.writeKey.equals(key)) {
+            return Response.text(400, "-1");
+        }
+        switch (resource) {
+            case "feed.json":
+                return feed(channel, query, 0, false);
+            case "feed/last.json":
+                return last(channel, query, 0);
+            case "status.json":
+                return feed(channel, query, 0, true);
+        }
+        matcher = FIELD_PATH.matcher(resource);
+        if (matcher.matches()) {
+            int field = Integer.parseInt(matcher.group(1));
+            return (matcher.group(2) == null) ? feed(channel, query, field, false) : last(channel, query, field);
+        }
+        return Response.text(404, "");
+    }
+
+    private Response update(String key, Map<String, String> parameters) {
+        LocalChannel channel = (key == null) ? null : writeKeys.get(key);
+        if (channel == null) {
+            return Response.text(200, "0");
+        }
+        long now = System.currentTimeMillis();
+        if (!acceptUpdate(channel, now)) {
+            return Response.text(200, "0");
+        }
+        String created = parameters.get("created_at");
+        StoredEntry entry = new StoredEntry((created == null) ? now : TimestampCodec.parse(created));
+        for (int field = 0; field < FIELDS; field++) {
+            entry.fields[field] = parameters.get("field" + (field + 1));
+        }
+        entry.status = parameters.get("status");
+        entry.latitude = parameters.get("lat");
+        entry.longitude = parameters.get("long");
+        entry.elevation = parameters.get("elevation");
+        return Response.text(200, Integer.toString(channel.add(entry)));
+    }
+
+    private Response bulkUpdate(LocalChannel channel, String body) {
+        JsonObject json = new JsonParser().parse(body).getAsJsonObject();
+        JsonElement key = json.get("write_api_key");
+        if (key == null || !channel.writeKey.equals(key.getAsString())) {
+            return Response.json(401, "{\"success\":false}");
+        }
+        List<StoredEntry> entries = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (JsonElement element : json.getAsJsonArray("updates")) {
+            JsonObject update = element.getAsJsonObject();
+            String created = string(update, "created_at");
+            StoredEntry entry = new StoredEntry((created == null) ? now : TimestampCodec.parse(created));
+            for (int field = 0; field < FIELDS; field++) {
+                entry.fields[field] = string(update, "field" + (field + 1));
+            }
+            entry.status = string(update, "status");
+            entry.latitude = string(update, "lat");
+            entry.longitude = string(update, "long");
+            entry.elevation = string(update, "elevation");
+            entries.add(entry);
+        }
+        if (entries.size() > MAX_BULK_ENTRIES) {
+            return Response.json(413, "{\"success\":false}");
+        }
+        if (!acceptUpdate(channel, now)) {
+            return Response.json(429, "{\"success\":false}");
+        }
+        synchronized (channel) {
+            for (StoredEntry entry : entries) {
+                channel.add(entry);
+            }
+        }
+        return Response.json(202, "{\"success\":true}");
+    }
+
+    /**
+     * Check the update interval, and record the update if it is allowed.
+     */
+    private boolean acceptUpdate(LocalChannel channel, long now) {
+        long interval = updateInterval;
+        synchronized (channel) {
+            if (interval > 0 && channel.lastUpdate != Long.MIN_VALUE && now - channel.lastUpdate < interval) {
+                rateLimited.incrementAndGet();
+                return false;
+            }
+            channel.lastUpdate = now;
+            return true;
+        }
+    }
+
+    /**
+     * Build a channel, field or status feed.
+     *
+     * @param field Field to include, or 0 for all fields.
+     * @param status True for a status feed.
+     */
+    private Response feed(LocalChannel channel, Map<String, String> query, int field, boolean status) {
+        List<StoredEntry> selected = select(channel, query);
+        boolean withStatus = status || "true".equals(query.get("status"));
+        boolean withLocation = !status && "true".equals(query.get("location"));
+        StringBuilder json = new StringBuilder(256 + selected.size() * 160);
+        json.append("{\"channel\":");
+        appendChannel(json, channel, status ? -1 : field);
+        json.append(",\"feeds\":[");
+        for (int i = 0; i < selected.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendEntry(json, selected.get(i), status ? -1 : field, withStatus, withLocation);
+        }
+        return Response.json(200, json.append("]}"));
+    }
+
+    /**
+     * Get the last entry in a channel, or the last with a value in a field.
+     */
+    private Response last(LocalChannel channel, Map<String, String> query, int field) {
+        StoredEntry last = null;
+        synchronized (channel) {
+            for (int i = channel.entries.size() - 1; i >= 0 && last == null; i--) {
+                StoredEntry entry = channel.entries.get(i);
+                if (field == 0 || entry.fields[field - 1] != null) {
+                    last = entry;
+                }
+            }
+        }
+        if (last == null) {
+            return Response.json(404, "-1");
+        }
+        StringBuilder json = new StringBuilder(256);
+        appendEntry(json, last, field, "true".equals(query.get("status")), "true".equals(query.get("location")));
+        return Response.json(200, json);
+    }
+
+    /**
+     * Select the entries for a feed, applying the results, days, start and end
+     * parameters.
+     */
+    private static List<StoredEntry> select(LocalChannel channel, Map<String, String> query) {
+        TimeZone zone = TimeZone.getTimeZone(query.getOrDefault("timezone", "UTC"));
+        long start = Long.MIN_VALUE;
+        long end = Long.MAX_VALUE;
+        if (query.containsKey("start")) {
+            start = local(query.get("start"), zone);
+        }
+        if (query.containsKey("end")) {
+            end = local(query.get("end"), zone);
+        }
+        if (query.containsKey("days")) {
+            start = Math.max(start, System.currentTimeMillis() - Long.parseLong(query.get("days")) * 86400000L);
+        }
+        int results = DEFAULT_RESULTS;
+        if (query.containsKey("results")) {
+            results = Math.max(0, Math.min(MAX_RESULTS, Integer.parseInt(query.get("results"))));
+        }
+        List<StoredEntry> selected = new ArrayList<>();
+        synchronized (channel) {
+            for (int i = channel.entries.size() - 1; i >= 0 && selected.size() < results; i--) {
+                StoredEntry entry = channel.entries.get(i);
+                if (entry.created >= start && entry.created <= end) {
+                    selected.add(entry);
+                }
+            }
+        }
+        /* oldest first */
+        for (int i = 0, j = selected.size() - 1; i < j; i++, j--) {
+            StoredEntry swap = selected.get(i);
+            selected.set(i, selected.get(j));
+            selected.set(j, swap);
+        }
+        return selected;
+    }
+
+    /**
+     * Parse a date sent as a feed parameter, in the given time zone.
+     */
+    private static long local(String date, TimeZone zone) {
+        long utc = TimestampCodec.parse(date);
+        /* the offset at the local time is close enough to the offset at the instant */
+        return utc - zone.getOffset(utc - zone.getRawOffset());
+    }
+
+    private Response publicChannels(Map<String, String> query) {
+        String tag = query.get("tag");
+        int page = Math.max(1, Integer.parseInt(query.getOrDefault("page", "1")));
+        int perPage = publicPageSize;
+        List<LocalChannel> listed = new ArrayList<>();
+        for (LocalChannel channel : channels.values()) {
+            if (channel.isPublic() && (tag == null || hasTag(channel, tag))) {
+                listed.add(channel);
+            }
+        }
+        StringBuilder json = new StringBuilder(256 + perPage * 256);
+        json.append("{\"pagination\":{\"current_page\":").append(page)
+                .append(",\"per_page\":").append(perPage)
+                .append(",\"total_entries\":").append(listed.size())
+                .append("},\"channels\":[");
+        int from = (int) Math.min((long) (page - 1) * perPage, listed.size());
+        int to = Math.min(from + perPage, listed.size());
+        for (int i = from; i < to; i++) {
+            LocalChannel channel = listed.get(i);
+            if (i > from) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(channel.id).append(",\"name\":");
+            appendString(json, channel.name);
+            json.append(",\"description\":\"\",\"latitude\":\"").append(channel.latitude)
+                    .append("\",\"longitude\":\"").append(channel.longitude)
+                    .append("\",\"elevation\":\"\",\"created_at\":\"");
+            TimestampCodec.append(json, channel.created);
+            synchronized (channel) {
+                json.append("\",\"last_entry_id\":").append(channel.lastEntryId);
+            }
+            json.append(",\"ranking\":50,\"username\":\"local\",\"tags\":[");
+            String[] tags = channel.tags;
+            for (int t = 0; t < tags.length; t++) {
+                if (t > 0) {
+                    json.append(',');
+                }
+                json.append("{\"id\":").append(t + 1).append(",\"name\":");
+                appendString(json, tags[t]);
+                json.append('}');
+            }
+            json.append("]}");
+        }
+        return Response.json(200, json.append("]}"));
+    }
+
+    private static boolean hasTag(LocalChannel channel, String tag) {
+        for (String t : channel.tags) {
+            if (t.equalsIgnoreCase(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Append the channel description of a feed.
+     *
+     * @param field Field name to include, 0 for all, or -1 for none.
+     */
+    private static void appendChannel(StringBuilder json, LocalChannel channel, int field) {
+        json.append("{\"id\":").append(channel.id).append(",\"name\":");
+        appendString(json, channel.name);
+        json.append(",\"description\":\"\",\"latitude\":\"").append(channel.latitude)
+                .append("\",\"longitude\":\"").append(channel.longitude).append('"');
+        for (int i = 1; i <= FIELDS; i++) {
+            if (field == 0 || field == i) {
+                json.append(",\"field").append(i).append("\":\"Field ").append(i).append('"');
+            }
+        }
+        json.append(",\"created_at\":\"");
+        TimestampCodec.append(json, channel.created);
+        synchronized (channel) {
+            json.append("\",\"updated_at\":\"");
+            int size = channel.entries.size();
+            TimestampCodec.append(json, (size == 0) ? channel.created : channel.entries.get(size - 1).created);
+            json.append("\",\"last_entry_id\":").append(channel.lastEntryId).append('}');
+        }
+    }
+
+    /**
+     * Append an entry.
+     *
+     * @param field Field to include, 0 for all, or -1 for none.
+     */
+    private static void appendEntry(StringBuilder json, StoredEntry entry, int field, boolean status, boolean location) {
+        json.append("{\"created_at\":\"");
+        TimestampCodec.append(json, entry.created);
+        json.append("\",\"entry_id\":").append(entry.id);
+        for (int i = 1; i <= FIELDS; i++) {
+            if (field == 0 || field == i) {
+                json.append(",\"field").append(i).append("\":");
+                appendString(json, entry.fields[i - 1]);
+            }
+        }
+        if (status) {
+            json.append(",\"status\":");
+            appendString(json, entry.status);
+        }
+        if (location) {
+            json.append(",\"latitude\":");
+            appendString(json, entry.latitude);
+            json.append(",\"longitude\":");
+            appendString(json, entry.longitude);
+            json.append(",\"elevation\":");
+            appendString(json, entry.elevation);
+        }
+        json.append('}');
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static String string(JsonObject object, String name) {
+        JsonElement element = object.get(name);
+        return (element == null || element.isJsonNull()) ? null : element.getAsString();
+    }
+
+    /**
+     * Decode a query string or form body.
+     */
+    private static Map<String, String> decode(String encoded) {
+        Map<String, String> parameters = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : encoded.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = (equals < 0) ? pair : pair.substring(0, equals);
+            String value = (equals < 0) ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test {@link Aggregator}. These tests do not require a ThingSpeak server.
+ */
+public class AggregatorTest {
+
+    private static Entry entry(long seconds, String field1, String field2) {
+        Entry entry = new Entry();
+        entry.setCreated(new Date(seconds * 1000));
+        entry.setField(1, field1);
+        entry.setField(2, field2);
+        return entry;
+    }
+
+    @Test
+    public void testWindows() throws Exception {
+        System.out.println("testWindows");
+        List<Aggregator.Window> windows = new ArrayList<>();
+        Aggregator aggregator = new Aggregator(90, TimeUnit.SECONDS, true, windows::add);
+        for (int i = 0; i < 10; i++) {
+            aggregator.add(entry(i * 10, String.valueOf(i + 1), null));
+        }
+        aggregator.add(entry(95, "100", "x"));
+        aggregator.add(entry(400, "-1", "2.5"));
+        aggregator.flush();
+
+        assertEquals(3, windows.size());
+        Aggregator.Window first = windows.get(0);
+        assertEquals(new Date(0), first.getStart());
+        assertEquals(new Date(90000), first.getEnd());
+        assertEquals(9, first.getCount(1));
+        assertEquals(45.0, first.getSum(1), 0.0);
+        assertEquals(5.0, first.getMean(1), 0.0);
+        assertEquals(1.0, first.getMin(1), 0.0);
+        assertEquals(9.0, first.getMax(1), 0.0);
+        assertEquals(5.0, first.getMedian(1), 0.0);
+        assertEquals(8.2, first.getPercentile(1, 90), 1e-9);
+        assertEquals(0, first.getCount(2));
+        assertTrue(Double.isNaN(first.getMean(2)));
+
+        Aggregator.Window second = windows.get(1);
+        assertEquals(new Date(90000), second.getStart());
+        assertEquals(2, second.getCount(1));
+        assertEquals(55.0, second.getMedian(1), 0.0);
+        assertEquals(0, second.getCount(2));
+
+        assertEquals(new Date(360000), windows.get(2).getStart());
+        assertEquals(2.5, windows.get(2).getMax(2), 0.0);
+    }
+
+    @Test
+    public void testLateEntries() throws Exception {
+        System.out.println("testLateEntries");
+        List<Aggregator.Window> windows = new ArrayList<>();
+        Aggregator aggregator = new Aggregator(1, TimeUnit.MINUTES, false, windows::add);
+        aggregator.add(entry(70, "1", null));
+        aggregator.add(entry(10, "1", null));
+        aggregator.add(entry(130, "1", null));
+        aggregator.add(entry(100, "1", null));
+        aggregator.flush();
+        assertEquals(2, windows.size());
+        assertEquals(2, aggregator.getLateEntries());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPercentilesDisabled() throws Exception {
+        System.out.println("testPercentilesDisabled");
+        List<Aggregator.Window> windows = new ArrayList<>();
+        Aggregator aggregator = new Aggregator(1, TimeUnit.MINUTES, false, windows::add);
+        aggregator.add(entry(0, "1", null));
+        aggregator.flush();
+        windows.get(0).getMedian(1);
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test retries and overflow in {@link BatchingChannelWriter}, using a
+ * transport which can be made to fail. These tests do not require a
+ * ThingSpeak server.
+ */
+public class BatchingChannelWriterTest {
+
+    private static class FlakyTransport implements HttpTransport {
+
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger entries = new AtomicInteger();
+        private final List<Long> times = new CopyOnWriteArrayList<>();
+        private volatile boolean failing = true;
+
+        @Override
+        public TransportResponse execute(TransportRequest request) throws IOException {
+            requests.incrementAndGet();
+            times.add(System.currentTimeMillis());
+            if (failing) {
+                return new TransportResponse(500, new ByteArrayInputStream(new byte[0]));
+            }
+            entries.addAndGet(request.getJson().split("\"field1\"").length - 1);
+            return new TransportResponse(202, new ByteArrayInputStream("{\"success\":true}".getBytes(StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        public CompletableFuture<TransportResponse> executeAsync(TransportRequest request) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static Entry entry(int value) {
+        Entry entry = new Entry();
+        entry.setField(1, value);
+        return entry;
+    }
+
+    @Test
+    public void testBackoff() throws Exception {
+        System.out.println("testBackoff");
+        FlakyTransport transport = new FlakyTransport();
+        Channel channel = new Channel(1, "WRITE");
+        channel.setTransport(transport);
+        BatchingChannelWriter writer = new BatchingChannelWriter(channel, 2, 10, TimeUnit.SECONDS);
+        writer.setUpdateInterval(0, TimeUnit.MILLISECONDS);
+        writer.setCapacity(10);
+        writer.setOverflowPolicy(BatchingChannelWriter.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 100; i++) {
+            writer.write(entry(i));
+            Thread.sleep(2);
+        }
+        /* one failed attempt, then nothing until the backoff expires */
+        assertEquals(1, transport.requests.get());
+        assertTrue(writer.pending() <= 12);
+        assertEquals(100 - writer.pending(), writer.getDroppedCount());
+
+        transport.failing = false;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.pending() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, writer.pending());
+        assertEquals(100 - writer.getDroppedCount(), transport.entries.get());
+        writer.close();
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        System.out.println("testDropNewest");
+        FlakyTransport transport = new FlakyTransport();
+        Channel channel = new Channel(1, "WRITE");
+        channel.setTransport(transport);
+        BatchingChannelWriter writer = new BatchingChannelWriter(channel, 5, 10, TimeUnit.SECONDS);
+        writer.setUpdateInterval(0, TimeUnit.MILLISECONDS);
+        writer.setCapacity(5);
+        writer.setOverflowPolicy(BatchingChannelWriter.OverflowPolicy.DROP_NEWEST);
+        transport.failing = false;
+        for (int i = 0; i < 4; i++) {
+            writer.write(entry(i));
+        }
+        transport.failing = true;
+        writer.write(entry(4));
+        Thread.sleep(200);
+        for (int i = 5; i < 20; i++) {
+            writer.write(entry(i));
+        }
+        transport.failing = false;
+        writer.close();
+        assertEquals(5, transport.entries.get());
+        assertEquals(15, writer.getDroppedCount());
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        System.out.println("testBlock");
+        FlakyTransport transport = new FlakyTransport();
+        transport.failing = false;
+        Channel channel = new Channel(1, "WRITE");
+        channel.setTransport(transport);
+        BatchingChannelWriter writer = new BatchingChannelWriter(channel, 2, 10, TimeUnit.SECONDS);
+        writer.setUpdateInterval(1, TimeUnit.MILLISECONDS);
+        writer.setCapacity(4);
+        writer.setOverflowPolicy(BatchingChannelWriter.OverflowPolicy.BLOCK);
+        for (int i = 0; i < 200; i++) {
+            writer.write(entry(i));
+        }
+        writer.close();
+        assertEquals(0, writer.getDroppedCount());
+        assertEquals(200, transport.entries.get());
+    }
+
+    @Test
+    public void testDefaultPolicyBlocks() throws Exception {
+        System.out.println("testDefaultPolicyBlocks");
+        FlakyTransport transport = new FlakyTransport();
+        Channel channel = new Channel(1, "WRITE");
+        channel.setTransport(transport);
+        final BatchingChannelWriter writer = new BatchingChannelWriter(channel, 2, 10, TimeUnit.MILLISECONDS);
+        writer.setUpdateInterval(0, TimeUnit.MILLISECONDS);
+        writer.setCapacity(2);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 5; i++) {
+                    writer.write(entry(i));
+                }
+            }
+        });
+        producer.start();
+        producer.join(500);
+        assertTrue(producer.isAlive());
+        assertEquals(0, writer.getDroppedCount());
+
+        transport.failing = false;
+        producer.join(10000);
+        assertFalse(producer.isAlive());
+        writer.close();
+        assertEquals(0, writer.getDroppedCount());
+        assertEquals(5, transport.entries.get());
+    }
+
+    @Test
+    public void testUpdateInterval() throws Exception {
+        System.out.println("testUpdateInterval");
+        FlakyTransport transport = new FlakyTransport();
+        transport.failing = false;
+        Channel channel = new Channel(1, "WRITE");
+        channel.setTransport(transport);
+        BatchingChannelWriter writer = new BatchingChannelWriter(channel, 2, 10, TimeUnit.SECONDS);
+        writer.setUpdateInterval(200, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 8; i++) {
+            writer.write(entry(i));
+        }
+        writer.close();
+        assertEquals(8, transport.entries.get());
+        assertEquals(4, transport.times.size());
+        for (int i = 1; i < transport.times.size(); i++) {
+            assertTrue(transport.times.get(i) - transport.times.get(i - 1) >= 190);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import java.io.StringReader;
+import java.util.Date;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test parsing of {@link ColumnarFeed}. These tests do not require a
+ * ThingSpeak server.
+ */
+public class ColumnarFeedTest {
+
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(Date.class, new TimestampCodec.DateAdapter())
+            .registerTypeAdapterFactory(ColumnarFeed.JsonAdapter.FACTORY)
+            .create();
+
+    private ColumnarFeed parse(String json) {
+        return gson.fromJson(new JsonReader(new StringReader(json)), ColumnarFeed.class);
+    }
+
+    @Test
+    public void testParseFeed() throws Exception {
+        System.out.println("testParseFeed");
+        ColumnarFeed feed = parse("{\"channel\":{\"id\":9,\"name\":\"Test\",\"field1\":\"Temp\","
+                + "\"field2\":null,\"last_entry_id\":3},\"feeds\":["
+                + "{\"created_at\":\"2014-01-01T00:00:01Z\",\"entry_id\":1,\"field1\":\"21.5\",\"field3\":\"x\"},"
+                + "{\"created_at\":\"2014-01-01T00:00:02Z\",\"entry_id\":2,\"field1\":null,\"field2\":\"-4\"},"
+                + "{\"created_at\":\"2014-01-01T00:00:03Z\",\"entry_id\":3,\"field1\":\"\",\"status\":\"ok\"}]}");
+        assertEquals(Integer.valueOf(9), feed.getChannelId());
+        assertEquals("Test", feed.getChannelName());
+        assertEquals("Temp", feed.getFieldName(1));
+        assertEquals(Integer.valueOf(3), feed.getChannelLastEntryId());
+        assertEquals(3, feed.size());
+        assertArrayEquals(new int[]{1, 2, 3}, feed.getEntryIds());
+        assertArrayEquals(new long[]{1388534401000L, 1388534402000L, 1388534403000L}, feed.getTimestamps());
+
+        assertTrue(feed.hasValue(1, 0));
+        assertEquals(21.5, feed.getValue(1, 0), 0.0);
+        assertFalse(feed.hasValue(1, 1));
+        assertFalse(feed.hasValue(1, 2));
+        assertEquals(-4.0, feed.getValue(2, 1), 0.0);
+        assertFalse(feed.hasValue(3, 0));
+        assertTrue(Double.isNaN(feed.getValue(8, 0)));
+    }
+
+    @Test
+    public void testParseLargeFeed() throws Exception {
+        System.out.println("testParseLargeFeed");
+        StringBuilder json = new StringBuilder("{\"channel\":{\"id\":1},\"feeds\":[");
+        for (int i = 1; i <= 8000; i++) {
+            if (i > 1) {
+                json.append(',');
+            }
+            json.append("{\"created_at\":\"2014-01-01T00:00:00Z\",\"entry_id\":").append(i);
+            if (i % 3 != 0) {
+                json.append(",\"field1\":\"").append(i).append("\"");
+            }
+            json.append("}");
+        }
+        json.append("]}");
+        ColumnarFeed feed = parse(json.toString());
+        assertEquals(8000, feed.size());
+        double[] values = feed.getValues(1);
+        for (int row = 0; row < feed.size(); row++) {
+            int id = row + 1;
+            assertEquals(id % 3 != 0, feed.hasValue(1, row));
+            if (id % 3 != 0) {
+                assertEquals(id, values[row], 0.0);
+            } else {
+                assertTrue(Double.isNaN(values[row]));
+            }
+        }
+    }
+
+    @Test
+    public void testWriteFeed() throws Exception {
+        System.out.println("testWriteFeed");
+        ColumnarFeed feed = parse("{\"channel\":{\"id\":9,\"name\":\"Test\",\"field1\":\"Temp\","
+                + "\"created_at\":\"2014-01-01T00:00:00Z\",\"last_entry_id\":2},\"feeds\":["
+                + "{\"created_at\":\"2014-01-01T00:00:01Z\",\"entry_id\":1,\"field1\":\"21.5\"},"
+                + "{\"created_at\":\"2014-01-01T00:00:02Z\",\"entry_id\":2,\"field2\":\"-4\"}]}");
+        ColumnarFeed copy = parse(gson.toJson(feed));
+        assertEquals(Integer.valueOf(9), copy.getChannelId());
+        assertEquals("Test", copy.getChannelName());
+        assertEquals("Temp", copy.getFieldName(1));
+        assertEquals(feed.getChannelCreationDate(), copy.getChannelCreationDate());
+        assertEquals(Integer.valueOf(2), copy.getChannelLastEntryId());
+        assertArrayEquals(feed.getEntryIds(), copy.getEntryIds());
+        assertArrayEquals(feed.getTimestamps(), copy.getTimestamps());
+        assertEquals(21.5, copy.getValue(1, 0), 0.0);
+        assertFalse(copy.hasValue(2, 0));
+        assertFalse(copy.hasValue(1, 1));
+        assertEquals(-4.0, copy.getValue(2, 1), 0.0);
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import java.io.StringReader;
+import java.util.Date;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test parsing of feeds with {@link Entry.JsonAdapter}. These tests do not
+ * require a ThingSpeak server.
+ */
+public class EntryJsonAdapterTest {
+
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(Date.class, new TimestampCodec.DateAdapter())
+            .registerTypeAdapterFactory(Entry.JsonAdapter.FACTORY)
+            .create();
+
+    @Test
+    public void testParseFeed() throws Exception {
+        System.out.println("testParseFeed");
+        String json = "{\"channel\":{\"id\":9,\"name\":\"Test\",\"field1\":\"Temp\","
+                + "\"created_at\":\"2014-01-01T00:00:00Z\",\"last_entry_id\":2},"
+                + "\"feeds\":[{\"created_at\":\"2014-01-01T00:00:01Z\",\"entry_id\":1,"
+                + "\"field1\":\"21.5\",\"latitude\":\"49.25\",\"longitude\":\"\",\"unknown\":[1,{}]},"
+                + "{\"created_at\":\"2014-01-01T00:00:02Z\",\"entry_id\":2,\"field1\":null,"
+                + "\"field2\":7,\"status\":\"ok\"}]}";
+        Feed feed = gson.fromJson(new JsonReader(new StringReader(json)), Feed.class);
+        assertEquals(Integer.valueOf(9), feed.getChannelId());
+        assertEquals("Temp", feed.getFieldName(1));
+        assertEquals(2, feed.getEntryList().size());
+
+        Entry first = feed.getEntry(1);
+        assertEquals(new Date(1388534401000L), first.getCreated());
+        assertEquals("21.5", first.getField(1));
+        assertEquals(49.25, first.getLatitude(), 0.0);
+        assertNull(first.getLongitude());
+
+        Entry last = feed.getChannelLastEntry();
+        assertNull(last.getField(1));
+        assertEquals("7", last.getField(2));
+        assertEquals("ok", last.getStatus());
+    }
+
+    @Test
+    public void testParseLargeFeed() throws Exception {
+        System.out.println("testParseLargeFeed");
+        StringBuilder json = new StringBuilder("{\"channel\":{\"id\":1},\"feeds\":[");
+        for (int i = 1; i <= 8000; i++) {
+            if (i > 1) {
+                json.append(',');
+            }
+            json.append("{\"created_at\":\"2014-01-01T00:00:00Z\",\"entry_id\":").append(i)
+                    .append(",\"field1\":\"").append(i).append("\"}");
+        }
+        json.append("]}");
+        Feed feed = gson.fromJson(new JsonReader(new StringReader(json.toString())), Feed.class);
+        assertEquals(8000, feed.getEntryList().size());
+        assertEquals("8000", feed.getEntryList().get(7999).getField(1));
+
+        double[] values = feed.fieldValues(1);
+        assertEquals(8000, values.length);
+        assertEquals(8000.0, values[7999], 0.0);
+        assertTrue(Double.isNaN(feed.fieldValues(2)[0]));
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.util.Date;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test setting values in an {@link Entry} for an update. These tests do not
+ * require a ThingSpeak server.
+ */
+public class EntryTest {
+
+    @Test
+    public void testNumericFields() throws Exception {
+        System.out.println("testNumericFields");
+        Entry entry = new Entry();
+        entry.setField(1, 21.5);
+        entry.setField(2, 20.0);
+        entry.setField(3, -7L);
+        entry.setField(4, 1.5e20);
+        assertEquals("21.5", entry.getField(1));
+        assertEquals("20", entry.getField(2));
+        assertEquals("-7", entry.getField(3));
+        assertEquals("1.5E20", entry.getField(4));
+        assertEquals("21.5", entry.getUpdateMap().get("field1"));
+
+        entry.setField(1, "text");
+        assertEquals("text", entry.getField(1));
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        System.out.println("testReset");
+        Entry entry = new Entry();
+        entry.setField(1, 1.0);
+        entry.setField(2, "two");
+        entry.setStatus("status");
+        entry.setCreated(new Date());
+        entry.reset();
+        assertTrue(entry.getUpdateMap().isEmpty());
+        assertNull(entry.getField(1));
+        assertNull(entry.getStatus());
+        assertNull(entry.getCreated());
+
+        entry.setField(3, 3L);
+        assertEquals(1, entry.getUpdateMap().size());
+        assertEquals("3", entry.getUpdateMap().get("field3"));
+    }
+
+    @Test
+    public void testUpdateJson() throws Exception {
+        System.out.println("testUpdateJson");
+        Entry entry = new Entry();
+        entry.setField(1, 21.5);
+        entry.setField(2, "say \"hi\"\n");
+        entry.setField(3, (String) null);
+        entry.setLatitude(49.25);
+        entry.setCreated(new Date(0));
+        StringBuilder json = new StringBuilder();
+        entry.appendUpdateJson(json, date -> "epoch");
+        JsonObject update = new JsonParser().parse(json.toString()).getAsJsonObject();
+        assertEquals(4, update.entrySet().size());
+        assertEquals("21.5", update.get("field1").getAsString());
+        assertEquals("say \"hi\"\n", update.get("field2").getAsString());
+        assertEquals(49.25, update.get("lat").getAsDouble(), 0.0);
+        assertEquals("epoch", update.get("created_at").getAsString());
+
+        StringBuilder empty = new StringBuilder();
+        new Entry().appendUpdateJson(empty, date -> "");
+        assertEquals("{}", empty.toString());
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        System.out.println("testMerge");
+        Entry older = new Entry();
+        older.setField(1, "a");
+        older.setField(2, 2.0);
+        Entry newer = new Entry();
+        newer.setField(2, 3.5);
+        newer.setStatus("new");
+        older.merge(newer);
+        assertEquals("a", older.getField(1));
+        assertEquals("3.5", older.getField(2));
+        assertEquals("new", older.getStatus());
+    }
+
+    @Test
+    public void testNumericAccessors() throws Exception {
+        System.out.println("testNumericAccessors");
+        Entry entry = new Entry();
+        entry.setField(1, "21.5");
+        entry.setField(2, "n/a");
+        entry.setField(3, 7L);
+        assertEquals(21.5, entry.getFieldAsDouble(1), 0.0);
+        assertEquals(21, entry.getFieldAsLong(1));
+        assertTrue(Double.isNaN(entry.getFieldAsDouble(2)));
+        assertEquals(Long.MIN_VALUE, entry.getFieldAsLong(2));
+        assertEquals(7.0, entry.getFieldAsDouble(3), 0.0);
+        assertTrue(Double.isNaN(entry.getFieldAsDouble(4)));
+
+        entry.setField(1, "-3");
+        assertEquals(-3.0, entry.getFieldAsDouble(1), 0.0);
+        entry.reset();
+        assertTrue(Double.isNaN(entry.getFieldAsDouble(3)));
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import java.io.StringReader;
+import java.util.Date;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test {@link Feed} lookups by id and date. These tests do not require a
+ * ThingSpeak server.
+ */
+public class FeedIndexTest {
+
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(Date.class, new TimestampCodec.DateAdapter())
+            .registerTypeAdapterFactory(Entry.JsonAdapter.FACTORY)
+            .create();
+
+    /**
+     * Build a feed with entries 1 to count, one every 10 seconds starting at
+     * the epoch.
+     */
+    private Feed feed(int count) {
+        StringBuilder json = new StringBuilder("{\"channel\":{\"id\":1,\"last_entry_id\":")
+                .append(count).append("},\"feeds\":[");
+        for (int i = 1; i <= count; i++) {
+            if (i > 1) {
+                json.append(',');
+            }
+            long seconds = (i - 1) * 10;
+            json.append("{\"created_at\":\"1970-01-01T")
+                    .append(String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60))
+                    .append("Z\",\"entry_id\":").append(i).append('}');
+        }
+        json.append("]}");
+        return gson.fromJson(new JsonReader(new StringReader(json.toString())), Feed.class);
+    }
+
+    @Test
+    public void testGetEntry() throws Exception {
+        System.out.println("testGetEntry");
+        Feed feed = feed(5000);
+        for (int id = 1; id <= 5000; id++) {
+            assertEquals(Integer.valueOf(id), feed.getEntry(id).getEntryId());
+        }
+        assertEquals(Integer.valueOf(5000), feed.getChannelLastEntry().getEntryId());
+    }
+
+    @Test(expected = ThingSpeakException.class)
+    public void testGetMissingEntry() throws Exception {
+        System.out.println("testGetMissingEntry");
+        feed(10).getEntry(11);
+    }
+
+    @Test
+    public void testGetEntriesBetween() throws Exception {
+        System.out.println("testGetEntriesBetween");
+        Feed feed = feed(100);
+        List<Entry> entries = feed.getEntriesBetween(new Date(95000), new Date(200000));
+        assertEquals(11, entries.size());
+        assertEquals(Integer.valueOf(11), entries.get(0).getEntryId());
+        assertEquals(Integer.valueOf(21), entries.get(10).getEntryId());
+        assertTrue(feed.getEntriesBetween(new Date(200000), new Date(100000)).isEmpty());
+        assertEquals(100, feed.getEntriesBetween(new Date(0), new Date(Long.MAX_VALUE)).size());
+    }
+
+    @Test
+    public void testFloorAndCeiling() throws Exception {
+        System.out.println("testFloorAndCeiling");
+        Feed feed = feed(100);
+        assertEquals(Integer.valueOf(10), feed.getFloorEntry(new Date(95000)).getEntryId());
+        assertEquals(Integer.valueOf(11), feed.getCeilingEntry(new Date(95000)).getEntryId());
+        assertEquals(Integer.valueOf(11), feed.getFloorEntry(new Date(100000)).getEntryId());
+        assertEquals(Integer.valueOf(11), feed.getCeilingEntry(new Date(100000)).getEntryId());
+        assertNull(feed.getFloorEntry(new Date(-1)));
+        assertNull(feed.getCeilingEntry(new Date(990001)));
+    }
+
+    @Test
+    public void testIndexFollowsEntryList() throws Exception {
+        System.out.println("testIndexFollowsEntryList");
+        Feed feed = feed(10);
+        assertEquals(Integer.valueOf(10), feed.getEntry(10).getEntryId());
+        feed.getEntryList().remove(9);
+        assertEquals(9, feed.getEntriesBetween(new Date(0), new Date(Long.MAX_VALUE)).size());
+        assertEquals(Integer.valueOf(9), feed.getFloorEntry(new Date(Long.MAX_VALUE)).getEntryId());
+    }
+}
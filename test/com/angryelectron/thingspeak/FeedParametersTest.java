@@ -0,0 +1,114 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Test encoding of {@link FeedParameters}. These tests do not require a
+ * ThingSpeak server.
+ */
+public class FeedParametersTest {
+
+    @Test
+    public void testCacheKey() throws Exception {
+        System.out.println("testCacheKey");
+        FeedParameters first = new FeedParameters();
+        first.status(true);
+        first.results(100);
+        first.min(1.5);
+        ImmutableFeedParameters second = new FeedParameters.Builder()
+                .min(1.5)
+                .results(100)
+                .status(true)
+                .build();
+        assertEquals("min=1.5&results=100&status=true", first.getQueryString());
+        assertEquals(first.cacheKey(), second.cacheKey());
+        assertEquals(first.getQueryString(), second.getQueryString());
+
+        first.round(2);
+        assertFalse(first.cacheKey().equals(second.cacheKey()));
+        assertEquals("", new FeedParameters.Builder().build().cacheKey());
+    }
+
+    @Test
+    public void testImmutable() throws Exception {
+        System.out.println("testImmutable");
+        FeedParameters.Builder builder = new FeedParameters.Builder().results(10);
+        ImmutableFeedParameters options = builder.build();
+        builder.results(20);
+        assertEquals("results=10", options.getQueryString());
+        ImmutableFeedParameters copy = options.toBuilder().status(true).build();
+        assertEquals("results=10", options.getQueryString());
+        assertEquals("results=10&status=true", copy.getQueryString());
+    }
+
+    @Test
+    public void testNullValues() throws Exception {
+        System.out.println("testNullValues");
+        FeedParameters options = new FeedParameters();
+        try {
+            options.status(null);
+            fail("status(null) accepted");
+        } catch (IllegalArgumentException ex) {
+            /* expected */
+        }
+        try {
+            options.start(null);
+            fail("start(null) accepted");
+        } catch (IllegalArgumentException ex) {
+            /* expected */
+        }
+        try {
+            new FeedParameters.Builder().average(null);
+            fail("average(null) accepted");
+        } catch (IllegalArgumentException ex) {
+            /* expected */
+        }
+        assertEquals("", options.getQueryString());
+    }
+
+    @Test
+    public void testBuilderCopy() throws Exception {
+        System.out.println("testBuilderCopy");
+        FeedParameters mutable = new FeedParameters();
+        mutable.status(true);
+        ImmutableFeedParameters copy = new FeedParameters.Builder(mutable)
+                .utcPeriod(0, 60000)
+                .build();
+        mutable.results(5);
+        assertEquals("end=1970-01-01+00%3A01%3A00&start=1970-01-01+00%3A00%3A00&status=true&timezone=Etc%2FUTC",
+                copy.getQueryString());
+        assertEquals("results=5&status=true", mutable.getQueryString());
+    }
+
+    @Test
+    public void testTransportRequest() throws Exception {
+        System.out.println("testTransportRequest");
+        ImmutableFeedParameters options = new FeedParameters.Builder().results(10).status(true).build();
+        TransportRequest request = TransportRequest.get("http://localhost/feeds.json")
+                .query(options.getQueryString())
+                .parameter("key", "read key");
+        assertEquals("results=10&status=true&key=read+key", request.encodeParameters());
+    }
+}
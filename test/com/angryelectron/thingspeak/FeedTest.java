@@ -22,6 +22,8 @@ package com.angryelectron.thingspeak;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -29,6 +31,7 @@ import org.junit.AfterClass;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -315,5 +318,35 @@ public class FeedTest {
         }
         
     }
-        
+
+    @Test
+    public void testFeedSync() throws Exception {
+        System.out.println("testFeedSync");
+        Channel publicChannel = new Channel(TestChannelSettings.publicChannelID, TestChannelSettings.publicChannelWriteKey);
+        publicChannel.setUrl(TestChannelSettings.server);
+        FeedSync sync = new FeedSync(10);
+        List<Entry> entries = sync.sync(publicChannel);
+        assertNotNull(entries);
+        assertEquals(publicChannel.getChannelFeed().getChannelLastEntryId(), sync.getLastEntryId(publicChannel));
+        assertTrue(sync.sync(publicChannel).isEmpty());
+        assertEquals(entries, sync.getEntries(publicChannel));
+    }
+
+    @Test
+    public void testHistoryExporter() throws Exception {
+        System.out.println("testHistoryExporter");
+        Channel publicChannel = new Channel(TestChannelSettings.publicChannelID, TestChannelSettings.publicChannelWriteKey);
+        publicChannel.setUrl(TestChannelSettings.server);
+        HistoryExporter exporter = new HistoryExporter(publicChannel);
+        exporter.setSliceLength(1, TimeUnit.HOURS);
+        final List<Entry> entries = new ArrayList<>();
+        Date end = new Date();
+        Date start = new Date(end.getTime() - TimeUnit.DAYS.toMillis(1));
+        long count = exporter.export(start, end, entries::add);
+        assertEquals(entries.size(), count);
+        for (int i = 1; i < entries.size(); i++) {
+            assertTrue(!entries.get(i).getCreated().before(entries.get(i - 1).getCreated()));
+        }
+    }
+
 }
@@ -0,0 +1,130 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the on-disk journal used by {@link WriteAheadQueue}. These tests do not
+ * require a ThingSpeak server.
+ */
+public class JournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] b) {
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testRecordsSurviveReopen() throws Exception {
+        System.out.println("testRecordsSurviveReopen");
+        File dir = folder.newFolder();
+        Journal journal = new Journal(dir, 1024, 100);
+        for (int i = 0; i < 50; i++) {
+            journal.append(bytes("record-" + i));
+        }
+        journal.remove(10);
+
+        Journal reopened = new Journal(dir, 1024, 100);
+        assertEquals(40, reopened.size());
+        List<byte[]> records = reopened.peek(100);
+        assertEquals(40, records.size());
+        assertEquals("record-10", string(records.get(0)));
+        assertEquals("record-49", string(records.get(39)));
+
+        reopened.append(bytes("record-50"));
+        reopened.remove(40);
+        assertEquals("record-50", string(reopened.peek(1).get(0)));
+    }
+
+    @Test
+    public void testDeferredFlush() throws Exception {
+        System.out.println("testDeferredFlush");
+        File dir = folder.newFolder();
+        Journal journal = new Journal(dir, 1024, 100);
+        for (int i = 0; i < 100; i++) {
+            journal.append(bytes("record-" + i), false);
+        }
+        journal.force();
+
+        /* records span several segments, each flushed when it filled up */
+        Journal reopened = new Journal(dir, 1024, 100);
+        List<byte[]> records = reopened.peek(200);
+        assertEquals(100, records.size());
+        assertEquals("record-99", string(records.get(99)));
+    }
+
+    @Test
+    public void testConsumedSegmentsAreDeleted() throws Exception {
+        System.out.println("testConsumedSegmentsAreDeleted");
+        File dir = folder.newFolder();
+        Journal journal = new Journal(dir, 1024, 100);
+        for (int i = 0; i < 200; i++) {
+            journal.append(bytes("record-" + i));
+        }
+        journal.remove(200);
+        assertEquals(0, journal.size());
+        assertEquals(2, dir.listFiles().length);
+    }
+
+    @Test
+    public void testFullJournalDiscardsOldest() throws Exception {
+        System.out.println("testFullJournalDiscardsOldest");
+        File dir = folder.newFolder();
+        Journal journal = new Journal(dir, 1024, 2);
+        for (int i = 0; i < 500; i++) {
+            journal.append(bytes("record-" + i));
+        }
+        List<byte[]> records = journal.peek(Integer.MAX_VALUE);
+        assertEquals(journal.size(), records.size());
+        assertEquals("record-499", string(records.get(records.size() - 1)));
+    }
+
+    @Test
+    public void testEntryRecord() throws Exception {
+        System.out.println("testEntryRecord");
+        Entry entry = new Entry();
+        entry.setField(1, "value1");
+        entry.setField(8, "value8");
+        entry.setLatitude(49.25);
+        entry.setStatus("status");
+        entry.setCreated(new Date(1400000000000L));
+        Entry decoded = WriteAheadQueue.decode(WriteAheadQueue.encode(entry));
+        assertEquals("value1", decoded.getField(1));
+        assertEquals("value8", decoded.getField(8));
+        assertEquals(49.25, decoded.getLatitude(), 0.0);
+        assertEquals("status", decoded.getStatus());
+        assertEquals(entry.getCreated(), decoded.getCreated());
+        assertEquals(entry.getUpdateMap().keySet(), decoded.getUpdateMap().keySet());
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test {@link SingleFlight}. These tests do not require a ThingSpeak server.
+ */
+public class SingleFlightTest {
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void testConcurrentCallsShareResult() throws Exception {
+        System.out.println("testConcurrentCallsShareResult");
+        final SingleFlight flight = new SingleFlight();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            results.add(executor.submit(() -> flight.execute("key", () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                await(release);
+                return new Object();
+            })));
+            started.await();
+            for (int i = 0; i < 7; i++) {
+                results.add(executor.submit(() -> flight.execute("key", () -> {
+                    calls.incrementAndGet();
+                    return new Object();
+                })));
+            }
+            /* give the other callers time to join the request in flight */
+            Thread.sleep(200);
+            release.countDown();
+            Object first = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<Object> result : results) {
+                assertSame(first, result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCompletedCallsAreNotReused() throws Exception {
+        System.out.println("testCompletedCallsAreNotReused");
+        SingleFlight flight = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+        flight.execute("key", () -> calls.incrementAndGet());
+        flight.execute("key", () -> calls.incrementAndGet());
+        flight.execute("other", () -> calls.incrementAndGet());
+        assertEquals(3, calls.get());
+    }
+
+    @Test(expected = ThingSpeakException.class)
+    public void testErrorsAreShared() throws Exception {
+        System.out.println("testErrorsAreShared");
+        final SingleFlight flight = new SingleFlight();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            executor.submit(() -> flight.execute("key", () -> {
+                started.countDown();
+                await(release);
+                throw new ThingSpeakException("failed");
+            }));
+            started.await();
+            executor.submit(() -> {
+                Thread.sleep(200);
+                release.countDown();
+                return null;
+            });
+            flight.execute("key", () -> null);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAsyncCallThatThrows() throws Exception {
+        System.out.println("testAsyncCallThatThrows");
+        SingleFlight flight = new SingleFlight();
+        CompletableFuture<Integer> failed = flight.executeAsync("key", () -> {
+            throw new IllegalStateException("failed");
+        });
+        assertTrue(failed.isCompletedExceptionally());
+        CompletableFuture<Integer> next = flight.executeAsync("key", () -> CompletableFuture.completedFuture(1));
+        assertEquals(Integer.valueOf(1), next.get());
+    }
+}
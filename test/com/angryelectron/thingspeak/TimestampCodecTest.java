@@ -0,0 +1,97 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Test {@link TimestampCodec} against SimpleDateFormat. These tests do not
+ * require a ThingSpeak server.
+ */
+public class TimestampCodecTest {
+
+    @Test
+    public void testParse() throws Exception {
+        System.out.println("testParse");
+        assertEquals(0L, TimestampCodec.parse("1970-01-01T00:00:00Z"));
+        assertEquals(1391199300000L, TimestampCodec.parse("2014-01-31T20:15:00Z"));
+        assertEquals(1391199300000L, TimestampCodec.parse("2014-01-31T12:15:00-08:00"));
+        assertEquals(1391199300000L, TimestampCodec.parse("2014-01-31T21:15:00+0100"));
+        assertEquals(1391199300000L, TimestampCodec.parse("2014-01-31T22:15:00+02"));
+        assertEquals(1391199300250L, TimestampCodec.parse("2014-01-31 20:15:00.25Z"));
+        assertEquals(1391199300000L, TimestampCodec.parse("2014-01-31T20:15:00"));
+        assertEquals(951782400000L, TimestampCodec.parse("2000-02-29T00:00:00Z"));
+        assertEquals(-86400000L, TimestampCodec.parse("1969-12-31T00:00:00Z"));
+    }
+
+    @Test
+    public void testParseInvalid() throws Exception {
+        System.out.println("testParseInvalid");
+        String[] invalid = {"", "2014-01-31", "2014-13-01T00:00:00Z",
+            "2014-02-29T00:00:00Z", "2014-01-31T24:00:00Z", "2014-01-31X20:15:00Z",
+            "2014-01-31T20:15:00+", "2014-01-31T20:15:00Zulu", "2014-01-31T20:15:00.Z",
+            "2014-01-3aT20:15:00Z"};
+        for (String text : invalid) {
+            try {
+                TimestampCodec.parse(text);
+                fail("Parsed " + text);
+            } catch (IllegalArgumentException ex) {
+                /* expected */
+            }
+        }
+    }
+
+    @Test
+    public void testFormat() throws Exception {
+        System.out.println("testFormat");
+        assertEquals("1970-01-01T00:00:00Z", TimestampCodec.format(0L));
+        assertEquals("2014-01-31T20:15:00Z", TimestampCodec.format(1391199300999L));
+        assertEquals("1969-12-31T23:59:59Z", TimestampCodec.format(-1L));
+        TimeZone pacific = TimeZone.getTimeZone("America/Vancouver");
+        assertEquals("2014-01-31 12:15:00", TimestampCodec.formatParameter(1391199300000L, pacific));
+        assertEquals("2014-07-31 13:15:00", TimestampCodec.formatParameter(1406837700000L, pacific));
+    }
+
+    @Test
+    public void testMatchesSimpleDateFormat() throws Exception {
+        System.out.println("testMatchesSimpleDateFormat");
+        TimeZone zone = TimeZone.getTimeZone("Australia/Adelaide");
+        SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX");
+        iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+        SimpleDateFormat parameter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        parameter.setTimeZone(zone);
+        SimpleDateFormat local = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX");
+        local.setTimeZone(zone);
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            long millis = (random.nextLong() % 4000000000000L) / 1000 * 1000;
+            Date date = new Date(millis);
+            assertEquals(iso.format(date), TimestampCodec.format(millis));
+            assertEquals(parameter.format(date), TimestampCodec.formatParameter(millis, zone));
+            assertEquals(millis, TimestampCodec.parse(local.format(date)));
+        }
+    }
+}
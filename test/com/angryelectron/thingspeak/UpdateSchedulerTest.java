@@ -0,0 +1,141 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Test retries and closing in {@link UpdateScheduler}, using a transport
+ * which answers every request with a chosen status. These tests do not
+ * require a ThingSpeak server.
+ */
+public class UpdateSchedulerTest {
+
+    private static class StatusTransport implements HttpTransport {
+
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger entries = new AtomicInteger();
+        private volatile int status;
+
+        StatusTransport(int status) {
+            this.status = status;
+        }
+
+        @Override
+        public TransportResponse execute(TransportRequest request) throws IOException {
+            requests.incrementAndGet();
+            if (status != 202) {
+                return new TransportResponse(status, new ByteArrayInputStream(new byte[0]));
+            }
+            entries.addAndGet(request.getJson().split("\"field1\"").length - 1);
+            return new TransportResponse(202, new ByteArrayInputStream("{\"success\":true}".getBytes(StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        public CompletableFuture<TransportResponse> executeAsync(TransportRequest request) {
+            try {
+                return CompletableFuture.completedFuture(execute(request));
+            } catch (IOException ex) {
+                CompletableFuture<TransportResponse> failed = new CompletableFuture<>();
+                failed.completeExceptionally(ex);
+                return failed;
+            }
+        }
+    }
+
+    private static Channel channel(HttpTransport transport) {
+        Channel channel = new Channel(1, "WRITE");
+        channel.setTransport(transport);
+        return channel;
+    }
+
+    private static Entry entry(int value) {
+        Entry entry = new Entry();
+        entry.setField(1, value);
+        return entry;
+    }
+
+    @Test
+    public void testPermanentError() throws Exception {
+        System.out.println("testPermanentError");
+        StatusTransport transport = new StatusTransport(400);
+        Channel channel = channel(transport);
+        UpdateScheduler scheduler = new UpdateScheduler(0, TimeUnit.MILLISECONDS, UpdateScheduler.Mode.BULK, 1);
+        scheduler.submit(channel, entry(1));
+        scheduler.close();
+        assertEquals(1, transport.requests.get());
+        assertEquals(1, scheduler.getDroppedCount());
+        assertEquals(0, scheduler.pending(channel));
+    }
+
+    @Test
+    public void testRetryLimit() throws Exception {
+        System.out.println("testRetryLimit");
+        StatusTransport transport = new StatusTransport(503);
+        Channel channel = channel(transport);
+        UpdateScheduler scheduler = new UpdateScheduler(0, TimeUnit.MILLISECONDS, UpdateScheduler.Mode.BULK, 1);
+        scheduler.setMaxRetries(2);
+        long start = System.currentTimeMillis();
+        scheduler.submit(channel, entry(1));
+        scheduler.submit(channel, entry(2));
+        scheduler.close();
+        /* backoff of 100ms then 200ms between the three attempts */
+        assertEquals(3, transport.requests.get());
+        assertEquals(true, System.currentTimeMillis() - start >= 300);
+        assertEquals(2, scheduler.getDroppedCount());
+    }
+
+    @Test
+    public void testCloseSendsPending() throws Exception {
+        System.out.println("testCloseSendsPending");
+        StatusTransport transport = new StatusTransport(202);
+        Channel channel = channel(transport);
+        UpdateScheduler scheduler = new UpdateScheduler(100, TimeUnit.MILLISECONDS, UpdateScheduler.Mode.BULK, 1);
+        for (int i = 0; i < 2000; i++) {
+            scheduler.submit(channel, entry(i));
+        }
+        scheduler.close();
+        assertEquals(2000, transport.entries.get());
+        assertEquals(0, scheduler.getDroppedCount());
+    }
+
+    @Test
+    public void testCloseTimeout() throws Exception {
+        System.out.println("testCloseTimeout");
+        StatusTransport transport = new StatusTransport(202);
+        Channel channel = channel(transport);
+        UpdateScheduler scheduler = new UpdateScheduler(1, TimeUnit.HOURS, UpdateScheduler.Mode.BULK, 1);
+        scheduler.setCloseTimeout(200, TimeUnit.MILLISECONDS);
+        scheduler.submit(channel, entry(1));
+        Thread.sleep(100);
+        scheduler.submit(channel, entry(2));
+        scheduler.submit(channel, entry(3));
+        scheduler.close();
+        assertEquals(1, transport.entries.get());
+        assertEquals(2, scheduler.getDroppedCount());
+    }
+}
@@ -17,9 +17,14 @@
  */
 package com.angryelectron.thingspeak;
 
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
+import static org.junit.Assert.assertEquals;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -57,6 +62,50 @@ public class UpdateTest {
         pauseForAPIRateLimit();
     }
 
+    @Test
+    public void testUpdateChannelAsync() throws Exception {
+        System.out.println("testUpdateChannelAsync");
+        Channel channel = new Channel(TestChannelSettings.publicChannelID, TestChannelSettings.publicChannelWriteKey);
+        channel.setUrl(TestChannelSettings.server);
+        Integer result = channel.updateAsync(new Entry()).get();
+        assert (result != 0);
+        pauseForAPIRateLimit();
+    }
+
+    @Test
+    public void testBulkUpdate() throws Exception {
+        System.out.println("testBulkUpdate");
+        Channel channel = new Channel(TestChannelSettings.publicChannelID, TestChannelSettings.publicChannelWriteKey);
+        channel.setUrl(TestChannelSettings.server);
+        long now = System.currentTimeMillis();
+        Entry first = new Entry();
+        first.setField(1, "bulk-1");
+        first.setCreated(new Date(now - 60000));
+        Entry second = new Entry();
+        second.setField(1, "bulk-2");
+        second.setCreated(new Date(now));
+        channel.bulkUpdate(Arrays.asList(first, second));
+        pauseForAPIRateLimit();
+    }
+
+    @Test
+    public void testChannelWatcher() throws Exception {
+        System.out.println("testChannelWatcher");
+        Channel channel = new Channel(TestChannelSettings.publicChannelID, TestChannelSettings.publicChannelWriteKey);
+        channel.setUrl(TestChannelSettings.server);
+        final CompletableFuture<Entry> changed = new CompletableFuture<>();
+        try (ChannelWatcher watcher = new ChannelWatcher(1, TimeUnit.SECONDS, 1)) {
+            watcher.addListener((c, entry) -> changed.complete(entry));
+            watcher.watch(channel);
+            while (watcher.getLastEntryId(channel) == null) {
+                Thread.sleep(100);
+            }
+            Integer id = channel.update(new Entry());
+            assertEquals(id, changed.get(30, TimeUnit.SECONDS).getEntryId());
+        }
+        pauseForAPIRateLimit();
+    }
+
     @Test(expected = ThingSpeakException.class)
     public void testUpdateChannelWithInvalidAPIKey() throws Exception {
         System.out.println("testUpdatePublicChannelWithInvalidAPIKey");
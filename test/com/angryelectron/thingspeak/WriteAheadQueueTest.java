@@ -0,0 +1,160 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test how {@link WriteAheadQueue} handles entries the server rejects. These
+ * tests do not require a ThingSpeak server.
+ */
+public class WriteAheadQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Rejects any batch containing the status "bad" with 400, or every batch
+     * with refuseAll if it is set, and counts the entries it accepts.
+     */
+    private static class RejectingTransport implements HttpTransport {
+
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger entries = new AtomicInteger();
+        private volatile int refuseAll;
+
+        @Override
+        public TransportResponse execute(TransportRequest request) throws IOException {
+            requests.incrementAndGet();
+            if (refuseAll != 0) {
+                return new TransportResponse(refuseAll, new ByteArrayInputStream(new byte[0]));
+            }
+            if (request.getJson().contains("\"bad\"")) {
+                return new TransportResponse(400, new ByteArrayInputStream(new byte[0]));
+            }
+            entries.addAndGet(request.getJson().split("\"field1\"").length - 1);
+            return new TransportResponse(202, new ByteArrayInputStream("{\"success\":true}".getBytes(StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        public CompletableFuture<TransportResponse> executeAsync(TransportRequest request) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Test
+    public void testRejectedEntry() throws Exception {
+        System.out.println("testRejectedEntry");
+        File dir = folder.newFolder();
+        RejectingTransport transport = new RejectingTransport();
+        Channel channel = new Channel(1, "WRITE");
+        channel.setTransport(transport);
+        try (WriteAheadQueue queue = new WriteAheadQueue(channel, dir, 1, TimeUnit.HOURS, WriteAheadQueue.DEFAULT_SEGMENT_SIZE, 10)) {
+            for (int i = 0; i < 100; i++) {
+                Entry entry = new Entry();
+                entry.setField(1, i);
+                if (i == 70) {
+                    entry.setStatus("bad");
+                }
+                queue.enqueue(entry);
+            }
+            queue.drain();
+            assertEquals(0, queue.pending());
+            assertEquals(1, queue.getRejectedCount());
+            assertEquals(99, transport.entries.get());
+            /* found by halving the batch, not by sending entries one at a time */
+            assertTrue(transport.requests.get() < 20);
+        }
+        List<String> rejected = Files.readAllLines(new File(dir, WriteAheadQueue.REJECTED_FILE).toPath());
+        assertEquals(1, rejected.size());
+        assertTrue(rejected.get(0).contains("\"bad\""));
+    }
+
+    private static void enqueue(WriteAheadQueue queue, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            Entry entry = new Entry();
+            entry.setField(1, i);
+            queue.enqueue(entry);
+        }
+    }
+
+    @Test
+    public void testAuthFailure() throws Exception {
+        System.out.println("testAuthFailure");
+        File dir = folder.newFolder();
+        RejectingTransport transport = new RejectingTransport();
+        transport.refuseAll = 401;
+        Channel channel = new Channel(1, "WRONG");
+        channel.setTransport(transport);
+        try (WriteAheadQueue queue = new WriteAheadQueue(channel, dir, 1, TimeUnit.HOURS, WriteAheadQueue.DEFAULT_SEGMENT_SIZE, 10)) {
+            enqueue(queue, 50);
+            try {
+                queue.drain();
+                fail("Expected ThingSpeakException");
+            } catch (ThingSpeakException ex) {
+                assertEquals(401, ex.getStatusCode());
+            }
+            assertEquals(50, queue.pending());
+            assertEquals(0, queue.getRejectedCount());
+        }
+        assertTrue(!new File(dir, WriteAheadQueue.REJECTED_FILE).exists());
+    }
+
+    @Test
+    public void testEverythingRejected() throws Exception {
+        System.out.println("testEverythingRejected");
+        File dir = folder.newFolder();
+        RejectingTransport transport = new RejectingTransport();
+        transport.refuseAll = 400;
+        Channel channel = new Channel(1, "WRITE");
+        channel.setTransport(transport);
+        try (WriteAheadQueue queue = new WriteAheadQueue(channel, dir, 1, TimeUnit.HOURS, WriteAheadQueue.DEFAULT_SEGMENT_SIZE, 10)) {
+            enqueue(queue, 50);
+            try {
+                queue.drain();
+                fail("Expected ThingSpeakException");
+            } catch (ThingSpeakException ex) {
+                assertEquals(400, ex.getStatusCode());
+            }
+            /* the first entry looks bad on its own; the second shows it is not the entries */
+            assertEquals(49, queue.pending());
+            assertEquals(1, queue.getRejectedCount());
+
+            transport.refuseAll = 0;
+            queue.drain();
+            assertEquals(0, queue.pending());
+            assertEquals(49, transport.entries.get());
+        }
+    }
+}
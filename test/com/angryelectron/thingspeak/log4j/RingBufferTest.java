@@ -0,0 +1,113 @@
+/**
+ * ThingSpeak Appender for log4j Copyright 2014, Andrew Bythell
+ * <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * the ThingSpeak Appender. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak.log4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test {@link RingBuffer}. These tests do not require a ThingSpeak server.
+ */
+public class RingBufferTest {
+
+    @Test
+    public void testOfferPoll() throws Exception {
+        System.out.println("testOfferPoll");
+        RingBuffer<Integer> buffer = new RingBuffer<>(3);
+        assertEquals(4, buffer.capacity());
+        assertNull(buffer.poll());
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(buffer.offer(i));
+            }
+            assertFalse(buffer.offer(4));
+            assertEquals(4, buffer.size());
+            for (int i = 0; i < 4; i++) {
+                assertEquals(Integer.valueOf(i), buffer.poll());
+            }
+            assertNull(buffer.poll());
+            assertEquals(0, buffer.size());
+        }
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        System.out.println("testConcurrent");
+        final RingBuffer<Integer> buffer = new RingBuffer<>(64);
+        final int producers = 4;
+        final int perProducer = 50000;
+        final ConcurrentHashMap<Integer, Boolean> seen = new ConcurrentHashMap<>();
+        final AtomicBoolean ordered = new AtomicBoolean(true);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int base = p * perProducer;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perProducer; i++) {
+                        while (!buffer.offer(base + i)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            }));
+        }
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int[] last = new int[producers];
+                Arrays.fill(last, -1);
+                int received = 0;
+                while (received < producers * perProducer) {
+                    Integer value = buffer.poll();
+                    if (value == null) {
+                        Thread.yield();
+                        continue;
+                    }
+                    int producer = value / perProducer;
+                    if (value % perProducer <= last[producer]) {
+                        ordered.set(false);
+                    }
+                    last[producer] = value % perProducer;
+                    seen.put(value, Boolean.TRUE);
+                    received++;
+                }
+            }
+        });
+        threads.add(consumer);
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(producers * perProducer, seen.size());
+        assertTrue(ordered.get());
+        assertNull(buffer.poll());
+    }
+}
@@ -0,0 +1,463 @@
+/**
+ * ThingSpeak Appender for log4j Copyright 2014, Andrew Bythell
+ * <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * the ThingSpeak Appender. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak.log4j;
+
+import com.angryelectron.thingspeak.HttpTransport;
+import com.angryelectron.thingspeak.TransportRequest;
+import com.angryelectron.thingspeak.TransportResponse;
+import com.angryelectron.thingspeak.WriteAheadQueue;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test buffering and batching in {@link ThingSpeakAppender}, using a
+ * transport which records bulk updates. These tests do not require a
+ * ThingSpeak server.
+ */
+public class ThingSpeakAppenderBufferTest {
+
+    /**
+     * Records the messages in each bulk update. Requests can be held until
+     * they are released, and batches holding a given message rejected.
+     */
+    private static class RecordingTransport implements HttpTransport {
+
+        private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<List<String>>());
+        private final List<JsonObject> updates = Collections.synchronizedList(new ArrayList<JsonObject>());
+        private final List<Long> times = Collections.synchronizedList(new ArrayList<Long>());
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release;
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile String reject;
+
+        RecordingTransport(boolean hold) {
+            release = new CountDownLatch(hold ? 1 : 0);
+        }
+
+        @Override
+        public TransportResponse execute(TransportRequest request) throws IOException {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+            times.add(System.currentTimeMillis());
+            if (failures.getAndDecrement() > 0) {
+                return new TransportResponse(500, new ByteArrayInputStream(new byte[0]));
+            }
+            if (reject != null && request.getJson().contains("\"" + reject + "\"")) {
+                return new TransportResponse(400, new ByteArrayInputStream(new byte[0]));
+            }
+            List<String> messages = new ArrayList<>();
+            JsonArray updates = new JsonParser().parse(request.getJson()).getAsJsonObject().getAsJsonArray("updates");
+            for (JsonElement update : updates) {
+                this.updates.add(update.getAsJsonObject());
+                JsonElement message = update.getAsJsonObject().get("field3");
+                messages.add(message == null ? null : message.getAsString());
+            }
+            batches.add(messages);
+            return new TransportResponse(200, new ByteArrayInputStream("{\"success\":true}".getBytes(StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        public CompletableFuture<TransportResponse> executeAsync(TransportRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        List<String> messages() {
+            List<String> all = new ArrayList<>();
+            synchronized (batches) {
+                for (List<String> batch : batches) {
+                    all.addAll(batch);
+                }
+            }
+            return all;
+        }
+    }
+
+    private final Logger logger = Logger.getLogger(ThingSpeakAppenderBufferTest.class);
+
+    private ThingSpeakAppender appender(RecordingTransport transport) {
+        ThingSpeakAppender appender = new ThingSpeakAppender();
+        appender.configureChannel(1, "key", "http://localhost");
+        appender.setTransport(transport);
+        return appender;
+    }
+
+    private void log(ThingSpeakAppender appender, Level level, String message) {
+        appender.doAppend(new LoggingEvent(Logger.class.getName(), logger, level, message, null));
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        System.out.println("testBatches");
+        RecordingTransport transport = new RecordingTransport(false);
+        ThingSpeakAppender appender = appender(transport);
+        appender.setBatchSize(10);
+        appender.setFlushInterval(60000);
+        appender.activateOptions();
+        for (int i = 0; i < 25; i++) {
+            log(appender, Level.INFO, "message " + i);
+        }
+        appender.close();
+        assertEquals(25, transport.messages().size());
+        assertEquals("message 0", transport.messages().get(0));
+        assertEquals("message 24", transport.messages().get(24));
+        assertTrue(transport.batches.size() >= 3);
+        for (List<String> batch : transport.batches) {
+            assertTrue(batch.size() <= 10);
+        }
+        assertEquals(0, appender.getDroppedCount());
+    }
+
+    @Test
+    public void testFlushInterval() throws Exception {
+        System.out.println("testFlushInterval");
+        RecordingTransport transport = new RecordingTransport(false);
+        ThingSpeakAppender appender = appender(transport);
+        appender.setFlushInterval(50);
+        log(appender, Level.INFO, "one");
+        log(appender, Level.INFO, "two");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (transport.messages().size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, transport.messages().size());
+        appender.close();
+    }
+
+    @Test
+    public void testRateLimit() throws Exception {
+        System.out.println("testRateLimit");
+        RecordingTransport transport = new RecordingTransport(false);
+        ThingSpeakAppender appender = appender(transport);
+        appender.setBatchSize(1);
+        appender.setFlushInterval(200);
+        appender.activateOptions();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            log(appender, Level.INFO, "message " + i);
+        }
+        long deadline = start + 5000;
+        while (transport.messages().size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        /* full batches are still sent at most once per flush interval */
+        assertEquals(3, transport.batches.size());
+        assertTrue(System.currentTimeMillis() - start >= 400);
+        appender.close();
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        System.out.println("testBlock");
+        RecordingTransport transport = new RecordingTransport(true);
+        final ThingSpeakAppender appender = appender(transport);
+        appender.setBufferSize(2);
+        appender.setBatchSize(1);
+        appender.setFlushInterval(1);
+        appender.setOverflowPolicy("block");
+        log(appender, Level.INFO, "0");
+        assertTrue(transport.entered.await(5, TimeUnit.SECONDS));
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= 5; i++) {
+                    log(appender, Level.INFO, Integer.toString(i));
+                }
+            }
+        });
+        producer.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (producer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        /* waits to be woken by the flusher rather than polling */
+        assertEquals(Thread.State.WAITING, producer.getState());
+
+        transport.release.countDown();
+        producer.join(5000);
+        appender.close();
+        assertEquals(0, appender.getDroppedCount());
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4", "5"), transport.messages());
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        System.out.println("testDropOldest");
+        RecordingTransport transport = new RecordingTransport(true);
+        ThingSpeakAppender appender = appender(transport);
+        appender.setBufferSize(4);
+        appender.setBatchSize(1);
+        appender.setFlushInterval(1);
+        log(appender, Level.INFO, "0");
+        assertTrue(transport.entered.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 8; i++) {
+            log(appender, Level.INFO, Integer.toString(i));
+        }
+        assertEquals(4, appender.getDroppedCount());
+        transport.release.countDown();
+        appender.close();
+        assertEquals(Arrays.asList("0", "5", "6", "7", "8"), transport.messages());
+    }
+
+    @Test
+    public void testDropBelowThreshold() throws Exception {
+        System.out.println("testDropBelowThreshold");
+        final RecordingTransport transport = new RecordingTransport(true);
+        ThingSpeakAppender appender = appender(transport);
+        appender.setBufferSize(2);
+        appender.setBatchSize(1);
+        appender.setFlushInterval(1);
+        appender.setOverflowPolicy("drop_below_threshold");
+        appender.setOverflowThreshold(Level.WARN);
+        log(appender, Level.INFO, "held");
+        assertTrue(transport.entered.await(5, TimeUnit.SECONDS));
+        log(appender, Level.INFO, "a");
+        log(appender, Level.INFO, "b");
+        log(appender, Level.INFO, "dropped");
+        assertEquals(1, appender.getDroppedCount());
+
+        /* The error waits for space, which is made when requests resume. */
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ex) {
+                    /* release anyway */
+                }
+                transport.release.countDown();
+            }
+        }).start();
+        log(appender, Level.ERROR, "error");
+        appender.close();
+        assertEquals(1, appender.getDroppedCount());
+        assertEquals(Arrays.asList("held", "a", "b", "error"), transport.messages());
+    }
+
+    @Test
+    public void testAggregate() throws Exception {
+        System.out.println("testAggregate");
+        RecordingTransport transport = new RecordingTransport(false);
+        ThingSpeakAppender appender = appender(transport);
+        appender.setAggregate(true);
+        appender.setAggregationInterval(60000);
+        appender.activateOptions();
+        for (int i = 0; i < 1000; i++) {
+            log(appender, Level.ERROR, "error " + (i % 10));
+        }
+        log(appender, Level.WARN, "warning");
+        log(appender, Level.INFO, "info");
+        log(appender, Level.DEBUG, "debug");
+        log(appender, Level.FATAL, "fatal");
+        appender.close();
+
+        assertEquals(1, transport.updates.size());
+        JsonObject update = transport.updates.get(0);
+        assertEquals("1", update.get("field1").getAsString());
+        assertEquals("1000", update.get("field2").getAsString());
+        assertEquals("1", update.get("field3").getAsString());
+        assertEquals("1", update.get("field4").getAsString());
+        assertEquals("1", update.get("field5").getAsString());
+        assertEquals("0", update.get("field6").getAsString());
+        assertEquals("1004", update.get("field7").getAsString());
+        assertEquals("14", update.get("field8").getAsString());
+        assertEquals("error 0\nfatal", update.get("status").getAsString());
+        assertEquals(0, appender.getDroppedCount());
+    }
+
+    @Test
+    public void testAggregateDistinct() throws Exception {
+        System.out.println("testAggregateDistinct");
+        RecordingTransport transport = new RecordingTransport(false);
+        ThingSpeakAppender appender = appender(transport);
+        appender.setAggregate(true);
+        appender.setAggregationInterval(60000);
+        appender.activateOptions();
+        for (int i = 0; i < 100000; i++) {
+            log(appender, Level.INFO, "message " + (i % 50000));
+        }
+        appender.close();
+
+        /* counted with a fixed-size sketch once there are too many to hold */
+        assertEquals(1, transport.updates.size());
+        long distinct = transport.updates.get(0).get("field8").getAsLong();
+        assertTrue("estimate " + distinct, Math.abs(distinct - 50000) < 2500);
+    }
+
+    @Test
+    public void testAggregateInterval() throws Exception {
+        System.out.println("testAggregateInterval");
+        RecordingTransport transport = new RecordingTransport(false);
+        ThingSpeakAppender appender = appender(transport);
+        appender.setAggregate(true);
+        appender.setAggregationInterval(50);
+        appender.setFlushInterval(10);
+        appender.activateOptions();
+        log(appender, Level.WARN, "warning");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (transport.updates.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        appender.close();
+
+        /* Every interval is written, including those with no events. */
+        assertTrue(transport.updates.size() >= 3);
+        assertEquals("1", transport.updates.get(0).get("field3").getAsString());
+        assertEquals("0", transport.updates.get(1).get("field7").getAsString());
+    }
+
+    @Test
+    public void testSpoolFailedBatch() throws Exception {
+        System.out.println("testSpoolFailedBatch");
+        RecordingTransport transport = new RecordingTransport(false);
+        transport.failures.set(1);
+        File directory = Files.createTempDirectory("spool").toFile();
+        ThingSpeakAppender appender = appender(transport);
+        appender.setFlushInterval(20);
+        appender.setSpoolDirectory(directory.getPath());
+        appender.setSpoolSegmentSize(64 * 1024);
+        appender.activateOptions();
+        log(appender, Level.INFO, "a");
+        log(appender, Level.INFO, "b");
+        waitFor(transport, 2);
+        log(appender, Level.INFO, "c");
+        waitFor(transport, 3);
+        appender.close();
+
+        /* The failed batch is replayed from the spool, before later events. */
+        assertEquals(Arrays.asList("a", "b", "c"), transport.messages());
+        assertEquals(0, appender.getSpooledCount());
+        assertEquals(0, appender.getDroppedCount());
+    }
+
+    @Test
+    public void testSpoolRateLimit() throws Exception {
+        System.out.println("testSpoolRateLimit");
+        RecordingTransport transport = new RecordingTransport(false);
+        transport.failures.set(1);
+        File directory = Files.createTempDirectory("spool").toFile();
+        ThingSpeakAppender appender = appender(transport);
+        appender.setBatchSize(1);
+        appender.setFlushInterval(200);
+        appender.setSpoolDirectory(directory.getPath());
+        appender.setSpoolSegmentSize(64 * 1024);
+        appender.activateOptions();
+        for (int i = 0; i < 3; i++) {
+            log(appender, Level.INFO, Integer.toString(i));
+        }
+        waitFor(transport, 3);
+        appender.close();
+
+        /* spooled and direct updates share one flush interval */
+        assertEquals(Arrays.asList("0", "1", "2"), transport.messages());
+        for (int i = 1; i < transport.times.size(); i++) {
+            long gap = transport.times.get(i) - transport.times.get(i - 1);
+            assertTrue("gap " + gap, gap >= 190);
+        }
+    }
+
+    @Test
+    public void testSpoolOverflow() throws Exception {
+        System.out.println("testSpoolOverflow");
+        RecordingTransport transport = new RecordingTransport(true);
+        File directory = Files.createTempDirectory("spool").toFile();
+        ThingSpeakAppender appender = appender(transport);
+        appender.setBufferSize(2);
+        appender.setBatchSize(1);
+        appender.setFlushInterval(1);
+        appender.setSpoolDirectory(directory.getPath());
+        appender.setSpoolSegmentSize(64 * 1024);
+        log(appender, Level.INFO, "0");
+        assertTrue(transport.entered.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 20; i++) {
+            log(appender, Level.INFO, Integer.toString(i));
+        }
+        assertEquals(0, appender.getDroppedCount());
+        assertTrue(appender.getSpooledCount() > 0);
+        transport.release.countDown();
+        waitFor(transport, 21);
+        appender.close();
+        /* Overflowed events are replayed in the order they were logged. */
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i <= 20; i++) {
+            expected.add(Integer.toString(i));
+        }
+        assertEquals(expected, transport.messages());
+        assertEquals(0, appender.getSpooledCount());
+    }
+
+    @Test
+    public void testSpoolRejectedEvent() throws Exception {
+        System.out.println("testSpoolRejectedEvent");
+        RecordingTransport transport = new RecordingTransport(false);
+        transport.reject = "bad";
+        File directory = Files.createTempDirectory("spool").toFile();
+        ThingSpeakAppender appender = appender(transport);
+        appender.setFlushInterval(20);
+        appender.setSpoolDirectory(directory.getPath());
+        appender.setSpoolSegmentSize(64 * 1024);
+        appender.activateOptions();
+        log(appender, Level.INFO, "a");
+        log(appender, Level.INFO, "bad");
+        log(appender, Level.INFO, "b");
+        waitFor(transport, 2);
+        log(appender, Level.INFO, "c");
+        waitFor(transport, 3);
+        appender.close();
+
+        /* The rejected event is set aside rather than blocking the spool. */
+        assertEquals(Arrays.asList("a", "b", "c"), transport.messages());
+        assertEquals(0, appender.getSpooledCount());
+        List<String> rejected = Files.readAllLines(new File(directory, WriteAheadQueue.REJECTED_FILE).toPath());
+        assertEquals(1, rejected.size());
+        assertTrue(rejected.get(0).contains("\"bad\""));
+    }
+
+    private void waitFor(RecordingTransport transport, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (transport.messages().size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -23,6 +23,7 @@ import com.angryelectron.thingspeak.TestChannelSettings;
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
+import static org.junit.Assert.assertEquals;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -67,5 +68,8 @@ public class ThingSpeakAppenderTest {
         appender.activateOptions();        
         Logger.getRootLogger().addAppender(appender);
         Logger.getLogger(this.getClass()).log(Level.INFO, "Test message from ThingSpeakAppender");
+        Logger.getRootLogger().removeAppender(appender);
+        appender.close();
+        assertEquals(0, appender.getDroppedCount());
     }
 }
@@ -0,0 +1,112 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak.pub;
+
+import com.angryelectron.thingspeak.HttpTransport;
+import com.angryelectron.thingspeak.TransportRequest;
+import com.angryelectron.thingspeak.TransportResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves a directory of channels with ids 1 to total, perPage at a time,
+ * after a delay. Every channel is tagged "all" and either "even" or "odd";
+ * channels whose ids are multiples of three are also tagged "Three". Used by
+ * tests which do not require a ThingSpeak server.
+ */
+class DirectoryTransport implements HttpTransport {
+
+    private volatile int total;
+    private final int perPage;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    final AtomicInteger maxActive = new AtomicInteger();
+    final Set<Integer> failPages = ConcurrentHashMap.newKeySet();
+
+    DirectoryTransport(int total, int perPage) {
+        this.total = total;
+        this.perPage = perPage;
+    }
+
+    /**
+     * Change the number of channels in the directory.
+     */
+    void setTotal(int total) {
+        this.total = total;
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        requests.incrementAndGet();
+        int now = active.incrementAndGet();
+        maxActive.accumulateAndGet(now, Math::max);
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException ex) {
+            throw new IOException(ex);
+        } finally {
+            active.decrementAndGet();
+        }
+        int page = Integer.parseInt(request.getParameters().get("page").toString());
+        if (failPages.contains(page)) {
+            return new TransportResponse(500, new ByteArrayInputStream(new byte[0]));
+        }
+        StringBuilder json = new StringBuilder("{\"pagination\":{\"current_page\":")
+                .append(page).append(",\"per_page\":").append(perPage)
+                .append(",\"total_entries\":").append(total).append("},\"channels\":[");
+        for (int id = (page - 1) * perPage + 1; id <= Math.min(total, page * perPage); id++) {
+            if (json.charAt(json.length() - 1) != '[') {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(id).append(",\"name\":\"channel ").append(id)
+                    .append("\",\"latitude\":\"\",\"created_at\":\"2014-01-31T20:15:00Z\"")
+                    .append(",\"tags\":[{\"id\":1,\"name\":\"all\"},{\"id\":2,\"name\":\"")
+                    .append((id % 2 == 0) ? "even" : "odd").append("\"}")
+                    .append((id % 3 == 0) ? ",{\"id\":3,\"name\":\"Three\"}" : "")
+                    .append("]}");
+        }
+        json.append("]}");
+        return new TransportResponse(200, new ByteArrayInputStream(json.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> executeAsync(final TransportRequest request) {
+        final CompletableFuture<TransportResponse> future = new CompletableFuture<>();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    future.complete(execute(request));
+                } catch (IOException ex) {
+                    future.completeExceptionally(ex);
+                }
+            }
+        });
+        return future;
+    }
+}
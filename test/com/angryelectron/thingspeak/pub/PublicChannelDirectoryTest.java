@@ -0,0 +1,137 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak.pub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Test {@link PublicChannelDirectory}, using a transport which serves a
+ * directory from memory. These tests do not require a ThingSpeak server.
+ */
+public class PublicChannelDirectoryTest {
+
+    private static List<Integer> ids(List<PublicChannel> channels) {
+        List<Integer> ids = new ArrayList<>();
+        for (PublicChannel channel : channels) {
+            ids.add(channel.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testQueries() throws Exception {
+        System.out.println("testQueries");
+        DirectoryTransport transport = new DirectoryTransport(100, 15);
+        PublicChannelDirectory directory = new PublicChannelDirectory(1, TimeUnit.HOURS);
+        directory.setTransport(transport);
+        assertEquals(100, directory.size());
+        int requests = transport.requests.get();
+        assertEquals(7, requests);
+
+        assertEquals(50, directory.count("even"));
+        assertEquals(33, directory.count(" three "));
+        assertEquals(100, directory.withAnyTag("odd", "even").size());
+        assertEquals(16, directory.withAllTags("EVEN", "three", "all").size());
+        assertEquals(6, (int) directory.withAllTags("three", "even").get(0).getId());
+        assertEquals(67, directory.withAnyTag("even", "three").size());
+        assertTrue(directory.withAllTags("even", "odd").isEmpty());
+        assertTrue(directory.withAllTags("even", "missing").isEmpty());
+        assertTrue(directory.withAnyTag("missing").isEmpty());
+        assertEquals(4, directory.getTags().size());
+        assertEquals("channel 42", directory.getChannel(42).getName());
+        assertNull(directory.getChannel(101));
+        assertEquals(requests, transport.requests.get());
+    }
+
+    @Test
+    public void testUnion() throws Exception {
+        System.out.println("testUnion");
+        PublicChannelDirectory directory = new PublicChannelDirectory(1, TimeUnit.HOURS);
+        directory.setTransport(new DirectoryTransport(12, 5));
+        List<Integer> expected = new ArrayList<>();
+        for (int id = 1; id <= 12; id++) {
+            if (id % 2 == 0 || id % 3 == 0) {
+                expected.add(id);
+            }
+        }
+        assertEquals(expected, ids(directory.withAnyTag("three", "even", "three")));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        System.out.println("testExpiry");
+        DirectoryTransport transport = new DirectoryTransport(30, 10);
+        PublicChannelDirectory directory = new PublicChannelDirectory(0, TimeUnit.MILLISECONDS);
+        directory.setTransport(transport);
+        assertEquals(30, directory.size());
+        transport.setTotal(40);
+        /* an expired snapshot is still used while it is refreshed in the background */
+        assertEquals(30, directory.size());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (directory.size() != 40 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(40, directory.size());
+
+        directory = new PublicChannelDirectory(1, TimeUnit.HOURS);
+        directory.setTransport(transport);
+        assertEquals(40, directory.size());
+        transport.setTotal(20);
+        assertEquals(40, directory.size());
+        directory.refresh();
+        assertEquals(20, directory.size());
+    }
+
+    @Test
+    public void testFailedCrawl() throws Exception {
+        System.out.println("testFailedCrawl");
+        DirectoryTransport transport = new DirectoryTransport(30, 10);
+        PublicChannelDirectory directory = new PublicChannelDirectory(1, TimeUnit.HOURS);
+        directory.setTransport(transport);
+        transport.failPages.add(2);
+        /* with no previous copy, a partial crawl is not used */
+        try {
+            directory.size();
+            fail("partial crawl used");
+        } catch (IllegalStateException ex) {
+            /* expected */
+        }
+        assertEquals(0, directory.getLoadTime());
+
+        /* the next query crawls again */
+        transport.failPages.clear();
+        assertEquals(30, directory.size());
+        long loaded = directory.getLoadTime();
+
+        transport.setTotal(35);
+        transport.failPages.add(3);
+        Thread.sleep(5);
+        directory.refresh();
+        assertEquals(30, directory.size());
+        assertTrue(directory.getLoadTime() > loaded);
+    }
+}
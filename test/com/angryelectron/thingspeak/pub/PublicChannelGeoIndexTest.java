@@ -0,0 +1,171 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak.pub;
+
+import com.google.gson.Gson;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test {@link PublicChannelGeoIndex} against a scan of every channel. These
+ * tests do not require a ThingSpeak server.
+ */
+public class PublicChannelGeoIndexTest {
+
+    private static final Gson gson = new Gson();
+
+    private static PublicChannel channel(int id, double latitude, double longitude) {
+        return gson.fromJson("{\"id\":" + id + ",\"latitude\":" + latitude
+                + ",\"longitude\":" + longitude + "}", PublicChannel.class);
+    }
+
+    private static List<PublicChannel> randomChannels(Random random, int count) {
+        List<PublicChannel> channels = new ArrayList<>();
+        for (int id = 1; id <= count; id++) {
+            /* cluster half the channels, as real sensors are */
+            if (random.nextBoolean()) {
+                channels.add(channel(id, 49 + random.nextDouble(), -123.5 + random.nextDouble()));
+            } else {
+                channels.add(channel(id, random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180));
+            }
+        }
+        return channels;
+    }
+
+    private static List<Integer> ids(List<PublicChannel> channels) {
+        List<Integer> ids = new ArrayList<>();
+        for (PublicChannel channel : channels) {
+            ids.add(channel.getId());
+        }
+        return ids;
+    }
+
+    private static double distance(PublicChannel channel, double latitude, double longitude) {
+        return PublicChannelGeoIndex.distance(latitude, longitude, channel.getLatitude(), channel.getLongitude());
+    }
+
+    @Test
+    public void testWithinRadius() throws Exception {
+        System.out.println("testWithinRadius");
+        Random random = new Random(1);
+        List<PublicChannel> channels = randomChannels(random, 5000);
+        PublicChannelGeoIndex index = new PublicChannelGeoIndex(channels);
+        assertEquals(5000, index.size());
+        for (int i = 0; i < 50; i++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            double radius = random.nextDouble() * 2000000;
+            if (i % 2 == 0) {
+                latitude = 49.5;
+                longitude = -123;
+                radius /= 100;
+            }
+            List<Integer> expected = new ArrayList<>();
+            for (PublicChannel channel : channels) {
+                /* leave a margin for rounding */
+                double d = distance(channel, latitude, longitude);
+                if (Math.abs(d - radius) > 0.01 && d < radius) {
+                    expected.add(channel.getId());
+                }
+            }
+            List<PublicChannel> found = index.withinRadius(latitude, longitude, radius);
+            List<Integer> actual = ids(found);
+            assertTrue(actual.containsAll(expected));
+            assertTrue(actual.size() - expected.size() <= 1);
+            for (int j = 1; j < found.size(); j++) {
+                assertTrue(distance(found.get(j - 1), latitude, longitude)
+                        <= distance(found.get(j), latitude, longitude) + 0.01);
+            }
+        }
+    }
+
+    @Test
+    public void testNearest() throws Exception {
+        System.out.println("testNearest");
+        Random random = new Random(2);
+        List<PublicChannel> channels = randomChannels(random, 5000);
+        PublicChannelGeoIndex index = new PublicChannelGeoIndex(channels);
+        for (int i = 0; i < 50; i++) {
+            final double latitude = random.nextDouble() * 180 - 90;
+            final double longitude = random.nextDouble() * 360 - 180;
+            List<PublicChannel> sorted = new ArrayList<>(channels);
+            sorted.sort(Comparator.comparingDouble(channel -> distance(channel, latitude, longitude)));
+            List<PublicChannel> found = index.nearest(latitude, longitude, 10);
+            assertEquals(10, found.size());
+            for (int j = 0; j < 10; j++) {
+                assertEquals(distance(sorted.get(j), latitude, longitude),
+                        distance(found.get(j), latitude, longitude), 0.01);
+            }
+        }
+        assertEquals(5000, index.nearest(0, 0, 6000).size());
+        assertTrue(index.nearest(0, 0, 0).isEmpty());
+    }
+
+    @Test
+    public void testWithinBox() throws Exception {
+        System.out.println("testWithinBox");
+        Random random = new Random(3);
+        List<PublicChannel> channels = randomChannels(random, 5000);
+        PublicChannelGeoIndex index = new PublicChannelGeoIndex(channels);
+        double[][] boxes = {
+            {49.2, -123.3, 49.6, -122.9},
+            {-10, -30, 40, 60},
+            {-60, 150, 60, -150},
+            {-90, -180, 90, 180}
+        };
+        for (double[] box : boxes) {
+            List<Integer> expected = new ArrayList<>();
+            for (PublicChannel channel : channels) {
+                double latitude = channel.getLatitude();
+                double longitude = channel.getLongitude();
+                boolean inLongitude = (box[1] <= box[3])
+                        ? longitude >= box[1] && longitude <= box[3]
+                        : longitude >= box[1] || longitude <= box[3];
+                if (latitude >= box[0] && latitude <= box[2] && inLongitude) {
+                    expected.add(channel.getId());
+                }
+            }
+            assertEquals(Arrays.toString(box), expected, ids(index.withinBox(box[0], box[1], box[2], box[3])));
+        }
+    }
+
+    @Test
+    public void testUnlocatedChannels() throws Exception {
+        System.out.println("testUnlocatedChannels");
+        List<PublicChannel> channels = new ArrayList<>();
+        channels.add(channel(1, 0, 0));
+        channels.add(channel(2, 49.28, -123.12));
+        PublicChannelGeoIndex index = new PublicChannelGeoIndex(channels);
+        assertEquals(1, index.size());
+        assertEquals(Arrays.asList(2), ids(index.nearest(0, 0, 5)));
+        assertTrue(new PublicChannelGeoIndex(new ArrayList<PublicChannel>()).nearest(0, 0, 5).isEmpty());
+
+        PublicChannelDirectory directory = new PublicChannelDirectory(1, TimeUnit.HOURS);
+        directory.setTransport(new DirectoryTransport(20, 10));
+        assertEquals(0, directory.getGeoIndex().size());
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak.pub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test paging in {@link PublicIterator} and {@link PublicChannelSpliterator},
+ * using a transport which serves a directory from memory. These tests do not
+ * require a ThingSpeak server.
+ */
+public class PublicIteratorTest {
+
+    private static List<Integer> ids(Iterable<PublicChannel> channels) {
+        List<Integer> ids = new ArrayList<>();
+        for (PublicChannel channel : channels) {
+            ids.add(channel.getId());
+        }
+        return ids;
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = from; id <= to; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    @Test
+    public void testReadAhead() throws Exception {
+        System.out.println("testReadAhead");
+        DirectoryTransport transport = new DirectoryTransport(100, 7);
+        PublicChannelCollection collection = new PublicChannelCollection();
+        collection.setTransport(transport);
+        collection.setReadAhead(4);
+        assertEquals(range(1, 100), ids(collection));
+        assertEquals(100, collection.size());
+        assertTrue(transport.maxActive.get() > 1);
+
+        transport.maxActive.set(0);
+        collection.setReadAhead(0);
+        assertEquals(range(1, 100), ids(collection));
+        assertEquals(1, transport.maxActive.get());
+    }
+
+    @Test
+    public void testPartialLastPage() throws Exception {
+        System.out.println("testPartialLastPage");
+        PublicChannelCollection collection = new PublicChannelCollection();
+        collection.setTransport(new DirectoryTransport(25, 10));
+        assertEquals(range(1, 25), ids(collection));
+
+        collection.setTransport(new DirectoryTransport(10, 10));
+        assertEquals(range(1, 10), ids(collection));
+
+        collection.setTransport(new DirectoryTransport(0, 10));
+        assertFalse(collection.iterator().hasNext());
+    }
+
+    @Test
+    public void testFailedPageSkipped() throws Exception {
+        System.out.println("testFailedPageSkipped");
+        DirectoryTransport transport = new DirectoryTransport(30, 10);
+        transport.failPages.add(2);
+        PublicChannelCollection collection = new PublicChannelCollection();
+        collection.setTransport(transport);
+        List<Integer> expected = range(1, 10);
+        expected.addAll(range(21, 30));
+        assertEquals(expected, ids(collection));
+    }
+
+    @Test
+    public void testSpliterator() throws Exception {
+        System.out.println("testSpliterator");
+        DirectoryTransport transport = new DirectoryTransport(1000, 10);
+        PublicChannelCollection collection = new PublicChannelCollection();
+        collection.setTransport(transport);
+
+        List<Integer> sequential = StreamSupport.stream(collection.spliterator(), false)
+                .map(PublicChannel::getId).collect(Collectors.toList());
+        assertEquals(range(1, 1000), sequential);
+
+        List<Integer> parallel = collection.parallelStream()
+                .map(PublicChannel::getId).collect(Collectors.toList());
+        assertEquals(range(1, 1000), parallel);
+    }
+
+    @Test
+    public void testSplit() throws Exception {
+        System.out.println("testSplit");
+        PublicChannelCollection collection = new PublicChannelCollection();
+        collection.setTransport(new DirectoryTransport(45, 10));
+        Spliterator<PublicChannel> suffix = collection.spliterator();
+        assertEquals(50, suffix.estimateSize());
+        Spliterator<PublicChannel> prefix = suffix.trySplit();
+        assertEquals(30, prefix.estimateSize());
+        assertEquals(20, suffix.estimateSize());
+        List<Integer> ids = new ArrayList<>();
+        prefix.forEachRemaining(channel -> ids.add(channel.getId()));
+        suffix.forEachRemaining(channel -> ids.add(channel.getId()));
+        assertEquals(range(1, 45), ids);
+    }
+}
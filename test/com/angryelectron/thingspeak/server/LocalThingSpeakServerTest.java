@@ -0,0 +1,264 @@
+/**
+ * ThingSpeak Java Client
+ * Copyright 2014, Andrew Bythell <abythell@ieee.org>
+ * http://angryelectron.com
+ *
+ * The ThingSpeak Java Client is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The ThingSpeak Java Client is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * theThingSpeak Java Client. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.angryelectron.thingspeak.server;
+
+import com.angryelectron.thingspeak.Channel;
+import com.angryelectron.thingspeak.Entry;
+import com.angryelectron.thingspeak.Feed;
+import com.angryelectron.thingspeak.FeedParameters;
+import com.angryelectron.thingspeak.JdkHttpTransport;
+import com.angryelectron.thingspeak.ThingSpeakException;
+import com.angryelectron.thingspeak.pub.PublicChannel;
+import com.angryelectron.thingspeak.pub.PublicChannelCollection;
+import com.angryelectron.thingspeak.pub.PublicChannelDirectory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test the client against {@link LocalThingSpeakServer}. These tests do not
+ * require a ThingSpeak server.
+ */
+public class LocalThingSpeakServerTest {
+
+    private LocalThingSpeakServer server;
+    private final JdkHttpTransport transport = new JdkHttpTransport.Builder().build();
+
+    @BeforeClass
+    public static void setUpClass() {
+        /* see LocalThingSpeakServer; read when the first server is created */
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LocalThingSpeakServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    private Channel channel(int id, String writeKey, String readKey) {
+        Channel channel = (readKey == null) ? new Channel(id, writeKey) : new Channel(id, writeKey, readKey);
+        channel.setUrl(server.getUrl());
+        channel.setTransport(transport);
+        return channel;
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        System.out.println("testUpdate");
+        int id = server.addChannel("WRITE", "READ");
+        Channel channel = channel(id, "WRITE", "READ");
+        Entry entry = new Entry();
+        entry.setField(1, "hello \"world\"");
+        entry.setField(2, 21.5);
+        entry.setStatus("ok");
+        assertEquals(Integer.valueOf(1), channel.update(entry));
+        entry.setField(1, "again");
+        assertEquals(Integer.valueOf(2), channel.update(entry));
+
+        Entry last = channel.getLastChannelEntry();
+        assertEquals(Integer.valueOf(2), last.getEntryId());
+        assertEquals("again", last.getField(1));
+        assertEquals(21.5, last.getFieldAsDouble(2), 0.0);
+        assertNull(last.getStatus());
+
+        FeedParameters options = new FeedParameters();
+        options.status(true);
+        Feed feed = channel.getChannelFeed(options);
+        assertEquals(2, feed.getEntryList().size());
+        assertEquals("hello \"world\"", feed.getEntry(1).getField(1));
+        assertEquals("ok", feed.getEntry(1).getStatus());
+        assertEquals("Field 2", feed.getFieldName(2));
+
+        assertEquals(2, channel.getFieldFeed(1).getEntryList().size());
+        assertEquals("again", channel.getLastFieldEntry(1).getField(1));
+        assertEquals("ok", channel.getStatusFeed().getEntryList().get(1).getStatus());
+
+        try {
+            channel(id, "WRITE", "WRONG").getChannelFeed();
+            fail("Read with the wrong key succeeded.");
+        } catch (ThingSpeakException ex) {
+        }
+        try {
+            channel(id, "WRONG", "READ").update(entry);
+            fail("Update with the wrong key succeeded.");
+        } catch (ThingSpeakException ex) {
+        }
+        assertEquals(2, server.getEntryCount(id));
+    }
+
+    @Test
+    public void testBulkUpdate() throws Exception {
+        System.out.println("testBulkUpdate");
+        int id = server.addChannel("WRITE", null);
+        Channel channel = channel(id, "WRITE", null);
+        List<Entry> entries = new ArrayList<>();
+        long start = 1414800000000L;
+        for (int i = 0; i < 10; i++) {
+            Entry entry = new Entry();
+            entry.setField(1, i);
+            entry.setCreated(new Date(start + i * 60000L));
+            entries.add(entry);
+        }
+        channel.bulkUpdate(entries);
+        assertEquals(10, server.getEntryCount(id));
+
+        /* start and end are sent in local time, which the server reads as UTC */
+        FeedParameters options = new FeedParameters();
+        TimeZone local = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Etc/UTC"));
+        try {
+            options.start(new Date(start + 2 * 60000L));
+            options.end(new Date(start + 5 * 60000L));
+        } finally {
+            TimeZone.setDefault(local);
+        }
+        Feed feed = channel.getChannelFeed(options);
+        assertEquals(4, feed.getEntryList().size());
+        assertEquals(new Date(start + 2 * 60000L), feed.getEntryList().get(0).getCreated());
+        assertEquals(2, feed.getEntryList().get(0).getFieldAsLong(1));
+    }
+
+    @Test
+    public void testSyntheticFeed() throws Exception {
+        System.out.println("testSyntheticFeed");
+        int id = server.addChannel("WRITE", null);
+        server.addEntries(id, 9000);
+        Channel channel = channel(id, "WRITE", null);
+        assertEquals(100, channel.getChannelFeed().getEntryList().size());
+        FeedParameters options = new FeedParameters();
+        options.results(8000);
+        Feed feed = channel.getChannelFeed(options);
+        assertEquals(8000, feed.getEntryList().size());
+        assertEquals(Integer.valueOf(9000), feed.getChannelLastEntryId());
+        assertEquals(Integer.valueOf(1001), feed.getEntryList().get(0).getEntryId());
+        assertEquals(8000, channel.getColumnarChannelFeed(options).size());
+    }
+
+    @Test
+    public void testRateLimit() throws Exception {
+        System.out.println("testRateLimit");
+        server.setUpdateInterval(60000);
+        int id = server.addChannel("WRITE", null);
+        Channel channel = channel(id, "WRITE", null);
+        Entry entry = new Entry();
+        entry.setField(1, 1);
+        channel.update(entry);
+        try {
+            channel.update(entry);
+            fail("Update within the interval succeeded.");
+        } catch (ThingSpeakException ex) {
+        }
+        List<Entry> entries = new ArrayList<>();
+        entries.add(entry);
+        try {
+            channel.bulkUpdate(entries);
+            fail("Bulk update within the interval succeeded.");
+        } catch (ThingSpeakException ex) {
+        }
+        assertEquals(2, server.getRateLimitedCount());
+        assertEquals(1, server.getEntryCount(id));
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        System.out.println("testErrors");
+        int id = server.addChannel("WRITE", null);
+        Channel channel = channel(id, "WRITE", null);
+        assertTrue(channel.isAvailable());
+        server.setErrorRate(1.0);
+        assertFalse(channel.isAvailable());
+        server.setErrorRate(0.5);
+        for (int i = 0; i < 100; i++) {
+            channel.isAvailable();
+        }
+        assertTrue(server.getInjectedErrorCount() > 20);
+        assertTrue(server.getInjectedErrorCount() < 90);
+        assertEquals(102, server.getRequestCount());
+    }
+
+    @Test
+    public void testLatency() throws Exception {
+        System.out.println("testLatency");
+        int id = server.addChannel("WRITE", null);
+        Channel channel = channel(id, "WRITE", null);
+        server.setLatency(() -> 300);
+        long start = System.nanoTime();
+        List<CompletableFuture<Entry>> pending = new ArrayList<>();
+        server.addEntries(id, 1);
+        for (int i = 0; i < 20; i++) {
+            pending.add(channel.getLastChannelEntryAsync());
+        }
+        for (CompletableFuture<Entry> future : pending) {
+            assertEquals(Integer.valueOf(1), future.get(10, TimeUnit.SECONDS).getEntryId());
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed >= 300);
+        /* delayed responses do not hold a thread each */
+        assertTrue(elapsed < 3000);
+    }
+
+    @Test
+    public void testPublicChannels() throws Exception {
+        System.out.println("testPublicChannels");
+        for (int i = 1; i <= 40; i++) {
+            int id = server.addChannel("WRITE" + i, (i % 10 == 0) ? "READ" : null);
+            server.setListing(id, "sensor " + i, 49.0 + i / 100.0, -123.0, (i % 2 == 0) ? "even" : "odd", "Weather");
+        }
+        PublicChannelCollection all = new PublicChannelCollection();
+        all.setUrl(server.getUrl());
+        all.setTransport(transport);
+        int count = 0;
+        for (PublicChannel channel : all) {
+            assertEquals(2, channel.getTags().size());
+            count++;
+        }
+        assertEquals(36, count);
+        assertEquals(36, all.size());
+
+        PublicChannelCollection odd = new PublicChannelCollection("odd");
+        odd.setUrl(server.getUrl());
+        odd.setTransport(transport);
+        assertEquals(20, odd.size());
+
+        PublicChannelDirectory directory = new PublicChannelDirectory(1, TimeUnit.HOURS);
+        directory.setUrl(server.getUrl());
+        directory.setTransport(transport);
+        assertEquals(16, directory.withAllTags("even", "weather").size());
+        assertEquals("sensor 1", directory.getGeoIndex().nearest(49.0, -123.0, 1).get(0).getName());
+    }
+}